@@ -0,0 +1,91 @@
+package com.bonsai.shorturl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 分析ページの集計（AnalyticsQueryService.summarize）: 日別のクリックテーブルを直接 GROUP BY する source=events と、
+// 日別集計 + HyperLogLog スケッチを読む source=rollup の比較。
+// アプリを同じJVM内で起動し、クリックは ClickEventWriter からリダイレクト時と同じ経路で書き込む
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class AnalyticsAggregationBenchmark {
+
+    private static final int DAYS = 90;
+    private static final int WRITE_BATCH_SIZE = 10000;
+
+    @Param({"10000", "1000000"})
+    public int clicks;
+
+    @Param({"rollup", "events"})
+    public String source;
+
+    private ConfigurableApplicationContext context;
+    private AnalyticsQueryService analyticsQueryService;
+    private Long urlMappingId;
+    private LocalDate today;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplication(ShortUrlApplication.class).run(
+                "--server.port=0",
+                "--shorturl.analytics.source=" + source,
+                "--shorturl.geoip.fallback=none",
+                "--shorturl.redirect-cache.snapshot.enabled=false",
+                "--logging.level.root=WARN");
+        analyticsQueryService = context.getBean(AnalyticsQueryService.class);
+        urlMappingId = context.getBean(UrlMappingRepository.class)
+                .save(new UrlMapping("bench1", "https://example.com/landing")).getId();
+
+        today = LocalDate.now();
+        ClickEventWriter writer = context.getBean(ClickEventWriter.class);
+        List<PendingClick> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        for (int i = 0; i < clicks; i++) {
+            String ip = "10." + ((i / 3) >> 16 & 0xff) + "." + ((i / 3) >> 8 & 0xff) + "." + ((i / 3) & 0xff);
+            String device = i % 3 == 0 ? "Mobile" : "Desktop";
+            batch.add(new PendingClick(urlMappingId, today.minusDays(i % DAYS).atTime(12, 0), ip, "Direct", device));
+            if (batch.size() == WRITE_BATCH_SIZE) {
+                writer.write(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writer.write(batch);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public AnalyticsSummary lastWeek() {
+        return analyticsQueryService.summarize(urlMappingId, today.minusDays(6), today);
+    }
+
+    @Benchmark
+    public AnalyticsSummary lastNinetyDays() {
+        return analyticsQueryService.summarize(urlMappingId, today.minusDays(DAYS - 1), today);
+    }
+}
@@ -0,0 +1,27 @@
+package com.bonsai.shorturl;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+// ベンチマーク用のインメモリH2。アプリと同じテーブル名・カラム名で必要な分だけ作る
+final class BenchmarkDatabase {
+
+    final SingleConnectionDataSource dataSource;
+    final JdbcTemplate jdbcTemplate;
+    final DataSourceTransactionManager transactionManager;
+
+    BenchmarkDatabase(String name) {
+        this.dataSource = new SingleConnectionDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "", true);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate.execute("create table if not exists url_mapping (id bigint primary key, short_code varchar(255) unique, "
+                + "original_url varchar(2048), click_count int default 0, expiration_timestamp timestamp)");
+        jdbcTemplate.execute("create table if not exists short_code_block (name varchar(255) primary key, next_value bigint not null)");
+    }
+
+    void close() {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+}
@@ -0,0 +1,67 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// リクエストスレッド側のクリック受付（キュー投入 + カウンタ加算）のスループット
+// 書き込み側は何もしない Writer に差し替え、キューと背圧制御そのものの性能を測る
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ClickIngestionBenchmark {
+
+    @Param({"BLOCK", "DROP_OLDEST", "SAMPLE"})
+    public BackpressurePolicy policy;
+
+    private ClickIngestionService ingestionService;
+    private ClickCounter clickCounter;
+
+    @Setup
+    public void setUp() {
+        ClickEventWriter discardingWriter = new ClickEventWriter(null, null, null, null, null, 1, Duration.ZERO, false,
+                new SimpleMeterRegistry()) {
+            @Override
+            public void write(List<PendingClick> clicks) {
+            }
+        };
+        ingestionService = new ClickIngestionService(discardingWriter, Optional.empty(), 10000, 500, Duration.ofMillis(200),
+                policy, 10, 0.8, Duration.ofSeconds(10));
+        ingestionService.start();
+        clickCounter = new ClickCounter(null);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        ingestionService.stop();
+    }
+
+    @Benchmark
+    public void submitClick() {
+        long urlMappingId = ThreadLocalRandom.current().nextLong(1000);
+        clickCounter.increment(urlMappingId);
+        ingestionService.submit(new PendingClick(urlMappingId, LocalDateTime.now(), "203.0.113.10", "Direct", "Desktop"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.bonsai.shorturl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// ClickLog への追記のスループット。fsync の設定ごとに、リクエストスレッドがどれだけ待たされるかを見る。
+// 読み手はいないのでセグメントは溜まり続ける（1イテレーションで数百MBになることがある）
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ClickLogBenchmark {
+
+    @Param({"NONE", "INTERVAL", "ALWAYS"})
+    public ClickLog.FsyncPolicy fsync;
+
+    private Path directory;
+    private ClickLog clickLog;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("click-log-bench");
+        clickLog = ClickLog.open(directory, 65536, fsync, Duration.ofSeconds(1));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        clickLog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        long urlMappingId = ThreadLocalRandom.current().nextLong(1000);
+        clickLog.append(new PendingClick(urlMappingId, LocalDateTime.now(), "203.0.113.10", "www.google.com", "Desktop"));
+        clickLog.syncIfDue();
+    }
+}
@@ -0,0 +1,64 @@
+package com.bonsai.shorturl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// User-Agent の判定とリファラーのホスト抽出（-prof gc を付けると1回あたりの割り当て量も確認できる）。
+// ヘッダーの文字列はリクエストごとに別のインスタンス（ハッシュ値も未計算）なので、User-Agent は毎回コピーしてから判定する（コピーの分の割り当ても含む）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeviceClassificationBenchmark {
+
+    static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_5 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.5 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Mobile Safari/537.36",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 14_5) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.5 Safari/605.1.15",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+            "curl/8.7.1"
+    };
+
+    static final String[] REFERRERS = {
+            "https://www.google.com/",
+            "https://t.co/AbCdEf123",
+            "https://News.Example.COM:8443/articles/2024/06/story?utm_source=feed#comments",
+            "android-app://com.google.android.gm/"
+    };
+
+    private final UserAgentClassifier classifier = new UserAgentClassifier(1000);
+
+    @Benchmark
+    public void classifyUncached(Blackhole blackhole) {
+        for (String userAgent : USER_AGENTS) {
+            blackhole.consume(UserAgentClassifier.classifyUncached(new String(userAgent)));
+        }
+    }
+
+    @Benchmark
+    public void classifyCached(Blackhole blackhole) {
+        for (String userAgent : USER_AGENTS) {
+            blackhole.consume(classifier.classify(new String(userAgent)));
+        }
+    }
+
+    @Benchmark
+    public void referrerHost(Blackhole blackhole) {
+        for (String referrer : REFERRERS) {
+            blackhole.consume(Referrers.host(referrer));
+        }
+    }
+}
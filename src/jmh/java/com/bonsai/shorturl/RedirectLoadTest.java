@@ -0,0 +1,142 @@
+package com.bonsai.shorturl;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 起動済みのアプリに対して、同時クライアント数を変えながら短縮URLへのリダイレクトを叩き続ける負荷テスト。
+// 通常モードと virtual-threads プロファイルでそれぞれアプリを起動し、同じ条件で実行して比較する:
+//
+//   mvn -Pbenchmark compile exec:java -Dexec.mainClass=com.bonsai.shorturl.RedirectLoadTest \
+//       -Dexec.args="base-url=http://localhost:8080 codes=abc123,def456 clients=1,16,64,256,1024 duration=20s"
+//
+// 各クライアントはレスポンスを受け取ったらすぐ次のリクエストを送る（クローズドループ）。
+// クライアントは HttpClient の非同期送信で表現するので、1024 クライアントでも負荷側のスレッドは増えない
+public final class RedirectLoadTest {
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final List<String> codes;
+
+    private RedirectLoadTest(String baseUrl, List<String> codes) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.codes = codes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String codes = options.get("codes");
+        if (codes == null || codes.isBlank()) {
+            System.err.println("usage: RedirectLoadTest codes=<code,...> [base-url=http://localhost:8080] "
+                    + "[clients=1,16,64,256,1024] [duration=20s] [warmup=5s]");
+            System.exit(2);
+        }
+        RedirectLoadTest loadTest = new RedirectLoadTest(options.getOrDefault("base-url", "http://localhost:8080"),
+                List.of(codes.split(",")));
+        Duration duration = parseDuration(options.getOrDefault("duration", "20s"));
+        Duration warmup = parseDuration(options.getOrDefault("warmup", "5s"));
+
+        System.out.printf("%8s %12s %10s %10s %10s %8s%n", "clients", "requests/s", "p50(ms)", "p99(ms)", "max(ms)", "errors");
+        for (String clients : options.getOrDefault("clients", "1,16,64,256,1024").split(",")) {
+            int clientCount = Integer.parseInt(clients.trim());
+            loadTest.run(clientCount, warmup);
+            Result result = loadTest.run(clientCount, duration);
+            System.out.printf("%8d %12.1f %10.2f %10.2f %10.2f %8d%n", clientCount,
+                    result.requests() / (duration.toNanos() / 1e9),
+                    result.percentile(0.50) / 1e6, result.percentile(0.99) / 1e6, result.percentile(1.0) / 1e6,
+                    result.errors());
+        }
+    }
+
+    private Result run(int clientCount, Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<List<Long>> latencies = new ArrayList<>(clientCount);
+        List<CompletableFuture<Void>> clients = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            List<Long> clientLatencies = new ArrayList<>();
+            latencies.add(clientLatencies);
+            clients.add(loop(deadline, clientLatencies, errors));
+        }
+        CompletableFuture.allOf(clients.toArray(CompletableFuture[]::new)).join();
+
+        List<Long> all = new ArrayList<>();
+        latencies.forEach(all::addAll);
+        Collections.sort(all);
+        return new Result(all, errors.get());
+    }
+
+    // 1クライアント分のループ。期限までリクエストを1件ずつ順番に送り続ける
+    private CompletableFuture<Void> loop(long deadline, List<Long> latencies, AtomicLong errors) {
+        if (System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String code = codes.get(ThreadLocalRandom.current().nextInt(codes.size()));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/" + code))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    if (error != null || response.statusCode() / 100 != 3) {
+                        errors.incrementAndGet();
+                    } else {
+                        latencies.add(System.nanoTime() - start);
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> loop(deadline, latencies, errors));
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+    private static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+
+    private record Result(List<Long> sortedLatencies, long errors) {
+
+        long requests() {
+            return sortedLatencies.size();
+        }
+
+        double percentile(double quantile) {
+            if (sortedLatencies.isEmpty()) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sortedLatencies.size()) - 1;
+            return sortedLatencies.get(Math.max(0, Math.min(index, sortedLatencies.size() - 1)));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.bonsai.shorturl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// 短縮コードの解決: リポジトリの findByShortCode（JPA + DB）と、RedirectCache のヒット時の比較。
+// アプリを同じJVM内で起動し、リダイレクトと同じ Bean を通す
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedirectLookupBenchmark {
+
+    @Param({"10000"})
+    public int links;
+
+    private ConfigurableApplicationContext context;
+    private UrlMappingRepository urlMappingRepository;
+    private RedirectCache redirectCache;
+    private String[] codes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplication(ShortUrlApplication.class).run(
+                "--server.port=0",
+                "--shorturl.redirect-cache.max-size=" + links,
+                "--shorturl.redirect-cache.snapshot.enabled=false",
+                "--logging.level.root=WARN");
+        urlMappingRepository = context.getBean(UrlMappingRepository.class);
+        redirectCache = context.getBean(RedirectCache.class);
+        ShortCodeFilter shortCodeFilter = context.getBean(ShortCodeFilter.class);
+
+        codes = new String[links];
+        List<UrlMapping> mappings = new ArrayList<>(links);
+        for (int i = 0; i < links; i++) {
+            codes[i] = Base62.encode(916132832L + i);
+            mappings.add(new UrlMapping(codes[i], "https://example.com/articles/" + i));
+        }
+        urlMappingRepository.saveAll(mappings);
+        for (String code : codes) {
+            // 起動後に保存したリンクはフィルタに入っていないので、リンク登録時と同じように追加する
+            shortCodeFilter.add(code);
+            redirectCache.find(code);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public RedirectTarget database() {
+        return urlMappingRepository.findByShortCode(randomCode()).map(RedirectTarget::from).orElseThrow();
+    }
+
+    @Benchmark
+    public RedirectTarget cacheHit() {
+        return redirectCache.find(randomCode());
+    }
+
+    private String randomCode() {
+        return codes[ThreadLocalRandom.current().nextInt(codes.length)];
+    }
+}
@@ -0,0 +1,80 @@
+package com.bonsai.shorturl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+// アプリを同じJVM内で起動し、GET /{shortCode} を RedirectFilter で返す場合と
+// 従来どおり Spring Security + MVC を通す場合を比べる。
+// サーバー側の割り当ても同じJVMで数えられるので、-prof gc の gc.alloc.rate.norm で1リクエストあたりの割り当て量を比較できる:
+//
+//   mvn -Pbenchmark compile exec:exec -Djmh.include="RedirectPathBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedirectPathBenchmark {
+
+    private static final String SHORT_CODE = "bench1";
+
+    @Param({"true", "false"})
+    public boolean fastPath;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplication(ShortUrlApplication.class).run(
+                "--server.port=0",
+                "--shorturl.redirect.fast-path.enabled=" + fastPath,
+                "--shorturl.geoip.fallback=none",
+                "--logging.level.root=WARN");
+        context.getBean(UrlMappingRepository.class).save(new UrlMapping(SHORT_CODE, "https://example.com/landing"));
+        // 起動後に保存したリンクはフィルタに入っていないので、リンク登録時と同じように追加する（しないと 404 になる）
+        context.getBean(ShortCodeFilter.class).add(SHORT_CODE);
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/" + SHORT_CODE)).GET().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int redirect() throws IOException, InterruptedException {
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 302) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+}
@@ -0,0 +1,57 @@
+package com.bonsai.shorturl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// 短縮コード生成: 以前の UUID 先頭6文字と、各 ShortCodeGenerator の比較
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShortCodeGenerationBenchmark {
+
+    private BenchmarkDatabase database;
+    private ShortCodeGenerator blockSequence;
+    private ShortCodeGenerator snowflake;
+
+    @Setup
+    public void setUp() {
+        database = new BenchmarkDatabase("codegen");
+        blockSequence = new BlockSequenceShortCodeGenerator(database.jdbcTemplate, database.transactionManager, 1000, 916132832L);
+        snowflake = new SnowflakeShortCodeGenerator(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public String uuidPrefix() {
+        return UUID.randomUUID().toString().substring(0, 6);
+    }
+
+    @Benchmark
+    public String blockSequence() {
+        return blockSequence.nextCode();
+    }
+
+    @Benchmark
+    public String snowflake() {
+        return snowflake.nextCode();
+    }
+}
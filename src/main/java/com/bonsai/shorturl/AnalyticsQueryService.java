@@ -0,0 +1,99 @@
+package com.bonsai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 分析ページ用の集計。集計はすべてDB側で行い、結果の小さなDTOだけを受け取る
+// source=rollup（既定）は日別集計テーブルとスケッチを、source=events は日別のクリックテーブルを直接 GROUP BY する
+@Service
+@Transactional(readOnly = true)
+public class AnalyticsQueryService {
+
+    private static final int TOP_VALUE_COUNT = 5;
+    private static final Pageable TOP_VALUES = PageRequest.of(0, TOP_VALUE_COUNT);
+    // 分析ページで集計する最長の期間（to から遡る日数）
+    private static final int MAX_RANGE_DAYS = 365;
+
+    private final ClickEventStore clickEventStore;
+    private final DailyClickRollupRepository dailyClickRollupRepository;
+    private final DailyDimensionRollupRepository dailyDimensionRollupRepository;
+    private final VisitorSketchService visitorSketchService;
+    private final boolean useRollups;
+
+    public AnalyticsQueryService(ClickEventStore clickEventStore,
+                                 DailyClickRollupRepository dailyClickRollupRepository,
+                                 DailyDimensionRollupRepository dailyDimensionRollupRepository,
+                                 VisitorSketchService visitorSketchService,
+                                 @Value("${shorturl.analytics.source:rollup}") String source) {
+        this.clickEventStore = clickEventStore;
+        this.dailyClickRollupRepository = dailyClickRollupRepository;
+        this.dailyDimensionRollupRepository = dailyDimensionRollupRepository;
+        this.visitorSketchService = visitorSketchService;
+        this.useRollups = !"events".equalsIgnoreCase(source);
+    }
+
+    // from, to はどちらも含む
+    public AnalyticsSummary summarize(Long urlMappingId, LocalDate from, LocalDate to) {
+        if (useRollups) {
+            return new AnalyticsSummary(from, to,
+                    dailyClickRollupRepository.sumDevices(urlMappingId, from, to),
+                    fillMissingDays(dailyClickRollupRepository.findDailyCounts(urlMappingId, from, to), from, to),
+                    visitorSketchService.countUniqueVisitors(urlMappingId, from, to),
+                    dailyDimensionRollupRepository.findTopValues(urlMappingId, RollupDimension.COUNTRY, from, to, TOP_VALUES),
+                    dailyDimensionRollupRepository.findTopValues(urlMappingId, RollupDimension.REFERRER, from, to, TOP_VALUES));
+        }
+
+        long mobile = 0;
+        long desktop = 0;
+        for (DimensionCount device : clickEventStore.countByDeviceType(urlMappingId, from, to)) {
+            if ("Mobile".equals(device.value())) {
+                mobile += device.clicks();
+            } else {
+                desktop += device.clicks();
+            }
+        }
+        return new AnalyticsSummary(from, to,
+                new DeviceBreakdown(desktop, mobile),
+                fillMissingDays(clickEventStore.countByDay(urlMappingId, from, to), from, to),
+                clickEventStore.countDistinctIpAddress(urlMappingId, from, to),
+                clickEventStore.countByCountry(urlMappingId, from, to, TOP_VALUE_COUNT),
+                clickEventStore.countByReferrer(urlMappingId, from, to, TOP_VALUE_COUNT));
+    }
+
+    // 分析ページの期間の開始日。指定がなければ to までの7日間。to より後なら to に、長すぎる期間は1年に切り詰める
+    public static LocalDate rangeStart(LocalDate from, LocalDate to) {
+        if (from == null) {
+            return to.minusDays(6);
+        }
+        if (from.isAfter(to)) {
+            return to;
+        }
+        return from.isBefore(to.minusDays(MAX_RANGE_DAYS)) ? to.minusDays(MAX_RANGE_DAYS) : from;
+    }
+
+    public long countUniqueVisitors(Long urlMappingId) {
+        return visitorSketchService.countUniqueVisitors(urlMappingId);
+    }
+
+    // クリックがなかった日も0件としてグラフに出す
+    private List<DailyCount> fillMissingDays(List<DailyCount> counts, LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> byDate = new HashMap<>();
+        for (DailyCount count : counts) {
+            byDate.put(count.date(), count.clicks());
+        }
+        List<DailyCount> filled = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            filled.add(new DailyCount(date, byDate.getOrDefault(date, 0L)));
+        }
+        return filled;
+    }
+}
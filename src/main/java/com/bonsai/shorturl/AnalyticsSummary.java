@@ -0,0 +1,14 @@
+package com.bonsai.shorturl;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// 分析ページに表示する、指定期間の集計結果
+public record AnalyticsSummary(LocalDate from,
+                               LocalDate to,
+                               DeviceBreakdown devices,
+                               List<DailyCount> dailyCounts,
+                               long uniqueVisitors,
+                               List<DimensionCount> topCountries,
+                               List<DimensionCount> topReferrers) {
+}
@@ -0,0 +1,68 @@
+package com.bonsai.shorturl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// 非同期処理の同時実行数を制限する。上限に達している間はスレッドを止めずにキューで待たせる
+final class AsyncLimiter {
+
+    private final int maxConcurrent;
+    private final Deque<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+
+    AsyncLimiter(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (RuntimeException e) {
+                release();
+                result.completeExceptionally(e);
+                return;
+            }
+            future.whenComplete((value, error) -> {
+                release();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+
+        boolean runNow;
+        synchronized (this) {
+            runNow = running < maxConcurrent;
+            if (runNow) {
+                running++;
+            } else {
+                waiting.add(start);
+            }
+        }
+        if (runNow) {
+            start.run();
+        }
+        return result;
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        // 枠は解放せずに、そのまま待っていた処理に引き継ぐ
+        if (next != null) {
+            next.run();
+        }
+    }
+}
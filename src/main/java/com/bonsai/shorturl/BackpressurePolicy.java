@@ -0,0 +1,11 @@
+package com.bonsai.shorturl;
+
+// クリックのキューが詰まったときの振る舞い
+public enum BackpressurePolicy {
+    // 空きが出るまでリクエストスレッドを待たせる（クリックは失わない）
+    BLOCK,
+    // 一番古いクリックを捨てて新しいクリックを入れる
+    DROP_OLDEST,
+    // しきい値を超えたら一定の割合だけ受け付ける
+    SAMPLE
+}
@@ -0,0 +1,24 @@
+package com.bonsai.shorturl;
+
+public final class Base62 {
+
+    private static final char[] ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+    // 2^63 - 1 は62進数で11桁
+    private static final int MAX_LENGTH = 11;
+
+    private Base62() {
+    }
+
+    public static String encode(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative: " + value);
+        }
+        char[] buffer = new char[MAX_LENGTH];
+        int position = MAX_LENGTH;
+        do {
+            buffer[--position] = ALPHABET[(int) (value % 62)];
+            value /= 62;
+        } while (value > 0);
+        return new String(buffer, position, MAX_LENGTH - position);
+    }
+}
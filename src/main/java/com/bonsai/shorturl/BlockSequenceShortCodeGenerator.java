@@ -0,0 +1,84 @@
+package com.bonsai.shorturl;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 連番を62進数にして短縮コードにする
+// 連番は blockSize 個ずつDBから借りてくるので、ブロック内ではDBにアクセスせずロックもしない
+public class BlockSequenceShortCodeGenerator implements ShortCodeGenerator {
+
+    private static final String SEQUENCE_NAME = "short_code";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int blockSize;
+    private final long initialValue;
+    private final AtomicReference<Block> current = new AtomicReference<>(new Block(0, 0));
+    private final ReentrantLock leaseLock = new ReentrantLock();
+
+    public BlockSequenceShortCodeGenerator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                           int blockSize, long initialValue) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // 呼び出し元のトランザクションがロールバックしても、借りた範囲は戻さない
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = blockSize;
+        this.initialValue = initialValue;
+    }
+
+    @Override
+    public String nextCode() {
+        while (true) {
+            Block block = current.get();
+            long value = block.next.getAndIncrement();
+            if (value < block.end) {
+                return Base62.encode(value);
+            }
+            // ブロックを使い切ったときだけ、1スレッドが新しいブロックを借りる
+            // DBアクセス中に仮想スレッドがキャリアスレッドを占有しないよう、synchronized ではなく Lock を使う
+            leaseLock.lock();
+            try {
+                if (current.get() == block) {
+                    current.set(leaseBlock());
+                }
+            } finally {
+                leaseLock.unlock();
+            }
+        }
+    }
+
+    private Block leaseBlock() {
+        Long end = transactionTemplate.execute(status -> {
+            int updated = jdbcTemplate.update(
+                    "update short_code_block set next_value = next_value + ? where name = ?", blockSize, SEQUENCE_NAME);
+            if (updated == 0) {
+                if (Savepoints.runIgnoringDuplicateKey(jdbcTemplate, () -> jdbcTemplate.update(
+                        "insert into short_code_block (name, next_value) values (?, ?)", SEQUENCE_NAME, initialValue + blockSize))) {
+                    return initialValue + blockSize;
+                }
+                // 他のノードが先に作成した
+                jdbcTemplate.update(
+                        "update short_code_block set next_value = next_value + ? where name = ?", blockSize, SEQUENCE_NAME);
+            }
+            return jdbcTemplate.queryForObject(
+                    "select next_value from short_code_block where name = ?", Long.class, SEQUENCE_NAME);
+        });
+        return new Block(end - blockSize, end);
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.bonsai.shorturl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 文字列の Bloom フィルタ。mightContain が false なら確実に含まれていない（true は偽陽性のことがある）。
+// expectedInsertions 件入れたときの偽陽性率が falsePositiveRate になるようにビット数とハッシュ数を決める
+// （100万件・1%で約1.2MB）。ビットは AtomicLongArray に持つので、ロックなしで並行に追加・検索できる
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final LongAdder insertions = new LongAdder();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive: " + expectedInsertions);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+        }
+        // m = -n ln(p) / (ln 2)^2, k = m / n * ln 2
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    public void put(String value) {
+        long hash1 = HyperLogLog.hash64(value);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(index);
+            while ((word & mask) == 0) {
+                long witness = words.compareAndExchange(index, word, word | mask);
+                if (witness == word) {
+                    break;
+                }
+                word = witness;
+            }
+        }
+        insertions.increment();
+    }
+
+    public boolean mightContain(String value) {
+        long hash1 = HyperLogLog.hash64(value);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 今のビットの埋まり具合から見積もった偽陽性率（立っているビットの割合の hashCount 乗）
+    public double estimatedFalsePositiveRate() {
+        long setBits = 0;
+        for (int i = 0; i < words.length(); i++) {
+            setBits += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) setBits / bitCount, hashCount);
+    }
+
+    // put した回数（同じ値を何度入れても数える）
+    public long getInsertionCount() {
+        return insertions.sum();
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public long sizeInBytes() {
+        return bitCount / 8;
+    }
+
+    // 2つ目のハッシュ。奇数にして、ビット数と互いに素になりやすくする
+    private static long mix(long hash) {
+        hash = Long.rotateLeft(hash, 31) * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 29;
+        hash *= 0xbf58476d1ce4e5b9L;
+        hash ^= hash >>> 32;
+        return hash | 1;
+    }
+}
@@ -0,0 +1,159 @@
+package com.bonsai.shorturl;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// 短縮URLの一括作成API
+// 入力は JSON 配列 / NDJSON / CSV (originalUrl,customCode,expirationTimestamp)。
+// 入力を読みながらチャンク単位で登録し、結果を1行1件のNDJSONで順次返すので、件数が多くてもメモリ使用量は一定
+@Controller
+public class BulkLinkController {
+
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int CHUNK_SIZE = 500;
+
+    private final BulkLinkService bulkLinkService;
+    private final ObjectMapper objectMapper;
+
+    public BulkLinkController(BulkLinkService bulkLinkService, ObjectMapper objectMapper) {
+        this.bulkLinkService = bulkLinkService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(value = "/api/links/bulk", consumes = {"application/json", "application/x-ndjson", "text/csv"})
+    public ResponseEntity<StreamingResponseBody> createLinks(HttpServletRequest request, @AuthenticationPrincipal User user) throws IOException {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        InputStream body = request.getInputStream();
+        boolean csv = request.getContentType() != null && request.getContentType().startsWith("text/csv");
+
+        StreamingResponseBody stream = outputStream -> {
+            Iterator<BulkLinkRecord> records = csv ? new CsvRecordIterator(body) : readJson(body);
+            writeResults(records, outputStream, user);
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(stream);
+    }
+
+    private Iterator<BulkLinkRecord> readJson(InputStream body) throws IOException {
+        // ルートが配列なら要素ごとに、NDJSONなら1行ずつ読む
+        MappingIterator<BulkLinkRecord> iterator = objectMapper.readerFor(BulkLinkRecord.class).readValues(body);
+        return iterator;
+    }
+
+    private void writeResults(Iterator<BulkLinkRecord> records, OutputStream outputStream, User user) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(BulkLinkResult.class);
+        List<BulkLinkRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+        long line = 1;
+        while (records.hasNext()) {
+            chunk.add(records.next());
+            if (chunk.size() == CHUNK_SIZE || !records.hasNext()) {
+                for (BulkLinkResult result : bulkLinkService.createChunk(chunk, line, user)) {
+                    outputStream.write(writer.writeValueAsBytes(result));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+                line += chunk.size();
+                chunk.clear();
+            }
+        }
+    }
+
+    // 1行1件のCSVを順に読む。1行目が originalUrl で始まる場合はヘッダーとして読み飛ばす
+    static final class CsvRecordIterator implements Iterator<BulkLinkRecord> {
+
+        private final BufferedReader reader;
+        private BulkLinkRecord next;
+        private boolean firstLine = true;
+
+        CsvRecordIterator(InputStream inputStream) {
+            this.reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    boolean header = firstLine && line.startsWith("originalUrl");
+                    firstLine = false;
+                    if (header || line.isBlank()) {
+                        continue;
+                    }
+                    List<String> columns = splitCsvLine(line);
+                    next = new BulkLinkRecord(column(columns, 0), column(columns, 1), column(columns, 2));
+                    return true;
+                }
+                return false;
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read CSV input", e);
+            }
+        }
+
+        @Override
+        public BulkLinkRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            BulkLinkRecord record = next;
+            next = null;
+            return record;
+        }
+
+        private static String column(List<String> columns, int index) {
+            return index < columns.size() && !columns.get(index).isEmpty() ? columns.get(index) : null;
+        }
+
+        // ダブルクォートで囲まれた値（"" はエスケープされた " ）に対応する
+        static List<String> splitCsvLine(String line) {
+            List<String> columns = new ArrayList<>(3);
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        current.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    columns.add(current.toString().trim());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            columns.add(current.toString().trim());
+            return columns;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.bonsai.shorturl;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// 一括作成APIの入力1件分（JSON / CSV 共通）
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BulkLinkRecord(String originalUrl, String customCode, String expirationTimestamp) {
+}
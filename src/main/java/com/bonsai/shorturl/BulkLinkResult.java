@@ -0,0 +1,16 @@
+package com.bonsai.shorturl;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// 一括作成APIの出力1件分。入力の何件目かを line で返す
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BulkLinkResult(long line, String originalUrl, String shortCode, String status, String error) {
+
+    public static BulkLinkResult created(long line, String originalUrl, String shortCode) {
+        return new BulkLinkResult(line, originalUrl, shortCode, "created", null);
+    }
+
+    public static BulkLinkResult failed(long line, String originalUrl, String error) {
+        return new BulkLinkResult(line, originalUrl, null, "error", error);
+    }
+}
@@ -0,0 +1,186 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// 一括作成の1チャンク分を処理する。チャンクごとに1トランザクションで、
+// カスタムコードの重複確認は1回のクエリ、INSERTはJDBCバッチでまとめて行う
+@Service
+public class BulkLinkService {
+
+    private static final Pattern CUSTOM_CODE = Pattern.compile("[a-zA-Z0-9-]+");
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final UrlMappingRepository urlMappingRepository;
+    private final ShortCodeGenerator shortCodeGenerator;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final LinkSearchIndex linkSearchIndex;
+    private final ShortCodeFilter shortCodeFilter;
+    private final LinkExpiryService linkExpiryService;
+
+    public BulkLinkService(UrlMappingRepository urlMappingRepository,
+                           ShortCodeGenerator shortCodeGenerator,
+                           EntityManager entityManager,
+                           PlatformTransactionManager transactionManager,
+                           LinkSearchIndex linkSearchIndex,
+                           ShortCodeFilter shortCodeFilter,
+                           LinkExpiryService linkExpiryService) {
+        this.urlMappingRepository = urlMappingRepository;
+        this.shortCodeGenerator = shortCodeGenerator;
+        this.linkSearchIndex = linkSearchIndex;
+        this.shortCodeFilter = shortCodeFilter;
+        this.linkExpiryService = linkExpiryService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // records の i 番目の行番号は firstLine + i
+    public List<BulkLinkResult> createChunk(List<BulkLinkRecord> records, long firstLine, User user) {
+        List<BulkLinkResult> results = new ArrayList<>(records.size());
+        List<UrlMapping> mappings = new ArrayList<>(records.size());
+        List<Long> mappingLines = new ArrayList<>(records.size());
+        // mappings の各行がカスタムコードかどうか
+        List<Boolean> mappingCustom = new ArrayList<>(records.size());
+
+        // フィルタで存在しないと分かるコードはDBで確かめない
+        Set<String> requestedCodes = new HashSet<>();
+        for (BulkLinkRecord record : records) {
+            if (record.customCode() != null && !record.customCode().isBlank()
+                    && shortCodeFilter.mightContain(record.customCode().trim())) {
+                requestedCodes.add(record.customCode().trim());
+            }
+        }
+        Set<String> takenCodes = requestedCodes.isEmpty()
+                ? new HashSet<>()
+                : new HashSet<>(urlMappingRepository.findExistingShortCodes(requestedCodes));
+
+        for (int i = 0; i < records.size(); i++) {
+            BulkLinkRecord record = records.get(i);
+            long line = firstLine + i;
+            String error = validateUrl(record.originalUrl());
+            LocalDateTime expiration = null;
+            if (error == null && record.expirationTimestamp() != null && !record.expirationTimestamp().isBlank()) {
+                try {
+                    expiration = LocalDateTime.parse(record.expirationTimestamp().trim());
+                } catch (DateTimeParseException e) {
+                    error = "expirationTimestamp must be ISO-8601 (e.g. 2030-01-31T23:59)";
+                }
+            }
+
+            String shortCode = null;
+            if (error == null && record.customCode() != null && !record.customCode().isBlank()) {
+                shortCode = record.customCode().trim();
+                if (!CUSTOM_CODE.matcher(shortCode).matches()) {
+                    error = "customCode may only contain letters, digits and hyphens";
+                } else if (RedirectFilter.isReserved(shortCode)) {
+                    error = "customCode is reserved: " + shortCode;
+                } else if (!takenCodes.add(shortCode)) {
+                    // DBに既にある、または同じリクエスト内で重複している
+                    error = "customCode is already in use: " + shortCode;
+                }
+            }
+
+            if (error != null) {
+                results.add(BulkLinkResult.failed(line, record.originalUrl(), error));
+                continue;
+            }
+            boolean custom = shortCode != null;
+            if (!custom) {
+                shortCode = shortCodeGenerator.nextCode();
+            }
+            UrlMapping mapping = new UrlMapping(shortCode, record.originalUrl().trim());
+            mapping.setExpirationTimestamp(expiration);
+            mapping.setUser(user);
+            mappings.add(mapping);
+            mappingLines.add(line);
+            mappingCustom.add(custom);
+        }
+
+        if (!mappings.isEmpty()) {
+            try {
+                insertAll(mappings);
+                List<String> shortCodes = new ArrayList<>(mappings.size());
+                List<LinkSearchEntry> searchEntries = new ArrayList<>(mappings.size());
+                for (int i = 0; i < mappings.size(); i++) {
+                    UrlMapping mapping = mappings.get(i);
+                    shortCodes.add(mapping.getShortCode());
+                    searchEntries.add(new LinkSearchEntry(mapping.getId(), mapping.getShortCode(), mapping.getOriginalUrl()));
+                    linkExpiryService.schedule(mapping.getId(), mapping.getShortCode(), mapping.getExpirationTimestamp());
+                    results.add(BulkLinkResult.created(mappingLines.get(i), mapping.getOriginalUrl(), mapping.getShortCode()));
+                }
+                shortCodeFilter.addAll(shortCodes);
+                linkSearchIndex.putAll(user.getId(), searchEntries);
+            } catch (DataIntegrityViolationException e) {
+                // 確認後に他のリクエストが同じコードを登録した場合など。1件ずつ登録し直して失敗した行だけ返す
+                for (int i = 0; i < mappings.size(); i++) {
+                    results.add(insertOne(mappings.get(i), mappingLines.get(i), mappingCustom.get(i)));
+                }
+            }
+        }
+
+        results.sort((a, b) -> Long.compare(a.line(), b.line()));
+        return results;
+    }
+
+    private void insertAll(List<UrlMapping> mappings) {
+        transactionTemplate.executeWithoutResult(status -> {
+            urlMappingRepository.saveAllAndFlush(mappings);
+            // チャンクごとに永続化コンテキストを空にして、メモリ使用量を一定に保つ
+            entityManager.clear();
+        });
+    }
+
+    // 自動生成のコードがまれにカスタムURLと同じ文字列になった場合は、shortenUrl と同じく次のコードで作り直す
+    private BulkLinkResult insertOne(UrlMapping mapping, long line, boolean custom) {
+        String shortCode = mapping.getShortCode();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            UrlMapping copy = new UrlMapping(shortCode, mapping.getOriginalUrl());
+            copy.setExpirationTimestamp(mapping.getExpirationTimestamp());
+            copy.setUser(mapping.getUser());
+            try {
+                transactionTemplate.executeWithoutResult(status -> urlMappingRepository.save(copy));
+            } catch (DataIntegrityViolationException e) {
+                if (custom) {
+                    return BulkLinkResult.failed(line, copy.getOriginalUrl(), "customCode is already in use: " + shortCode);
+                }
+                shortCode = shortCodeGenerator.nextCode();
+                continue;
+            }
+            shortCodeFilter.add(shortCode);
+            linkSearchIndex.put(copy.getUser().getId(), copy.getId(), shortCode, copy.getOriginalUrl());
+            linkExpiryService.schedule(copy.getId(), shortCode, copy.getExpirationTimestamp());
+            return BulkLinkResult.created(line, copy.getOriginalUrl(), shortCode);
+        }
+        return BulkLinkResult.failed(line, mapping.getOriginalUrl(), "could not generate a unique short code, please retry");
+    }
+
+    private static String validateUrl(String originalUrl) {
+        if (originalUrl == null || originalUrl.isBlank()) {
+            return "originalUrl is required";
+        }
+        try {
+            URI uri = new URI(originalUrl.trim());
+            String scheme = uri.getScheme();
+            if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme) || uri.getHost() == null) {
+                return "originalUrl must be an absolute http(s) URL";
+            }
+        } catch (URISyntaxException e) {
+            return "originalUrl is not a valid URL";
+        }
+        return null;
+    }
+}
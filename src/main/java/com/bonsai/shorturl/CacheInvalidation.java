@@ -0,0 +1,57 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.time.LocalDateTime;
+
+// JdbcCacheInvalidationBus が各ノードに配る通知。各ノードは前回読んだ id より後ろを読む
+@Entity
+@Table(indexes = @Index(name = "idx_cache_invalidation_created_at", columnList = "created_at"))
+public class CacheInvalidation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 32)
+    private String topic;
+
+    @Column(name = "cache_key", nullable = false)
+    private String cacheKey;
+
+    // 通知したノード（自分の通知は読み飛ばす）
+    @Column(nullable = false, length = 128)
+    private String origin;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public CacheInvalidation() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
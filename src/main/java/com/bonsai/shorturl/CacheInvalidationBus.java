@@ -0,0 +1,90 @@
+package com.bonsai.shorturl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// ノードごとにメモリ上に持っている状態（リダイレクトキャッシュなど）を、他のノードでの変更に合わせて更新するための通知。
+// publish したノード自身には届かないので、呼び出し元は自分の状態を先に更新しておく。
+// 届くのは「何が変わったか」だけで、受け取った側は自分のキャッシュを捨てるか、DBから読み直す
+public abstract class CacheInvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    public enum Topic {
+        // key: 短縮コード。リダイレクトキャッシュから外す
+        REDIRECT,
+        // key: 短縮コード。ShortCodeFilter に追加する
+        SHORT_CODE,
+        // key: ユーザーid。検索インデックスを捨てる
+        LINK_SEARCH,
+        // key: 日付。日別クリックテーブルの一覧を読み直す
+        CLICK_PARTITIONS
+    }
+
+    private final Map<Topic, List<Consumer<String>>> listeners = new EnumMap<>(Topic.class);
+    private final List<Runnable> missedListeners = new CopyOnWriteArrayList<>();
+
+    protected CacheInvalidationBus() {
+        for (Topic topic : Topic.values()) {
+            listeners.put(topic, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    // 他のノードに通知する。届かなくても各キャッシュの TTL や定期的な作り直しで追いつくので、失敗しても例外にはしない
+    public abstract void publish(Topic topic, String key);
+
+    public void publishAll(Topic topic, Collection<String> keys) {
+        for (String key : keys) {
+            publish(topic, key);
+        }
+    }
+
+    public void subscribe(Topic topic, Consumer<String> listener) {
+        listeners.get(topic).add(listener);
+    }
+
+    // 通知を取りこぼしたかもしれないときに呼ばれる（どの通知かは分からないので、受け取った側は全体を読み直す）
+    public void subscribeMissed(Runnable listener) {
+        missedListeners.add(listener);
+    }
+
+    // 他のノードが出したばかりの通知を、次の定期的な読み込みを待たずに読みに行く。
+    // 読みに行ったら true（その間に届いた通知は購読者に渡し終わっている）。同じプロセス内の実装は同期的に届くので何もしない
+    public boolean catchUp() {
+        return false;
+    }
+
+    // since 以降に出された通知のキー（このノードが起動する前のものも含む）。ファイルから戻したキャッシュを起動前の変更に合わせる用。
+    // 古い通知が削除されていて since までさかのぼれなければ null。同じプロセス内の実装は起動前の通知がないので空
+    public List<String> keysPublishedSince(Topic topic, LocalDateTime since) {
+        return List.of();
+    }
+
+    protected void deliverMissed() {
+        for (Runnable listener : missedListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("Failed to handle missed invalidations", e);
+            }
+        }
+    }
+
+    protected void deliver(Topic topic, String key) {
+        for (Consumer<String> listener : listeners.get(topic)) {
+            try {
+                listener.accept(key);
+            } catch (RuntimeException e) {
+                log.warn("Failed to apply {} invalidation for {}", topic, key, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.bonsai.shorturl;
+
+import java.time.Duration;
+
+// 同じIPからの連続クリックで毎回引き直さないよう、結果をLRUキャッシュに載せる
+public class CachingGeoIpResolver implements GeoIpResolver {
+
+    private final GeoIpResolver delegate;
+    private final LruCache<String, GeoLocation> cache;
+
+    public CachingGeoIpResolver(GeoIpResolver delegate, int maxSize, Duration ttl) {
+        this.delegate = delegate;
+        this.cache = new LruCache<>(maxSize, ttl);
+    }
+
+    @Override
+    public GeoLocation resolve(String ipAddress) {
+        if (ipAddress == null) {
+            return null;
+        }
+        GeoLocation cached = cache.get(ipAddress);
+        if (cached != null) {
+            return cached == GeoLocation.UNKNOWN ? null : cached;
+        }
+        GeoLocation resolved = delegate.resolve(ipAddress);
+        // 見つからなかった結果もキャッシュして、同じIPで再度問い合わせないようにする
+        cache.put(ipAddress, resolved != null ? resolved : GeoLocation.UNKNOWN);
+        return resolved;
+    }
+
+    public LruCache<String, GeoLocation> getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,124 @@
+package com.bonsai.shorturl;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// クリック数をリンクごとのカウンタにメモリ上で加算しておき、
+// 定期的に差分だけを1回のバッチUPDATEでDBへ反映する。
+// カウンタは LongAdder なので、人気のリンクに同時にクリックが来ても同じロックを取り合わない。
+// flush がマップから外したカウンタにあとから加算したスレッドは、その分を自分で新しいカウンタへ移す
+@Component
+public class ClickCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(ClickCounter.class);
+
+    private static final String INCREMENT_CLICK_COUNT =
+            "update url_mapping set click_count = click_count + ? where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    // flush がマップから外して、DBへ書き込んでいる最中の差分（その間も getPendingCount に含める）
+    private volatile Map<Long, Long> flushing = Map.of();
+    // スケジューラと終了時の flush を重ねない。DBに書き込む間も仮想スレッドがキャリアスレッドを占有しないよう Lock にする
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public ClickCounter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void increment(Long urlMappingId) {
+        add(urlMappingId, 1L);
+    }
+
+    // まだDBに反映されていないクリック数
+    public long getPendingCount(Long urlMappingId) {
+        LongAdder count = pending.get(urlMappingId);
+        return (count != null ? count.sum() : 0L) + flushing.getOrDefault(urlMappingId, 0L);
+    }
+
+    public int getPendingLinkCount() {
+        return pending.size();
+    }
+
+    @Scheduled(fixedDelayString = "${shorturl.click-counter.flush-interval:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        // 前回から一度もクリックされていないリンクはマップに残らない
+        Map<Long, Long> deltas = new ConcurrentHashMap<>();
+        flushing = deltas;
+        for (Map.Entry<Long, LongAdder> entry : pending.entrySet()) {
+            Long urlMappingId = entry.getKey();
+            LongAdder count = entry.getValue();
+            // 外す前に flushing に載せておく（その間 getPendingCount から消えないように。一瞬二重に数えることはある）
+            long seen = count.sum();
+            deltas.merge(urlMappingId, seen, Long::sum);
+            pending.remove(urlMappingId, count);
+            // 外すまでに加算された分も取る。遅れて加算したスレッドが先に移していれば seen より小さくなる
+            long taken = count.sumThenReset();
+            deltas.merge(urlMappingId, taken - seen, Long::sum);
+        }
+
+        List<Object[]> increments = new ArrayList<>(deltas.size());
+        deltas.forEach((urlMappingId, delta) -> {
+            if (delta != 0) {
+                increments.add(new Object[]{delta, urlMappingId});
+            }
+        });
+        // 複数のノードが同時に flush してもデッドロックしないよう、id の順に更新する
+        increments.sort(Comparator.comparing(row -> (Long) row[1]));
+        if (increments.isEmpty()) {
+            flushing = Map.of();
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(INCREMENT_CLICK_COUNT, increments);
+        } catch (RuntimeException e) {
+            // 反映できなかった分は次回のflushで再度書き込む
+            deltas.forEach(this::add);
+            log.error("Failed to flush click counts for {} links", increments.size(), e);
+        } finally {
+            flushing = Map.of();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void add(Long urlMappingId, long delta) {
+        LongAdder count = pending.get(urlMappingId);
+        if (count == null) {
+            count = pending.computeIfAbsent(urlMappingId, id -> new LongAdder());
+        }
+        count.add(delta);
+        // flush が外したカウンタだった。flush が読み終えた後の加算かもしれないので、残っている分を新しいカウンタへ移す
+        // （sumThenReset はセルごとに取り出すので、flush と同時に移しても二重にも漏れもしない）
+        if (pending.get(urlMappingId) != count) {
+            long late = count.sumThenReset();
+            if (late != 0) {
+                add(urlMappingId, late);
+            }
+        }
+    }
+}
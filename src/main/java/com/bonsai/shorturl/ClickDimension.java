@@ -0,0 +1,31 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+
+// クリックの国・都市・リファラーのホスト・デバイスの文字列辞書
+// click_event_* には文字列の代わりにこの id を保存する
+@Entity
+public class ClickDimension {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, unique = true)
+    private String dimensionValue;
+
+    public ClickDimension() {
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getDimensionValue() {
+        return dimensionValue;
+    }
+}
@@ -0,0 +1,96 @@
+package com.bonsai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 文字列 ⇔ click_dimension.id の変換。値の種類は国・都市・リファラーのホスト・デバイスだけなので全件メモリに持つ。
+// リファラーのホストには限りがないので、辞書が limit 件に達したら初めてのリファラーは knownOr で別の値に置き換える
+// （件数はこのノードが知っている分で数えるので、クラスタでは limit を少し超えることがある）
+@Component
+public class ClickDimensionDictionary {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> values = new ConcurrentHashMap<>();
+    private final int limit;
+    // 起動後、最初に knownOr を呼んだときに全件読み込む
+    private volatile boolean loaded;
+    // 読み込みを待つスレッドが仮想スレッドでもキャリアスレッドを占有しないよう、synchronized ではなく Lock で1回にする
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    public ClickDimensionDictionary(JdbcTemplate jdbcTemplate,
+                                    @Value("${shorturl.clicks.dimension-limit:100000}") int limit) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.limit = limit;
+    }
+
+    // 辞書にある値か、まだ追加できるなら value、いっぱいなら fallback
+    public String knownOr(String value, String fallback) {
+        if (!loaded) {
+            load();
+        }
+        if (value == null || ids.containsKey(value) || ids.size() < limit) {
+            return value;
+        }
+        return fallback;
+    }
+
+    // 初めての値は辞書に追加する。呼び出し元のトランザクションの外で使うこと（追加した値はロールバックさせない）
+    public int idOf(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        Integer stored = find(value);
+        if (stored == null) {
+            try {
+                jdbcTemplate.update("insert into click_dimension (dimension_value) values (?)", value);
+            } catch (DuplicateKeyException e) {
+                // 他のノードが先に追加した
+            }
+            stored = find(value);
+        }
+        remember(stored, value);
+        return stored;
+    }
+
+    public String valueOf(int id) {
+        String value = values.get(id);
+        if (value != null) {
+            return value;
+        }
+        value = jdbcTemplate.queryForObject("select dimension_value from click_dimension where id = ?", String.class, id);
+        remember(id, value);
+        return value;
+    }
+
+    private void load() {
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            jdbcTemplate.query("select id, dimension_value from click_dimension", rs -> {
+                remember(rs.getInt(1), rs.getString(2));
+            });
+            loaded = true;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private Integer find(String value) {
+        return jdbcTemplate.query("select id from click_dimension where dimension_value = ?",
+                rs -> rs.next() ? rs.getInt(1) : null, value);
+    }
+
+    private void remember(int id, String value) {
+        ids.put(value, id);
+        values.put(id, value);
+    }
+}
@@ -1,47 +1,30 @@
 package com.bonsai.shorturl;
 
-import jakarta.persistence.*;
-
 import java.time.LocalDateTime;
 
-@Entity
+// 1回分のクリック。保存形式（日別テーブル、辞書化した文字列）との変換は ClickEventStore が行う
 public class ClickEvent {
 
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
-
-    @ManyToOne
-    private UrlMapping urlMapping;
-
-    private LocalDateTime clickTimestamp;
-
-    private String country;
-    private String city;
-    private String referrer;
-    private String deviceType;
-    private String ipAddress; // ★ IPアドレスを保存する変数を追加！
-
-    public ClickEvent() {
-    }
+    private final Long urlMappingId;
+    private final LocalDateTime clickTimestamp;
+    private final String country;
+    private final String city;
+    private final String referrer;
+    private final String deviceType;
+    private final String ipAddress;
 
-    // ★ コンストラクタに ipAddress を追加！
-    public ClickEvent(UrlMapping urlMapping, LocalDateTime clickTimestamp, String country, String city, String referrer, String deviceType, String ipAddress) {
-        this.urlMapping = urlMapping;
+    public ClickEvent(Long urlMappingId, LocalDateTime clickTimestamp, String country, String city, String referrer, String deviceType, String ipAddress) {
+        this.urlMappingId = urlMappingId;
         this.clickTimestamp = clickTimestamp;
         this.country = country;
         this.city = city;
         this.referrer = referrer;
         this.deviceType = deviceType;
-        this.ipAddress = ipAddress; // ★ 追加
-    }
-
-    public Long getId() {
-        return id;
+        this.ipAddress = ipAddress;
     }
 
-    public UrlMapping getUrlMapping() {
-        return urlMapping;
+    public Long getUrlMappingId() {
+        return urlMappingId;
     }
 
     public LocalDateTime getClickTimestamp() {
@@ -64,8 +47,12 @@ public class ClickEvent {
         return deviceType;
     }
 
-    // ★ ipAddress のための Getter を追加！
+    // ボットのクリックはデバイス種別 "Bot" で保存している（日別テーブルに列を足さずに済むように）
+    public boolean isBot() {
+        return UserAgentClassifier.BOT.equals(deviceType);
+    }
+
     public String getIpAddress() {
         return ipAddress;
     }
-}
\ No newline at end of file
+}
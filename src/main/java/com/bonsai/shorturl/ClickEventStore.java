@@ -0,0 +1,384 @@
+package com.bonsai.shorturl;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// クリックは日ごとのテーブル click_event_yyyyMMdd に保存する。古いデータは DROP TABLE するだけで消せる。
+// 1行は (url_mapping_id, その日の0時からのミリ秒, 辞書化した国・都市・リファラー・デバイスのid, 4/16バイトのIP) だけを持つ。
+// 読んでいる最中に保存期間を過ぎた日のテーブルが（他のノードでも）削除されることがあるので、なくなっていた日は空として扱う
+@Component
+public class ClickEventStore {
+
+    private static final DateTimeFormatter TABLE_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String UNKNOWN = "Unknown";
+
+    private final JdbcTemplate jdbcTemplate;
+    // エクスポートで1回に読む件数
+    private final int exportPageSize;
+    private final ClickDimensionDictionary dictionary;
+    private final DailyClickRollupRepository dailyClickRollupRepository;
+    private final ConcurrentSkipListSet<LocalDate> partitions = new ConcurrentSkipListSet<>();
+    private final ReentrantLock partitionLock = new ReentrantLock();
+    private final CacheInvalidationBus invalidationBus;
+    // H2 / MySQL は varbinary(16)、PostgreSQL は bytea
+    private final String ipColumnType;
+
+    public ClickEventStore(JdbcTemplate jdbcTemplate, ClickDimensionDictionary dictionary,
+                           DailyClickRollupRepository dailyClickRollupRepository,
+                           @Value("${shorturl.export.page-size:1000}") int exportPageSize,
+                           @Value("${shorturl.clicks.ip-column-type:varbinary(16)}") String ipColumnType,
+                           CacheInvalidationBus invalidationBus) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exportPageSize = exportPageSize;
+        this.dictionary = dictionary;
+        this.dailyClickRollupRepository = dailyClickRollupRepository;
+        this.ipColumnType = ipColumnType;
+        this.invalidationBus = invalidationBus;
+        // 他のノードが日別テーブルを作成・削除した
+        invalidationBus.subscribe(CacheInvalidationBus.Topic.CLICK_PARTITIONS, day -> loadPartitions());
+    }
+
+    @PostConstruct
+    public void loadPartitions() {
+        partitionLock.lock();
+        try {
+            List<LocalDate> stored = jdbcTemplate.queryForList("select click_date from click_partition", LocalDate.class);
+            partitions.retainAll(stored);
+            partitions.addAll(stored);
+        } finally {
+            partitionLock.unlock();
+        }
+    }
+
+    // トランザクションの外で呼ぶ。日別テーブルの作成（DDL）と辞書への追加をここで済ませておき、
+    // 返した PreparedBatch を insert でトランザクション内に書き込む
+    public PreparedBatch prepare(List<ClickEvent> clicks) {
+        Map<String, List<Object[]>> rowsByTable = new LinkedHashMap<>();
+        for (ClickEvent click : clicks) {
+            LocalDate day = click.getClickTimestamp().toLocalDate();
+            ensurePartition(day);
+            rowsByTable.computeIfAbsent(tableName(day), table -> new ArrayList<>()).add(new Object[]{
+                    click.getUrlMappingId(),
+                    (int) ChronoUnit.MILLIS.between(day.atStartOfDay(), click.getClickTimestamp()),
+                    dictionary.idOf(valueOrUnknown(click.getDeviceType())),
+                    dictionary.idOf(valueOrUnknown(click.getCountry())),
+                    dictionary.idOf(valueOrUnknown(click.getCity())),
+                    dictionary.idOf(valueOrUnknown(click.getReferrer())),
+                    IpAddresses.toBytes(click.getIpAddress())
+            });
+        }
+        return new PreparedBatch(rowsByTable);
+    }
+
+    // 辞書が dimension-limit に達していたら、初めてのリファラーは Other として保存・集計する
+    public String referrerOrOther(String referrer) {
+        return dictionary.knownOr(referrer, Referrers.OTHER);
+    }
+
+    public void insert(PreparedBatch batch) {
+        batch.rowsByTable().forEach((table, rows) -> jdbcTemplate.batchUpdate(
+                "insert into " + table + " (url_mapping_id, click_time, device_id, country_id, city_id, referrer_id, ip_address) "
+                        + "values (?, ?, ?, ?, ?, ?, ?)", rows));
+    }
+
+    // 新しい順の1ページ分。各日の件数は日別集計から分かるので、offset に達するまでの日のテーブルは読まない。
+    // 日別集計はボットのクリックを数えていないので、ページの中身からもボットを除く（件数と行がずれないように）
+    public Page<ClickEvent> findRecent(Long urlMappingId, Pageable pageable) {
+        if (partitions.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        int botId = dictionary.idOf(UserAgentClassifier.BOT);
+        List<DailyCount> counts = new ArrayList<>();
+        long total = 0;
+        for (DailyCount count : dailyClickRollupRepository.findDailyCounts(urlMappingId, partitions.first(), partitions.last())) {
+            if (partitions.contains(count.date())) {
+                counts.add(count);
+                total += count.clicks();
+            }
+        }
+
+        List<ClickEvent> content = new ArrayList<>(pageable.getPageSize());
+        long skip = pageable.getOffset();
+        for (int i = counts.size() - 1; i >= 0 && content.size() < pageable.getPageSize(); i--) {
+            DailyCount day = counts.get(i);
+            if (skip >= day.clicks()) {
+                skip -= day.clicks();
+                continue;
+            }
+            int limit = pageable.getPageSize() - content.size();
+            long offset = skip;
+            content.addAll(readPartition(day.date(), () -> jdbcTemplate.query(
+                    "select url_mapping_id, click_time, device_id, country_id, city_id, referrer_id, ip_address from "
+                            + tableName(day.date()) + " where url_mapping_id = ? and device_id <> ? "
+                            + "order by click_time desc limit ? offset ?",
+                    rowMapper(day.date()), urlMappingId, botId, limit, offset), List.of()));
+            skip = 0;
+        }
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    // 以下は source=events 用の集計。期間内の日別テーブルごとに GROUP BY し、結果をメモリ上で合算する（from, to を含む）。
+    // ボットのクリック（デバイス種別 "Bot"）は数えない
+
+    public List<DailyCount> countByDay(Long urlMappingId, LocalDate from, LocalDate to) {
+        List<DailyCount> counts = new ArrayList<>();
+        int botId = dictionary.idOf(UserAgentClassifier.BOT);
+        for (LocalDate day : partitionsBetween(from, to)) {
+            Long clicks = readPartition(day, () -> jdbcTemplate.queryForObject(
+                    "select count(*) from " + tableName(day) + " where url_mapping_id = ? and device_id <> ?",
+                    Long.class, urlMappingId, botId), 0L);
+            if (clicks != null && clicks > 0) {
+                counts.add(new DailyCount(day, clicks));
+            }
+        }
+        return counts;
+    }
+
+    public List<DimensionCount> countByDeviceType(Long urlMappingId, LocalDate from, LocalDate to) {
+        return countByDimension("device_id", urlMappingId, from, to, Integer.MAX_VALUE);
+    }
+
+    public List<DimensionCount> countByCountry(Long urlMappingId, LocalDate from, LocalDate to, int limit) {
+        return countByDimension("country_id", urlMappingId, from, to, limit);
+    }
+
+    public List<DimensionCount> countByReferrer(Long urlMappingId, LocalDate from, LocalDate to, int limit) {
+        return countByDimension("referrer_id", urlMappingId, from, to, limit);
+    }
+
+    // 日をまたいだ重複を除くので、期間内の日別テーブルを UNION ALL でつないで1つの文で数える
+    public long countDistinctIpAddress(Long urlMappingId, LocalDate from, LocalDate to) {
+        int botId = dictionary.idOf(UserAgentClassifier.BOT);
+        while (true) {
+            List<LocalDate> days = List.copyOf(partitionsBetween(from, to));
+            if (days.isEmpty()) {
+                return 0;
+            }
+            StringJoiner union = new StringJoiner(" union all ");
+            List<Object> args = new ArrayList<>(days.size() * 2);
+            for (LocalDate day : days) {
+                union.add("select ip_address from " + tableName(day)
+                        + " where url_mapping_id = ? and device_id <> ? and ip_address is not null");
+                args.add(urlMappingId);
+                args.add(botId);
+            }
+            Long count = readPartitions(days, () -> jdbcTemplate.queryForObject(
+                    "select count(distinct ip_address) from (" + union + ") clicks", Long.class, args.toArray()), null);
+            if (count != null) {
+                return count;
+            }
+            // 削除された日を除いて数え直す
+        }
+    }
+
+    // 集計テーブルの作り直し用。その日のクリックをすべて流す
+    public void forEachClick(LocalDate day, Consumer<ClickEvent> consumer) {
+        RowMapper<ClickEvent> mapper = rowMapper(day);
+        readPartition(day, () -> {
+            jdbcTemplate.query("select url_mapping_id, click_time, device_id, country_id, city_id, referrer_id, ip_address from "
+                    + tableName(day), rs -> {
+                consumer.accept(mapper.mapRow(rs, 0));
+            });
+            return null;
+        }, null);
+    }
+
+    // エクスポート用。期間内（from, to を含む）でクリックが保存されている日
+    public List<LocalDate> getPartitions(LocalDate from, LocalDate to) {
+        return List.copyOf(partitionsBetween(from, to));
+    }
+
+    // エクスポート用。その日のクリックを (url_mapping_id, click_time) の順に、after（前のページの最後のクリック）より後ろから
+    // export.page-size 件ほど読む。after が null なら先頭から。残りがなければ（テーブルが削除されていても）空。
+    // 同じリンクの同じ時刻のクリックは区別できないので、ページの境目で分けずにまとめて返す（page-size を少し超えることがある）
+    public List<ClickEvent> findClicks(Long urlMappingId, LocalDate day, ClickEvent after) {
+        return findClicks("url_mapping_id = ?", urlMappingId, day, after);
+    }
+
+    public List<ClickEvent> findClicksByUser(Long userId, LocalDate day, ClickEvent after) {
+        return findClicks("url_mapping_id in (select id from url_mapping where user_id = ?)", userId, day, after);
+    }
+
+    private List<ClickEvent> findClicks(String condition, Long id, LocalDate day, ClickEvent after) {
+        String select = "select url_mapping_id, click_time, device_id, country_id, city_id, referrer_id, ip_address from "
+                + tableName(day) + " where " + condition;
+        RowMapper<ClickEvent> mapper = rowMapper(day);
+        return readPartition(day, () -> {
+            List<ClickEvent> page = after == null
+                    ? jdbcTemplate.query(select + " order by url_mapping_id, click_time limit ?", mapper, id, exportPageSize)
+                    : jdbcTemplate.query(select + " and (url_mapping_id > ? or (url_mapping_id = ? and click_time > ?))"
+                                    + " order by url_mapping_id, click_time limit ?", mapper,
+                            id, after.getUrlMappingId(), after.getUrlMappingId(), clickTime(day, after), exportPageSize);
+            if (page.size() < exportPageSize) {
+                return page;
+            }
+            // 最後のクリックと同じ時刻のものを読み直して、すべて入れる
+            ClickEvent last = page.get(page.size() - 1);
+            int lastTime = clickTime(day, last);
+            List<ClickEvent> complete = new ArrayList<>(page);
+            complete.removeIf(click -> click.getUrlMappingId().equals(last.getUrlMappingId()) && clickTime(day, click) == lastTime);
+            complete.addAll(jdbcTemplate.query(select + " and url_mapping_id = ? and click_time = ?", mapper,
+                    id, last.getUrlMappingId(), lastTime));
+            return complete;
+        }, List.of());
+    }
+
+    // cutoff より前の日のテーブルを削除する。日別集計とスケッチは残る。
+    // テーブルより先に click_partition の行を消すので、テーブルがなくて読めなかった側は loadPartitions で削除されたと分かる
+    public List<LocalDate> dropPartitionsBefore(LocalDate cutoff) {
+        List<LocalDate> dropped = new ArrayList<>(partitions.headSet(cutoff));
+        for (LocalDate day : dropped) {
+            partitionLock.lock();
+            try {
+                partitions.remove(day);
+                jdbcTemplate.update("delete from click_partition where click_date = ?", Date.valueOf(day));
+                jdbcTemplate.execute("drop table if exists " + tableName(day));
+            } finally {
+                partitionLock.unlock();
+            }
+        }
+        invalidationBus.publishAll(CacheInvalidationBus.Topic.CLICK_PARTITIONS, dropped.stream().map(LocalDate::toString).toList());
+        return dropped;
+    }
+
+    public Collection<LocalDate> getPartitions() {
+        return partitions;
+    }
+
+    private void ensurePartition(LocalDate day) {
+        if (partitions.contains(day)) {
+            return;
+        }
+        partitionLock.lock();
+        try {
+            if (partitions.contains(day)) {
+                return;
+            }
+            String table = tableName(day);
+            jdbcTemplate.execute("create table if not exists " + table + " ("
+                    + "url_mapping_id bigint not null, "
+                    + "click_time int not null, "
+                    + "device_id int not null, "
+                    + "country_id int not null, "
+                    + "city_id int not null, "
+                    + "referrer_id int not null, "
+                    + "ip_address " + ipColumnType + ")");
+            jdbcTemplate.execute("create index if not exists idx_" + table + " on " + table + " (url_mapping_id, click_time)");
+            try {
+                jdbcTemplate.update("insert into click_partition (click_date) values (?)", Date.valueOf(day));
+            } catch (DuplicateKeyException e) {
+                // 他のノードが先に作成した
+            }
+            partitions.add(day);
+        } finally {
+            partitionLock.unlock();
+        }
+        invalidationBus.publish(CacheInvalidationBus.Topic.CLICK_PARTITIONS, day.toString());
+    }
+
+    private List<DimensionCount> countByDimension(String column, Long urlMappingId, LocalDate from, LocalDate to, int limit) {
+        Map<Integer, Long> totals = new HashMap<>();
+        int botId = dictionary.idOf(UserAgentClassifier.BOT);
+        for (LocalDate day : partitionsBetween(from, to)) {
+            readPartition(day, () -> {
+                jdbcTemplate.query("select " + column + ", count(*) from " + tableName(day)
+                                + " where url_mapping_id = ? and device_id <> ? group by " + column,
+                        rs -> {
+                            totals.merge(rs.getInt(1), rs.getLong(2), Long::sum);
+                        }, urlMappingId, botId);
+                return null;
+            }, null);
+        }
+        return totals.entrySet().stream()
+                .map(entry -> new DimensionCount(dictionary.valueOf(entry.getKey()), entry.getValue()))
+                .sorted(Comparator.comparing(DimensionCount::clicks).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private <T> T readPartition(LocalDate day, Supplier<T> read, T ifDropped) {
+        return readPartitions(List.of(day), read, ifDropped);
+    }
+
+    // days のテーブルを読む。読めなかったときに削除された日があれば ifDropped を返す。
+    // 呼び出し元のトランザクションを中断させないよう、セーブポイントを置いて読む
+    private <T> T readPartitions(List<LocalDate> days, Supplier<T> read, T ifDropped) {
+        try {
+            return Savepoints.run(jdbcTemplate, read);
+        } catch (BadSqlGrammarException e) {
+            if (!anyDropped(days)) {
+                throw e;
+            }
+            return ifDropped;
+        }
+    }
+
+    private boolean anyDropped(List<LocalDate> days) {
+        loadPartitions();
+        for (LocalDate day : days) {
+            if (!partitions.contains(day)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private NavigableSet<LocalDate> partitionsBetween(LocalDate from, LocalDate to) {
+        return partitions.subSet(from, true, to, true);
+    }
+
+    private RowMapper<ClickEvent> rowMapper(LocalDate day) {
+        LocalDateTime startOfDay = day.atStartOfDay();
+        return (rs, rowNum) -> new ClickEvent(
+                rs.getLong(1),
+                startOfDay.plus(rs.getInt(2), ChronoUnit.MILLIS),
+                dictionary.valueOf(rs.getInt(4)),
+                dictionary.valueOf(rs.getInt(5)),
+                dictionary.valueOf(rs.getInt(6)),
+                dictionary.valueOf(rs.getInt(3)),
+                IpAddresses.toString(rs.getBytes(7)));
+    }
+
+    // その日の 0時からのミリ秒（click_time 列の値）
+    private static int clickTime(LocalDate day, ClickEvent click) {
+        return (int) ChronoUnit.MILLIS.between(day.atStartOfDay(), click.getClickTimestamp());
+    }
+
+    private static String tableName(LocalDate day) {
+        return "click_event_" + day.format(TABLE_SUFFIX);
+    }
+
+    private static String valueOrUnknown(String value) {
+        return (value == null || value.isEmpty()) ? UNKNOWN : value;
+    }
+
+    public record PreparedBatch(Map<String, List<Object[]>> rowsByTable) {
+    }
+}
@@ -0,0 +1,184 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// キューから取り出したクリックをJDBCのバッチでまとめて書き込む
+// 位置情報の解決と日別テーブルの作成はトランザクションの外で済ませ、トランザクションは書き込みの間だけにする。
+// 位置情報はバッチ内のIPごとに1回だけ、lookup-threads 本のスレッドで並行して引く（ip-api は1件ずつHTTPで問い合わせるので）。
+// lookup-timeout までに引けなかったIPは Unknown として保存し、問い合わせは裏で続けて結果をキャッシュに載せる。
+// 書き込みスレッドが外部APIを待ち続けて、キューが詰まってリダイレクトのスレッドが止まらないように
+@Component
+public class ClickEventWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ClickEventWriter.class);
+
+    // 引き終わっていない問い合わせがこれより多ければ、新しいIPは問い合わせずに Unknown とする
+    private static final int MAX_QUEUED_LOOKUPS = 10_000;
+
+    private final ClickEventStore clickEventStore;
+    private final GeoIpResolver geoIpResolver;
+    private final ClickRollupService clickRollupService;
+    private final VisitorSketchService visitorSketchService;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor lookupExecutor;
+    private final long lookupTimeoutNanos;
+    // 問い合わせ中のIP。前のバッチで時間切れになったIPを二重に問い合わせない
+    private final ConcurrentHashMap<String, CompletableFuture<GeoLocation>> lookups = new ConcurrentHashMap<>();
+    private final Timer geoTimer;
+    private final Timer persistTimer;
+
+    public ClickEventWriter(ClickEventStore clickEventStore, GeoIpResolver geoIpResolver, ClickRollupService clickRollupService,
+                            VisitorSketchService visitorSketchService, PlatformTransactionManager transactionManager,
+                            @Value("${shorturl.geoip.lookup-threads:8}") int lookupThreads,
+                            @Value("${shorturl.geoip.lookup-timeout:500ms}") Duration lookupTimeout,
+                            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                            MeterRegistry meterRegistry) {
+        this.clickEventStore = clickEventStore;
+        this.geoIpResolver = geoIpResolver;
+        this.clickRollupService = clickRollupService;
+        this.visitorSketchService = visitorSketchService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // 仮想スレッドを使うときも lookup-threads 本まで（ip-api への同時接続数と待ちの上限は変えない）。
+        // HTTPの応答を待つ間はOSスレッドを占有しない
+        this.lookupExecutor = new ThreadPoolExecutor(lookupThreads, lookupThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED_LOOKUPS),
+                virtualThreads ? new VirtualThreadTaskExecutor("geoip-lookup-").getVirtualThreadFactory() : platformThreadFactory());
+        this.lookupTimeoutNanos = lookupTimeout.toNanos();
+        // リダイレクト処理の後半。geo はバッチ内のIPをまとめて引く時間、persist はバッチ1回ごとの時間
+        this.geoTimer = meterRegistry.timer("shorturl.redirect.phase", "phase", "geo");
+        this.persistTimer = meterRegistry.timer("shorturl.redirect.phase", "phase", "persist");
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "geoip-lookup-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void stop() {
+        lookupExecutor.shutdownNow();
+    }
+
+    public void write(List<PendingClick> clicks) {
+        List<ClickEvent> events = new ArrayList<>(clicks.size());
+        List<ClickRollupService.Click> rollupClicks = new ArrayList<>(clicks.size());
+        Map<String, GeoLocation> locations = geoTimer.record(() -> resolveAll(clicks));
+
+        for (PendingClick click : clicks) {
+            GeoLocation location = click.ipAddress() != null ? locations.get(click.ipAddress()) : null;
+            String country = (location != null) ? location.country() : "Unknown";
+            String city = (location != null) ? location.city() : "Unknown";
+
+            String referrer = clickEventStore.referrerOrOther(click.referrer());
+
+            ClickEvent event = new ClickEvent(click.urlMappingId(), click.clickTimestamp(), country, city, referrer,
+                    click.deviceType(), click.ipAddress());
+            events.add(event);
+            // ボットのクリックは保存するだけで、日別集計とユニーク訪問者には加えない
+            if (event.isBot()) {
+                continue;
+            }
+            rollupClicks.add(new ClickRollupService.Click(click.urlMappingId(), click.clickTimestamp().toLocalDate(),
+                    click.deviceType(), country, referrer, click.ipAddress()));
+        }
+
+        persistTimer.record(() -> {
+            ClickEventStore.PreparedBatch batch = clickEventStore.prepare(events);
+            transactionTemplate.executeWithoutResult(status -> {
+                clickEventStore.insert(batch);
+                clickRollupService.apply(rollupClicks);
+                visitorSketchService.apply(rollupClicks);
+            });
+        });
+    }
+
+    // 引けなかった・時間切れになったIPは結果に含めない
+    private Map<String, GeoLocation> resolveAll(List<PendingClick> clicks) {
+        Map<String, CompletableFuture<GeoLocation>> pending = new HashMap<>();
+        for (PendingClick click : clicks) {
+            String ipAddress = click.ipAddress();
+            if (ipAddress != null && !pending.containsKey(ipAddress)) {
+                pending.put(ipAddress, lookup(ipAddress));
+            }
+        }
+        long deadline = System.nanoTime() + lookupTimeoutNanos;
+        Map<String, GeoLocation> locations = new HashMap<>(pending.size() * 2);
+        for (Map.Entry<String, CompletableFuture<GeoLocation>> entry : pending.entrySet()) {
+            GeoLocation location = await(entry.getValue(), deadline);
+            if (location != null) {
+                locations.put(entry.getKey(), location);
+            }
+        }
+        return locations;
+    }
+
+    private CompletableFuture<GeoLocation> lookup(String ipAddress) {
+        CompletableFuture<GeoLocation> existing = lookups.get(ipAddress);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<GeoLocation> future = new CompletableFuture<>();
+        existing = lookups.putIfAbsent(ipAddress, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            lookupExecutor.execute(() -> {
+                try {
+                    future.complete(geoIpResolver.resolve(ipAddress));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    lookups.remove(ipAddress, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            lookups.remove(ipAddress, future);
+            future.complete(null);
+        }
+        return future;
+    }
+
+    private static GeoLocation await(CompletableFuture<GeoLocation> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            log.debug("GeoIP lookup failed", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.bonsai.shorturl;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+// クリックの生データのエクスポート
+//   GET /api/clicks/export?code=abc123&from=2024-05-01&to=2024-05-31&format=csv
+// code を省略するとログインユーザーの全リンクが対象。from / to を省略すると保存されている全期間。
+// クライアントが gzip を受け付ける場合（Accept-Encoding で q が 0 より大きい場合）は書き出しながら圧縮する
+@Controller
+public class ClickExportController {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final UrlMappingRepository urlMappingRepository;
+    private final ClickExportService clickExportService;
+
+    public ClickExportController(UrlMappingRepository urlMappingRepository, ClickExportService clickExportService) {
+        this.urlMappingRepository = urlMappingRepository;
+        this.clickExportService = clickExportService;
+    }
+
+    @GetMapping("/api/clicks/export")
+    public ResponseEntity<StreamingResponseBody> exportClicks(@RequestParam(value = "code", required = false) String shortCode,
+                                                              @RequestParam(value = "from", required = false)
+                                                              @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                              @RequestParam(value = "to", required = false)
+                                                              @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                              @RequestParam(value = "format", defaultValue = "csv") String format,
+                                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                              @AuthenticationPrincipal User user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        ClickExportService.Format exportFormat = ClickExportService.Format.of(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        LocalDate rangeFrom = (from != null) ? from : LocalDate.MIN;
+        LocalDate rangeTo = (to != null) ? to : LocalDate.MAX;
+        if (rangeFrom.isAfter(rangeTo)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody exporter;
+        String fileName;
+        if (shortCode != null) {
+            Optional<UrlMapping> urlMappingOptional = urlMappingRepository.findByShortCode(shortCode);
+            if (urlMappingOptional.isEmpty() || urlMappingOptional.get().getUser() == null
+                    || !urlMappingOptional.get().getUser().getId().equals(user.getId())) {
+                return ResponseEntity.notFound().build();
+            }
+            Long urlMappingId = urlMappingOptional.get().getId();
+            exporter = outputStream -> clickExportService.exportLink(urlMappingId, shortCode, rangeFrom, rangeTo,
+                    exportFormat, outputStream);
+            fileName = "clicks-" + shortCode;
+        } else {
+            // 短縮コードはリンク数分だけ先に読んでおく（クリック数には比例しない）
+            Map<Long, String> shortCodes = new HashMap<>();
+            for (UrlMapping urlMapping : urlMappingRepository.findAllByUser(user)) {
+                shortCodes.put(urlMapping.getId(), urlMapping.getShortCode());
+            }
+            exporter = outputStream -> clickExportService.exportUser(user.getId(), shortCodes, rangeFrom, rangeTo,
+                    exportFormat, outputStream);
+            fileName = "clicks";
+        }
+        if (from != null) {
+            fileName += "-" + from;
+        }
+        if (to != null) {
+            fileName += "-" + to;
+        }
+        fileName += "." + exportFormat.getExtension();
+
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        StreamingResponseBody body = outputStream -> {
+            if (gzip) {
+                GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE);
+                exporter.writeTo(gzipOutputStream);
+                gzipOutputStream.finish();
+            } else {
+                exporter.writeTo(outputStream);
+            }
+        };
+        return response.body(body);
+    }
+
+    // gzip（x-gzip）の q を見る。書かれていなければ * の q。gzip;q=0 や指定なしは受け付けない
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = quality;
+            } else if (coding.equals("*")) {
+                any = quality;
+            }
+        }
+        double quality = gzip != null ? gzip : (any != null ? any : 0);
+        return quality > 0;
+    }
+}
@@ -0,0 +1,189 @@
+package com.bonsai.shorturl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+// 生のクリックを CSV / NDJSON で書き出す。ClickEventStore から export.page-size 件ずつキーセット方式で読むので、
+// 件数が多くてもメモリ上に持つのは1ページ分。
+// ダウンロードが遅くても接続とトランザクションを持ち続けないよう、1ページ読んで接続を返してから出力ストリームに書く
+@Service
+public class ClickExportService {
+
+    private static final String CSV_HEADER = "short_code,clicked_at,country,city,referrer,device_type,ip_address";
+    private static final DateTimeFormatter CLICKED_AT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        // 不明な形式は null
+        public static Format of(String value) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ClickEventStore clickEventStore;
+    private final ObjectMapper objectMapper;
+
+    public ClickExportService(ClickEventStore clickEventStore, ObjectMapper objectMapper) {
+        this.clickEventStore = clickEventStore;
+        this.objectMapper = objectMapper;
+    }
+
+    public void exportLink(Long urlMappingId, String shortCode, LocalDate from, LocalDate to, Format format,
+                           OutputStream outputStream) throws IOException {
+        export((day, after) -> clickEventStore.findClicks(urlMappingId, day, after), from, to, Map.of(urlMappingId, shortCode), format,
+                outputStream);
+    }
+
+    // shortCodes は url_mapping_id → 短縮コード
+    public void exportUser(Long userId, Map<Long, String> shortCodes, LocalDate from, LocalDate to, Format format,
+                           OutputStream outputStream) throws IOException {
+        export((day, after) -> clickEventStore.findClicksByUser(userId, day, after), from, to, shortCodes, format, outputStream);
+    }
+
+    private void export(PageSource source, LocalDate from, LocalDate to,
+                        Map<Long, String> shortCodes, Format format, OutputStream outputStream) throws IOException {
+        RowWriter writer = format == Format.CSV ? new CsvWriter(outputStream) : new NdjsonWriter(outputStream);
+        for (LocalDate day : clickEventStore.getPartitions(from, to)) {
+            List<ClickEvent> page = source.read(day, null);
+            while (!page.isEmpty()) {
+                for (ClickEvent click : page) {
+                    writer.write(toExported(click, shortCodes));
+                }
+                page = source.read(day, page.get(page.size() - 1));
+            }
+        }
+        writer.finish();
+    }
+
+    // day のクリックのうち after より後ろの1ページ
+    private interface PageSource {
+
+        List<ClickEvent> read(LocalDate day, ClickEvent after);
+    }
+
+    private interface RowWriter {
+
+        void write(ExportedClick row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvWriter implements RowWriter {
+
+        private final Writer writer;
+
+        CsvWriter(OutputStream outputStream) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(ExportedClick row) throws IOException {
+            writer.write(csv(row.shortCode()));
+            writer.write(',');
+            writer.write(row.clickedAt().format(CLICKED_AT));
+            writer.write(',');
+            writer.write(csv(row.country()));
+            writer.write(',');
+            writer.write(csv(row.city()));
+            writer.write(',');
+            writer.write(csv(row.referrer()));
+            writer.write(',');
+            writer.write(csv(row.deviceType()));
+            writer.write(',');
+            writer.write(csv(row.ipAddress()));
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+    }
+
+    private final class NdjsonWriter implements RowWriter {
+
+        private final OutputStream outputStream;
+        // 最初の行を書くときに作る
+        private SequenceWriter writer;
+
+        NdjsonWriter(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void write(ExportedClick row) throws IOException {
+            if (writer == null) {
+                writer = objectMapper.writerFor(ExportedClick.class)
+                        .withRootValueSeparator("\n")
+                        .writeValues(outputStream);
+            }
+            writer.write(row);
+        }
+
+        // SequenceWriter を閉じると出力ストリームまで閉じてしまうので flush だけする
+        @Override
+        public void finish() throws IOException {
+            if (writer == null) {
+                return;
+            }
+            writer.flush();
+            outputStream.write('\n');
+        }
+    }
+
+    private static ExportedClick toExported(ClickEvent click, Map<Long, String> shortCodes) {
+        return new ExportedClick(shortCodes.get(click.getUrlMappingId()), click.getClickTimestamp(), click.getCountry(),
+                click.getCity(), click.getReferrer(), click.getDeviceType(), click.getIpAddress());
+    }
+
+    // カンマ・ダブルクォート・改行を含む値だけダブルクォートで囲む（" は "" にする）
+    static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,267 @@
+package com.bonsai.shorturl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// リダイレクトのリクエストスレッドからはキューに積むだけにして、
+// DBへの書き込みはバックグラウンドのスレッドがまとめて行う。
+// shorturl.ingest.mode=log のときはキューの代わりに ClickLog に追記し、書き込みスレッドがログを後ろから読んでDBに入れる
+@Service
+public class ClickIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClickIngestionService.class);
+
+    private static final long MIN_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ClickEventWriter clickEventWriter;
+    private final ClickLog clickLog;
+    private final BlockingQueue<PendingClick> queue;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final BackpressurePolicy backpressurePolicy;
+    private final int sampleRate;
+    private final int sampleThreshold;
+    private final Duration shutdownTimeout;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicBoolean appendFailureLogged = new AtomicBoolean();
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public ClickIngestionService(ClickEventWriter clickEventWriter,
+                                 Optional<ClickLog> clickLog,
+                                 @Value("${shorturl.ingest.queue-capacity:10000}") int queueCapacity,
+                                 @Value("${shorturl.ingest.batch-size:500}") int batchSize,
+                                 @Value("${shorturl.ingest.flush-interval:200ms}") Duration flushInterval,
+                                 @Value("${shorturl.ingest.backpressure:BLOCK}") BackpressurePolicy backpressurePolicy,
+                                 @Value("${shorturl.ingest.sample-rate:10}") int sampleRate,
+                                 @Value("${shorturl.ingest.sample-threshold:0.8}") double sampleThreshold,
+                                 @Value("${shorturl.ingest.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.clickEventWriter = clickEventWriter;
+        this.clickLog = clickLog.orElse(null);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.backpressurePolicy = backpressurePolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.sampleThreshold = (int) (queueCapacity * sampleThreshold);
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread = new Thread(clickLog != null ? this::runLogConsumer : this::runWriter, "click-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // 停止時はキューに残っているクリックを書き切ってから終了する（ログの場合は書き切れなかった分を次回の起動時に読み直す）
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join(shutdownTimeout.toMillis());
+        if (writerThread.isAlive()) {
+            log.warn("Click writer did not drain within {}; {} clicks left in {}", shutdownTimeout, getQueueSize(),
+                    clickLog != null ? "click log" : "queue");
+        }
+    }
+
+    public void submit(PendingClick click) {
+        if (clickLog != null) {
+            append(click);
+            return;
+        }
+        switch (backpressurePolicy) {
+            case BLOCK -> {
+                try {
+                    queue.put(click);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                    return;
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(click)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+            }
+            case SAMPLE -> {
+                if (queue.size() >= sampleThreshold && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+                    dropped.increment();
+                    return;
+                }
+                if (!queue.offer(click)) {
+                    dropped.increment();
+                    return;
+                }
+            }
+        }
+        accepted.increment();
+    }
+
+    // ログへの追記はDBの状態に関係なく終わる。ディスクの書き込みに失敗したときだけ捨てる
+    private void append(PendingClick click) {
+        try {
+            clickLog.append(click);
+            accepted.increment();
+        } catch (IOException | RuntimeException e) {
+            dropped.increment();
+            if (appendFailureLogged.compareAndSet(false, true)) {
+                log.error("Failed to append click to the click log; clicks are being dropped", e);
+            }
+        }
+    }
+
+    private void runWriter() {
+        List<PendingClick> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingClick first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // バッチサイズに達するか、最初のクリックからflush-intervalが経つまで溜める
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingClick next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // ログを後ろから読んでDBに書き込み、書けた位置までを commit する。
+    // 書き込みに失敗したら位置を進めずに間隔を空けて同じ範囲を読み直すので、DBが止まっている間もクリックはログに残る
+    private void runLogConsumer() {
+        long retryNanos = MIN_RETRY_NANOS;
+        long offset = clickLog.getCommittedOffset();
+        long waitingSince = System.nanoTime();
+        while (running || clickLog.getEndOffset() > offset) {
+            clickLog.syncIfDue();
+            long available = clickLog.getEndOffset() - offset;
+            if (available == 0) {
+                waitingSince = System.nanoTime();
+            }
+            // バッチサイズに達するか、最初のクリックから flush-interval が経つまで溜める
+            if (available == 0 || (available < batchSize && running
+                    && System.nanoTime() - waitingSince < flushIntervalNanos)) {
+                LockSupport.parkNanos(Math.min(flushIntervalNanos, TimeUnit.MILLISECONDS.toNanos(10)));
+                continue;
+            }
+            ClickLog.Batch batch = clickLog.read(offset, batchSize);
+            try {
+                if (!batch.clicks().isEmpty()) {
+                    clickEventWriter.write(batch.clicks());
+                    persisted.add(batch.clicks().size());
+                }
+                clickLog.commit(batch.nextOffset());
+                offset = batch.nextOffset();
+                retryNanos = MIN_RETRY_NANOS;
+            } catch (IOException | RuntimeException e) {
+                failed.add(batch.clicks().size());
+                log.error("Failed to persist {} clicks from the click log; retrying in {} ms",
+                        batch.clicks().size(), TimeUnit.NANOSECONDS.toMillis(retryNanos), e);
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(retryNanos);
+                retryNanos = Math.min(retryNanos * 2, MAX_RETRY_NANOS);
+            }
+        }
+    }
+
+    // 書き込みに失敗したら、ログの場合と同じく間隔を空けて同じバッチを書き直す（その間に届いたクリックはキューの背圧に従う）。
+    // 停止中に失敗したときだけ諦める
+    private void flush(List<PendingClick> batch) {
+        long retryNanos = MIN_RETRY_NANOS;
+        while (true) {
+            try {
+                clickEventWriter.write(batch);
+                persisted.add(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                failed.add(batch.size());
+                if (!running) {
+                    dropped.add(batch.size());
+                    log.error("Failed to persist {} click events during shutdown; dropping them", batch.size(), e);
+                    return;
+                }
+                log.error("Failed to persist {} click events; retrying in {} ms",
+                        batch.size(), TimeUnit.NANOSECONDS.toMillis(retryNanos), e);
+                LockSupport.parkNanos(retryNanos);
+                retryNanos = Math.min(retryNanos * 2, MAX_RETRY_NANOS);
+            }
+        }
+    }
+
+    // ログの場合はまだDBに入っていないクリックの数
+    public int getQueueSize() {
+        if (clickLog != null) {
+            return (int) Math.min(clickLog.getLag(), Integer.MAX_VALUE);
+        }
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return clickLog != null ? Integer.MAX_VALUE : queueCapacity;
+    }
+
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getPersistedCount() {
+        return persisted.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+}
@@ -0,0 +1,308 @@
+package com.bonsai.shorturl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// クリックを固定長レコードでローカルファイルに追記するログ。ファイルはセグメントごとにメモリマップする。
+// 追記は DB を待たずに終わり、ClickIngestionService の書き込みスレッドが後ろから読んで DB に入れ、読み終えた位置を offset ファイルに記録する。
+// 再起動時は offset ファイルの位置から読み直すので、DB に入る前のクリックは失われない
+// （DB への書き込み後、offset の記録前に落ちた場合はそのバッチがもう一度書き込まれる）
+public class ClickLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ClickLog.class);
+
+    // レコードの形式（128バイト固定）:
+    //   0 url_mapping_id(8) / 8 クリック日時のエポックミリ秒(8) / 16 IP長(1) + IP(16) / 33 デバイス長(1) + デバイス(15)
+    //   49 リファラー長(1) + リファラー(74, UTF-8) / 124 0〜123バイト目の CRC32C(4)
+    // CRC が合わないレコード（書きかけ・未使用の領域）はログの終わりとして扱う
+    static final int RECORD_SIZE = 128;
+    private static final int IP_OFFSET = 16;
+    private static final int DEVICE_OFFSET = 33;
+    private static final int DEVICE_MAX = 15;
+    private static final int REFERRER_OFFSET = 49;
+    private static final int REFERRER_MAX = 74;
+    private static final int CHECKSUM_OFFSET = 124;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSET_FILE = "consumer.offset";
+
+    public enum FsyncPolicy {
+        // OS に任せる（プロセスが落ちても残るが、電源断では直近の書き込みを失うことがある）
+        NONE,
+        // fsync-interval ごとにまとめてディスクへ書き出す
+        INTERVAL,
+        // 1件ごとに書き出す（最も安全だが遅い）
+        ALWAYS
+    }
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // ベースオフセット → セグメント
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final CRC32C appendChecksum = new CRC32C();
+
+    private Segment active;
+    // 次に書き込むレコードのオフセット。レコードを書き終えてから進めるので、これより前は読んでよい
+    private volatile long endOffset;
+    private volatile long committedOffset;
+    private volatile long lastSyncNanos = System.nanoTime();
+
+    private ClickLog(Path directory, int recordsPerSegment, FsyncPolicy fsyncPolicy, Duration fsyncInterval) {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+    }
+
+    public static ClickLog open(Path directory, int recordsPerSegment, FsyncPolicy fsyncPolicy, Duration fsyncInterval)
+            throws IOException {
+        ClickLog clickLog = new ClickLog(directory, recordsPerSegment, fsyncPolicy, fsyncInterval);
+        clickLog.recover();
+        return clickLog;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        Path offsetFile = directory.resolve(OFFSET_FILE);
+        committedOffset = Files.exists(offsetFile) ? ByteBuffer.wrap(Files.readAllBytes(offsetFile)).getLong() : 0L;
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long baseOffset = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            segments.put(baseOffset, Segment.map(baseOffset, file, recordsPerSegment));
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(committedOffset);
+            endOffset = committedOffset;
+        } else {
+            // 最後のセグメントだけを先頭から調べ、正しく書けている最後のレコードの次を終端にする
+            active = segments.lastEntry().getValue();
+            int count = 0;
+            CRC32C checksum = new CRC32C();
+            byte[] record = new byte[RECORD_SIZE];
+            while (count < recordsPerSegment && isValid(active, count, record, checksum)) {
+                count++;
+            }
+            endOffset = active.baseOffset() + count;
+            if (committedOffset < segments.firstKey()) {
+                committedOffset = segments.firstKey();
+            }
+        }
+        deleteConsumedSegments();
+        if (endOffset > committedOffset) {
+            log.info("Click log has {} unconsumed clicks from a previous run; they will be replayed", endOffset - committedOffset);
+        }
+    }
+
+    public void append(PendingClick click) throws IOException {
+        appendLock.lock();
+        try {
+            long offset = endOffset;
+            if (offset - active.baseOffset() >= recordsPerSegment) {
+                if (fsyncPolicy != FsyncPolicy.NONE) {
+                    active.buffer().force();
+                }
+                active = createSegment(offset);
+            }
+            int position = (int) (offset - active.baseOffset()) * RECORD_SIZE;
+            encode(click, scratch);
+            active.buffer().put(position, scratch);
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                active.buffer().force(position, RECORD_SIZE);
+            }
+            endOffset = offset + 1;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // fromOffset から最大 max 件を読む。壊れたレコードは飛ばす（返す nextOffset には含める）
+    public Batch read(long fromOffset, int max) {
+        long end = Math.min(endOffset, fromOffset + max);
+        List<PendingClick> clicks = new ArrayList<>((int) Math.max(0, end - fromOffset));
+        CRC32C checksum = new CRC32C();
+        byte[] record = new byte[RECORD_SIZE];
+        for (long offset = fromOffset; offset < end; offset++) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+            if (entry == null) {
+                continue;
+            }
+            int index = (int) (offset - entry.getKey());
+            if (isValid(entry.getValue(), index, record, checksum)) {
+                clicks.add(decode(record));
+            } else {
+                log.warn("Skipping corrupt click log record at offset {}", offset);
+            }
+        }
+        return new Batch(clicks, end);
+    }
+
+    // offset より前は DB に書き込み済みとして記録し、読み終えたセグメントを削除する
+    public void commit(long offset) throws IOException {
+        Path offsetFile = directory.resolve(OFFSET_FILE);
+        Path tempFile = directory.resolve(OFFSET_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, offset));
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                channel.force(true);
+            }
+        }
+        Files.move(tempFile, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committedOffset = offset;
+        deleteConsumedSegments();
+    }
+
+    // fsync=INTERVAL のとき、前回から fsync-interval 経っていれば書き込み中のセグメントをディスクへ書き出す
+    public void syncIfDue() {
+        if (fsyncPolicy != FsyncPolicy.INTERVAL || System.nanoTime() - lastSyncNanos < fsyncIntervalNanos) {
+            return;
+        }
+        lastSyncNanos = System.nanoTime();
+        active.buffer().force();
+    }
+
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    // DB にまだ入っていないクリックの数
+    public long getLag() {
+        return endOffset - committedOffset;
+    }
+
+    @Override
+    public void close() {
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            segments.values().forEach(segment -> segment.buffer().force());
+        }
+        segments.clear();
+    }
+
+    private Segment createSegment(long baseOffset) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+        Segment segment = Segment.map(baseOffset, file, recordsPerSegment);
+        segments.put(baseOffset, segment);
+        return segment;
+    }
+
+    private void deleteConsumedSegments() {
+        for (Segment segment : segments.values()) {
+            if (segment == active || segment.baseOffset() + recordsPerSegment > committedOffset) {
+                break;
+            }
+            segments.remove(segment.baseOffset());
+            try {
+                Files.deleteIfExists(segment.file());
+            } catch (IOException e) {
+                log.warn("Could not delete consumed click log segment {}", segment.file(), e);
+            }
+        }
+    }
+
+    private void encode(PendingClick click, byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putLong(0, click.urlMappingId());
+        buffer.putLong(8, click.clickTimestamp().atZone(zone).toInstant().toEpochMilli());
+
+        byte[] ip = IpAddresses.toBytes(click.ipAddress());
+        int ipLength = ip != null ? ip.length : 0;
+        record[IP_OFFSET] = (byte) ipLength;
+        Arrays.fill(record, IP_OFFSET + 1, DEVICE_OFFSET, (byte) 0);
+        if (ipLength > 0) {
+            System.arraycopy(ip, 0, record, IP_OFFSET + 1, ipLength);
+        }
+        putString(record, DEVICE_OFFSET, DEVICE_MAX, click.deviceType());
+        putString(record, REFERRER_OFFSET, REFERRER_MAX, click.referrer());
+
+        appendChecksum.reset();
+        appendChecksum.update(record, 0, CHECKSUM_OFFSET);
+        buffer.putInt(CHECKSUM_OFFSET, (int) appendChecksum.getValue());
+    }
+
+    private PendingClick decode(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long urlMappingId = buffer.getLong(0);
+        LocalDateTime clickTimestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong(8)), zone);
+        int ipLength = record[IP_OFFSET];
+        String ipAddress = ipLength > 0
+                ? IpAddresses.toString(Arrays.copyOfRange(record, IP_OFFSET + 1, IP_OFFSET + 1 + ipLength))
+                : null;
+        return new PendingClick(urlMappingId, clickTimestamp, ipAddress,
+                getString(record, REFERRER_OFFSET), getString(record, DEVICE_OFFSET));
+    }
+
+    private boolean isValid(Segment segment, int index, byte[] record, CRC32C checksum) {
+        segment.buffer().get(index * RECORD_SIZE, record);
+        checksum.reset();
+        checksum.update(record, 0, CHECKSUM_OFFSET);
+        return ByteBuffer.wrap(record).getInt(CHECKSUM_OFFSET) == (int) checksum.getValue();
+    }
+
+    // 長さ1バイト + 最大 max バイト。入りきらない文字列は文字の途中で切れないように切り詰める
+    private static void putString(byte[] record, int offset, int max, String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = Math.min(bytes.length, max);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        record[offset] = (byte) length;
+        System.arraycopy(bytes, 0, record, offset + 1, length);
+        Arrays.fill(record, offset + 1 + length, offset + 1 + max, (byte) 0);
+    }
+
+    private static String getString(byte[] record, int offset) {
+        return new String(record, offset + 1, record[offset] & 0xFF, StandardCharsets.UTF_8);
+    }
+
+    public record Batch(List<PendingClick> clicks, long nextOffset) {
+    }
+
+    private record Segment(long baseOffset, Path file, MappedByteBuffer buffer) {
+
+        static Segment map(long baseOffset, Path file, int records) throws IOException {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(baseOffset, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * RECORD_SIZE));
+            }
+        }
+    }
+}
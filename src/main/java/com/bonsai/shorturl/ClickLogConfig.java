@@ -0,0 +1,24 @@
+package com.bonsai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+// shorturl.ingest.mode=log のときだけクリックをローカルのログファイル経由で取り込む
+@Configuration
+@ConditionalOnProperty(name = "shorturl.ingest.mode", havingValue = "log")
+public class ClickLogConfig {
+
+    @Bean(destroyMethod = "close")
+    public ClickLog clickLog(@Value("${shorturl.ingest.log.directory:./data/click-log}") Path directory,
+                             @Value("${shorturl.ingest.log.segment-records:65536}") int segmentRecords,
+                             @Value("${shorturl.ingest.log.fsync:INTERVAL}") ClickLog.FsyncPolicy fsyncPolicy,
+                             @Value("${shorturl.ingest.log.fsync-interval:1s}") Duration fsyncInterval) throws IOException {
+        return ClickLog.open(directory, segmentRecords, fsyncPolicy, fsyncInterval);
+    }
+}
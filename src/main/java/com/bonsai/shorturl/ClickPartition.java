@@ -0,0 +1,21 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.time.LocalDate;
+
+// 作成済みの日別クリックテーブル（click_event_yyyyMMdd）の一覧
+@Entity
+public class ClickPartition {
+
+    @Id
+    private LocalDate clickDate;
+
+    public ClickPartition() {
+    }
+
+    public LocalDate getClickDate() {
+        return clickDate;
+    }
+}
@@ -0,0 +1,47 @@
+package com.bonsai.shorturl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+// 保持期間を過ぎた日のクリックテーブルを毎日削除する。
+// 日別集計とユニーク訪問者のスケッチはクリックの取り込み時に作られているので、削除後も分析ページの集計は変わらない
+@Service
+public class ClickRetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClickRetentionService.class);
+
+    private final ClickEventStore clickEventStore;
+    private final JobLockService jobLockService;
+    private final int retentionDays;
+
+    public ClickRetentionService(ClickEventStore clickEventStore, JobLockService jobLockService,
+                                 @Value("${shorturl.clicks.retention-days:90}") int retentionDays) {
+        this.clickEventStore = clickEventStore;
+        this.jobLockService = jobLockService;
+        this.retentionDays = retentionDays;
+    }
+
+    @Scheduled(cron = "${shorturl.clicks.retention-cron:0 30 3 * * *}")
+    public void dropExpiredPartitions() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        // クラスタでは全ノードが同じ時刻に起動するので、1つのノードだけが削除する
+        jobLockService.runExclusively("click-retention", Duration.ofMinutes(5), this::dropPartitions);
+    }
+
+    private void dropPartitions() {
+        List<LocalDate> dropped = clickEventStore.dropPartitionsBefore(LocalDate.now().minusDays(retentionDays));
+        if (!dropped.isEmpty()) {
+            log.info("Dropped {} click partitions older than {} days ({} .. {})",
+                    dropped.size(), retentionDays, dropped.get(0), dropped.get(dropped.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.bonsai.shorturl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// 保存済みのクリックから集計テーブルとスケッチを作り直す（集計テーブル導入前のデータ用）。
+// 1日分ずつ別のトランザクションで作り直す。取り込み中の日（今日と、INGESTION_MARGIN 前までの日）は
+// 取り込み時に集計済みで、作り直すと取り込みと競合するので触らない
+@Service
+public class ClickRollupBackfillService implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ClickRollupBackfillService.class);
+
+    private static final int CHUNK_SIZE = 5000;
+    // キューに残っている前日のクリックが書き込まれ終わるまでの余裕
+    private static final Duration INGESTION_MARGIN = Duration.ofHours(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClickEventStore clickEventStore;
+    private final ClickRollupService clickRollupService;
+    private final VisitorSketchService visitorSketchService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean backfillOnStartup;
+
+    public ClickRollupBackfillService(JdbcTemplate jdbcTemplate,
+                                      ClickEventStore clickEventStore,
+                                      ClickRollupService clickRollupService,
+                                      VisitorSketchService visitorSketchService,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${shorturl.rollup.backfill-on-startup:false}") boolean backfillOnStartup) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clickEventStore = clickEventStore;
+        this.clickRollupService = clickRollupService;
+        this.visitorSketchService = visitorSketchService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.backfillOnStartup = backfillOnStartup;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (backfillOnStartup) {
+            backfill();
+        }
+    }
+
+    public void backfill() {
+        LocalDate cutoff = LocalDateTime.now().minus(INGESTION_MARGIN).toLocalDate();
+        long total = 0;
+        for (LocalDate day : List.copyOf(clickEventStore.getPartitions())) {
+            if (!day.isBefore(cutoff)) {
+                break;
+            }
+            Integer clicks = transactionTemplate.execute(status -> backfill(day));
+            total += clicks != null ? clicks : 0;
+        }
+        log.info("Rebuilt click rollups and visitor sketches before {} from {} stored clicks", cutoff, total);
+    }
+
+    // 保持期間を過ぎてクリックが削除された日の集計は作り直せないので、クリックが残っている日だけ作り直す。
+    // スケッチは同じIPを何度加えても変わらないので、削除せずにそのまま加え直す
+    private int backfill(LocalDate day) {
+        jdbcTemplate.update("delete from daily_click_rollup where click_date = ?", Date.valueOf(day));
+        jdbcTemplate.update("delete from daily_dimension_rollup where click_date = ?", Date.valueOf(day));
+
+        // 取り込み時と同じ処理に、保存済みのクリックを少しずつ流し直す
+        List<ClickRollupService.Click> chunk = new ArrayList<>(CHUNK_SIZE);
+        int[] total = {0};
+        clickEventStore.forEachClick(day, event -> {
+            if (event.isBot()) {
+                return;
+            }
+            chunk.add(new ClickRollupService.Click(event.getUrlMappingId(), event.getClickTimestamp().toLocalDate(),
+                    event.getDeviceType(), event.getCountry(), event.getReferrer(), event.getIpAddress()));
+            if (chunk.size() == CHUNK_SIZE) {
+                total[0] += applyChunk(chunk);
+            }
+        });
+        total[0] += applyChunk(chunk);
+        return total[0];
+    }
+
+    private int applyChunk(List<ClickRollupService.Click> chunk) {
+        int size = chunk.size();
+        if (size > 0) {
+            clickRollupService.apply(chunk);
+            visitorSketchService.apply(chunk);
+            chunk.clear();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,107 @@
+package com.bonsai.shorturl;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// クリック取り込み時に日別の集計テーブルへ加算する
+// 集計はまずメモリ上でまとめ、既存行はUPDATE、なければINSERTする。
+// 行はキーの順（url_mapping_id, click_date, dimension, dimension_value）に更新する。
+// 同じ行を更新する複数のバッチ（他のスレッドやノード）が互いのロックを待ってデッドロックしないように
+@Service
+public class ClickRollupService {
+
+    private static final String UPDATE_DAILY =
+            "update daily_click_rollup set clicks = clicks + ?, desktop_clicks = desktop_clicks + ?, mobile_clicks = mobile_clicks + ? "
+                    + "where url_mapping_id = ? and click_date = ?";
+    private static final String INSERT_DAILY =
+            "insert into daily_click_rollup (clicks, desktop_clicks, mobile_clicks, url_mapping_id, click_date) values (?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_DIMENSION =
+            "update daily_dimension_rollup set clicks = clicks + ? "
+                    + "where url_mapping_id = ? and click_date = ? and dimension = ? and dimension_value = ?";
+    private static final String INSERT_DIMENSION =
+            "insert into daily_dimension_rollup (clicks, url_mapping_id, click_date, dimension, dimension_value) values (?, ?, ?, ?, ?)";
+
+    private static final int MAX_UPSERT_ATTEMPTS = 5;
+
+    private static final Comparator<DailyKey> DAILY_ORDER =
+            Comparator.comparing(DailyKey::urlMappingId).thenComparing(DailyKey::clickDate);
+    private static final Comparator<DimensionKey> DIMENSION_ORDER =
+            Comparator.comparing(DimensionKey::urlMappingId).thenComparing(DimensionKey::clickDate)
+                    .thenComparing(key -> key.dimension().name())
+                    .thenComparing(DimensionKey::value, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ClickRollupService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // 呼び出し元（ClickEventWriter）のトランザクション内で実行される
+    public void apply(List<Click> clicks) {
+        Map<DailyKey, long[]> daily = new TreeMap<>(DAILY_ORDER);
+        Map<DimensionKey, long[]> dimensions = new TreeMap<>(DIMENSION_ORDER);
+
+        for (Click click : clicks) {
+            long[] counts = daily.computeIfAbsent(new DailyKey(click.urlMappingId(), click.clickDate()), key -> new long[3]);
+            counts[0]++;
+            if ("Mobile".equals(click.deviceType())) {
+                counts[2]++;
+            } else {
+                counts[1]++;
+            }
+            dimensions.computeIfAbsent(new DimensionKey(click.urlMappingId(), click.clickDate(), RollupDimension.COUNTRY, click.country()),
+                    key -> new long[1])[0]++;
+            dimensions.computeIfAbsent(new DimensionKey(click.urlMappingId(), click.clickDate(), RollupDimension.REFERRER, click.referrer()),
+                    key -> new long[1])[0]++;
+        }
+
+        List<Object[]> dailyRows = new ArrayList<>(daily.size());
+        daily.forEach((key, counts) -> dailyRows.add(new Object[]{
+                counts[0], counts[1], counts[2], key.urlMappingId(), Date.valueOf(key.clickDate())}));
+        upsert(UPDATE_DAILY, INSERT_DAILY, dailyRows);
+
+        List<Object[]> dimensionRows = new ArrayList<>(dimensions.size());
+        dimensions.forEach((key, counts) -> dimensionRows.add(new Object[]{
+                counts[0], key.urlMappingId(), Date.valueOf(key.clickDate()), key.dimension().name(), key.value()}));
+        upsert(UPDATE_DIMENSION, INSERT_DIMENSION, dimensionRows);
+    }
+
+    // UPDATE と INSERT で同じパラメータ順にしてあるので、更新できなかった行をそのままINSERTに回せる。
+    // UPDATE と INSERT の間に他のノードが同じ行を INSERT していたら、INSERT をまとめて取り消して UPDATE からやり直す
+    private void upsert(String updateSql, String insertSql, List<Object[]> rows) {
+        for (int attempt = 0; attempt < MAX_UPSERT_ATTEMPTS && !rows.isEmpty(); attempt++) {
+            int[] updated = jdbcTemplate.batchUpdate(updateSql, rows);
+            List<Object[]> missing = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    missing.add(rows.get(i));
+                }
+            }
+            if (missing.isEmpty() || Savepoints.runIgnoringDuplicateKey(jdbcTemplate,
+                    () -> jdbcTemplate.batchUpdate(insertSql, missing))) {
+                return;
+            }
+            rows = missing;
+        }
+        throw new IllegalStateException("Could not upsert " + rows.size() + " rollup rows after " + MAX_UPSERT_ATTEMPTS + " attempts");
+    }
+
+    public record Click(Long urlMappingId, LocalDate clickDate, String deviceType, String country, String referrer,
+                        String ipAddress) {
+    }
+
+    private record DailyKey(Long urlMappingId, LocalDate clickDate) {
+    }
+
+    private record DimensionKey(Long urlMappingId, LocalDate clickDate, RollupDimension dimension, String value) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.bonsai.shorturl;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+// リダイレクト時のクリック記録。MVC のコントローラーと RedirectFilter の両方から使う
+@Component
+public class ClickTracker {
+
+    private final ClickCounter clickCounter;
+    private final ClickIngestionService clickIngestionService;
+    private final UserAgentClassifier userAgentClassifier;
+
+    public ClickTracker(ClickCounter clickCounter, ClickIngestionService clickIngestionService,
+                        UserAgentClassifier userAgentClassifier) {
+        this.clickCounter = clickCounter;
+        this.clickIngestionService = clickIngestionService;
+        this.userAgentClassifier = userAgentClassifier;
+    }
+
+    public void record(RedirectTarget target, HttpServletRequest request, LocalDateTime now) {
+        String ipAddress = request.getRemoteAddr();
+        if ("0:0:0:0:0:0:0:1".equals(ipAddress) || "127.0.0.1".equals(ipAddress)) {
+            ipAddress = "8.8.8.8";
+        }
+
+        // リファラーはホスト名だけを記録する（ヘッダーがなければ "Direct"）
+        String referrer = Referrers.host(request.getHeader("Referer"));
+
+        UserAgentClassifier.Classification userAgent = userAgentClassifier.classify(request.getHeader("User-Agent"));
+
+        // ボットのクリックも保存はする（デバイス種別 "Bot"）が、リンクのクリック数には数えない
+        if (!userAgent.bot()) {
+            clickCounter.increment(target.id());
+        }
+        // DBへの保存はバックグラウンドで行うので、ここではキューに積むだけ
+        clickIngestionService.submit(new PendingClick(target.id(), now, ipAddress, referrer, userAgent.deviceType()));
+    }
+}
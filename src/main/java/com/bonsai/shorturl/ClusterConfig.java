@@ -0,0 +1,46 @@
+package com.bonsai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+// 複数ノード構成（cluster プロファイル）で使う部品。shorturl.cluster.enabled=false（既定）なら
+// 通知は自分にしか届かない LoopbackCacheInvalidationBus になり、定期ジョブはロックなしで実行する
+@Configuration
+public class ClusterConfig {
+
+    @Bean
+    public JobLockService jobLockService(JdbcTemplate jdbcTemplate,
+                                         @Value("${shorturl.cluster.enabled:false}") boolean enabled,
+                                         @Value("${shorturl.cluster.node-name:}") String nodeName,
+                                         @Value("${shorturl.cluster.lock-at-most-for:1h}") Duration lockAtMostFor) {
+        return new JobLockService(jdbcTemplate, enabled, resolveNodeName(nodeName), lockAtMostFor);
+    }
+
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(JdbcTemplate jdbcTemplate,
+                                                     JobLockService jobLockService,
+                                                     @Value("${shorturl.cluster.enabled:false}") boolean enabled,
+                                                     @Value("${shorturl.cluster.invalidation.gap-timeout:5s}") Duration gapTimeout,
+                                                     @Value("${shorturl.cluster.invalidation.retention:1h}") Duration retention,
+                                                     @Value("${shorturl.cluster.invalidation.prune-interval:600000}") long pruneInterval,
+                                                     @Value("${shorturl.cluster.invalidation.catch-up-interval:20ms}") Duration catchUpInterval) {
+        if (!enabled) {
+            return new LoopbackCacheInvalidationBus();
+        }
+        return new JdbcCacheInvalidationBus(jdbcTemplate, jobLockService, jobLockService.getNodeName(),
+                gapTimeout, retention, Duration.ofMillis(pruneInterval), catchUpInterval);
+    }
+
+    // 指定がなければ pid@ホスト名（同じホストで複数起動しても重ならない）
+    private static String resolveNodeName(String configured) {
+        if (configured != null && !configured.isBlank()) {
+            return configured.trim();
+        }
+        return ManagementFactory.getRuntimeMXBean().getName();
+    }
+}
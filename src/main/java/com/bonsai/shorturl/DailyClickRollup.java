@@ -0,0 +1,52 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+
+// リンクごと・日ごとのクリック数の集計結果（クリック取り込み時に加算していく）
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"url_mapping_id", "click_date"}))
+public class DailyClickRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "url_mapping_id", nullable = false)
+    private Long urlMappingId;
+
+    @Column(name = "click_date", nullable = false)
+    private LocalDate clickDate;
+
+    private long clicks;
+    private long desktopClicks;
+    private long mobileClicks;
+
+    public DailyClickRollup() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUrlMappingId() {
+        return urlMappingId;
+    }
+
+    public LocalDate getClickDate() {
+        return clickDate;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+
+    public long getDesktopClicks() {
+        return desktopClicks;
+    }
+
+    public long getMobileClicks() {
+        return mobileClicks;
+    }
+}
@@ -0,0 +1,22 @@
+package com.bonsai.shorturl;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyClickRollupRepository extends JpaRepository<DailyClickRollup, Long> {
+    @Query("select new com.bonsai.shorturl.DailyCount(r.clickDate, r.clicks) from DailyClickRollup r "
+            + "where r.urlMappingId = :urlMappingId and r.clickDate between :from and :to order by r.clickDate")
+    List<DailyCount> findDailyCounts(@Param("urlMappingId") Long urlMappingId,
+                                     @Param("from") LocalDate from,
+                                     @Param("to") LocalDate to);
+
+    @Query("select new com.bonsai.shorturl.DeviceBreakdown(sum(r.desktopClicks), sum(r.mobileClicks)) "
+            + "from DailyClickRollup r where r.urlMappingId = :urlMappingId and r.clickDate between :from and :to")
+    DeviceBreakdown sumDevices(@Param("urlMappingId") Long urlMappingId,
+                               @Param("from") LocalDate from,
+                               @Param("to") LocalDate to);
+}
\ No newline at end of file
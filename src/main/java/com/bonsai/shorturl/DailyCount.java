@@ -0,0 +1,6 @@
+package com.bonsai.shorturl;
+
+import java.time.LocalDate;
+
+public record DailyCount(LocalDate date, Long clicks) {
+}
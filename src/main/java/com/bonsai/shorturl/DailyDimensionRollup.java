@@ -0,0 +1,57 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+
+// リンクごと・日ごと・国や流入元ごとのクリック数の集計結果
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"url_mapping_id", "click_date", "dimension", "dimension_value"}))
+public class DailyDimensionRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "url_mapping_id", nullable = false)
+    private Long urlMappingId;
+
+    @Column(name = "click_date", nullable = false)
+    private LocalDate clickDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "dimension", nullable = false)
+    private RollupDimension dimension;
+
+    @Column(name = "dimension_value", nullable = false)
+    private String dimensionValue;
+
+    private long clicks;
+
+    public DailyDimensionRollup() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUrlMappingId() {
+        return urlMappingId;
+    }
+
+    public LocalDate getClickDate() {
+        return clickDate;
+    }
+
+    public RollupDimension getDimension() {
+        return dimension;
+    }
+
+    public String getDimensionValue() {
+        return dimensionValue;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+}
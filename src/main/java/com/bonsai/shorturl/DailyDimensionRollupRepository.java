@@ -0,0 +1,21 @@
+package com.bonsai.shorturl;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyDimensionRollupRepository extends JpaRepository<DailyDimensionRollup, Long> {
+    @Query("select new com.bonsai.shorturl.DimensionCount(r.dimensionValue, sum(r.clicks)) "
+            + "from DailyDimensionRollup r where r.urlMappingId = :urlMappingId and r.dimension = :dimension "
+            + "and r.clickDate between :from and :to "
+            + "group by r.dimensionValue order by sum(r.clicks) desc")
+    List<DimensionCount> findTopValues(@Param("urlMappingId") Long urlMappingId,
+                                       @Param("dimension") RollupDimension dimension,
+                                       @Param("from") LocalDate from,
+                                       @Param("to") LocalDate to,
+                                       Pageable pageable);
+}
\ No newline at end of file
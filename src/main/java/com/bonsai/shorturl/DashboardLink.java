@@ -0,0 +1,21 @@
+package com.bonsai.shorturl;
+
+import java.time.LocalDateTime;
+
+// ダッシュボードの一覧1行分。表示する列だけを JPQL のコンストラクタ式で読むので、エンティティは永続化コンテキストに載らない
+public record DashboardLink(Long id, String shortCode, String originalUrl, int clickCount,
+                            LocalDateTime expirationTimestamp, LinkStatus status, long pendingClickCount) {
+
+    public DashboardLink(Long id, String shortCode, String originalUrl, int clickCount,
+                         LocalDateTime expirationTimestamp, LinkStatus status) {
+        this(id, shortCode, originalUrl, clickCount, expirationTimestamp, status, 0);
+    }
+
+    public DashboardLink withPendingClickCount(long pendingClickCount) {
+        return new DashboardLink(id, shortCode, originalUrl, clickCount, expirationTimestamp, status, pendingClickCount);
+    }
+
+    public long getTotalClickCount() {
+        return clickCount + pendingClickCount;
+    }
+}
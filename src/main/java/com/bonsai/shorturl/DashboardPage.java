@@ -0,0 +1,7 @@
+package com.bonsai.shorturl;
+
+import java.util.List;
+
+// nextCursor は次のページがなければ null
+public record DashboardPage(List<DashboardLink> links, String nextCursor) {
+}
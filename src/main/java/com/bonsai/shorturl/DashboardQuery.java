@@ -0,0 +1,20 @@
+package com.bonsai.shorturl;
+
+// ダッシュボードの並び順と絞り込み条件。cursor は前のページの最後の行（最初のページは null）
+public record DashboardQuery(Sort sort, LinkStatus status, Expiration expiration, int minClicks, String cursor) {
+
+    public enum Sort {
+        // 作成が新しい順（id の降順）
+        NEWEST,
+        // クリック数の多い順
+        CLICKS,
+        // 有効期限の近い順（期限なしは最後）
+        EXPIRATION
+    }
+
+    public enum Expiration {
+        ALL,
+        ACTIVE,
+        EXPIRED
+    }
+}
@@ -0,0 +1,173 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ダッシュボードのリンク一覧。OFFSET ではなく前のページの最後の行（cursor）より後ろを読むキーセット方式なので、
+// 何ページ目でも (user_id, 並び順の列, id) のインデックスを1回たどるだけで済み、リンク数に関係なく一定の時間で返る
+@Service
+public class DashboardQueryService {
+
+    private static final char CURSOR_SEPARATOR = '_';
+
+    private final EntityManager entityManager;
+    private final ClickCounter clickCounter;
+    private final int pageSize;
+
+    public DashboardQueryService(EntityManager entityManager, ClickCounter clickCounter,
+                                 @Value("${shorturl.dashboard.page-size:50}") int pageSize) {
+        this.entityManager = entityManager;
+        this.clickCounter = clickCounter;
+        this.pageSize = pageSize;
+    }
+
+    @Transactional(readOnly = true)
+    public DashboardPage findLinks(Long userId, DashboardQuery query, LocalDateTime now) {
+        StringBuilder jpql = new StringBuilder("select new com.bonsai.shorturl.DashboardLink("
+                + "u.id, u.shortCode, u.originalUrl, u.clickCount, u.expirationTimestamp, u.status) "
+                + "from UrlMapping u where u.user.id = :userId");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("userId", userId);
+
+        if (query.status() != null) {
+            jpql.append(" and u.status = :status");
+            parameters.put("status", query.status());
+        }
+        if (query.minClicks() > 0) {
+            jpql.append(" and u.clickCount >= :minClicks");
+            parameters.put("minClicks", query.minClicks());
+        }
+        if (query.expiration() == DashboardQuery.Expiration.ACTIVE) {
+            jpql.append(" and (u.expirationTimestamp is null or u.expirationTimestamp > :now)");
+            parameters.put("now", now);
+        } else if (query.expiration() == DashboardQuery.Expiration.EXPIRED) {
+            jpql.append(" and u.expirationTimestamp <= :now");
+            parameters.put("now", now);
+        }
+
+        Cursor cursor = parseCursor(query.sort(), query.cursor());
+        switch (query.sort()) {
+            case NEWEST -> {
+                if (cursor != null) {
+                    jpql.append(" and u.id < :afterId");
+                    parameters.put("afterId", cursor.id());
+                }
+                jpql.append(" order by u.id desc");
+            }
+            case CLICKS -> {
+                if (cursor != null) {
+                    jpql.append(" and (u.clickCount < :afterClicks or (u.clickCount = :afterClicks and u.id < :afterId))");
+                    parameters.put("afterClicks", Integer.parseInt(cursor.value()));
+                    parameters.put("afterId", cursor.id());
+                }
+                jpql.append(" order by u.clickCount desc, u.id desc");
+            }
+            case EXPIRATION -> {
+                if (cursor != null && cursor.value().isEmpty()) {
+                    // 期限なしのリンクまで読み進んでいる
+                    jpql.append(" and u.expirationTimestamp is null and u.id > :afterId");
+                    parameters.put("afterId", cursor.id());
+                } else if (cursor != null) {
+                    jpql.append(" and (u.expirationTimestamp > :afterExpiration"
+                            + " or (u.expirationTimestamp = :afterExpiration and u.id > :afterId)"
+                            + " or u.expirationTimestamp is null)");
+                    parameters.put("afterExpiration", LocalDateTime.parse(cursor.value()));
+                    parameters.put("afterId", cursor.id());
+                }
+                jpql.append(" order by u.expirationTimestamp asc nulls last, u.id asc");
+            }
+        }
+
+        TypedQuery<DashboardLink> typedQuery = entityManager.createQuery(jpql.toString(), DashboardLink.class);
+        parameters.forEach(typedQuery::setParameter);
+        // 1件多く読んで、次のページがあるかどうかを判定する
+        List<DashboardLink> rows = typedQuery.setMaxResults(pageSize + 1).getResultList();
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            nextCursor = toCursor(query.sort(), rows.get(pageSize - 1));
+        }
+        List<DashboardLink> links = new ArrayList<>(rows.size());
+        for (DashboardLink row : rows) {
+            links.add(row.withPendingClickCount(clickCounter.getPendingCount(row.id())));
+        }
+        return new DashboardPage(links, nextCursor);
+    }
+
+    // 検索結果の表示用。ids の順に返す（他のユーザーのリンクの id は無視する）
+    @Transactional(readOnly = true)
+    public List<DashboardLink> findLinksByIds(Long userId, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, DashboardLink> rows = new HashMap<>();
+        entityManager.createQuery("select new com.bonsai.shorturl.DashboardLink("
+                        + "u.id, u.shortCode, u.originalUrl, u.clickCount, u.expirationTimestamp, u.status) "
+                        + "from UrlMapping u where u.user.id = :userId and u.id in :ids", DashboardLink.class)
+                .setParameter("userId", userId)
+                .setParameter("ids", ids)
+                .getResultList()
+                .forEach(row -> rows.put(row.id(), row));
+        List<DashboardLink> links = new ArrayList<>(rows.size());
+        for (Long id : ids) {
+            DashboardLink row = rows.get(id);
+            if (row != null) {
+                links.add(row.withPendingClickCount(clickCounter.getPendingCount(id)));
+            }
+        }
+        return links;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    // cursor は「並び順の列の値_id」（NEWEST は id だけ）。期限なしのリンクは値を空にする
+    private static String toCursor(DashboardQuery.Sort sort, DashboardLink last) {
+        return switch (sort) {
+            case NEWEST -> String.valueOf(last.id());
+            case CLICKS -> String.valueOf(last.clickCount()) + CURSOR_SEPARATOR + last.id();
+            case EXPIRATION -> (last.expirationTimestamp() != null ? last.expirationTimestamp().toString() : "")
+                    + CURSOR_SEPARATOR + last.id();
+        };
+    }
+
+    // 壊れた cursor は無視して最初のページを返す
+    private static Cursor parseCursor(DashboardQuery.Sort sort, String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            if (sort == DashboardQuery.Sort.NEWEST) {
+                return new Cursor("", Long.parseLong(cursor));
+            }
+            int separator = cursor.lastIndexOf(CURSOR_SEPARATOR);
+            if (separator < 0) {
+                return null;
+            }
+            String value = cursor.substring(0, separator);
+            if (sort == DashboardQuery.Sort.CLICKS) {
+                Integer.parseInt(value);
+            } else if (!value.isEmpty()) {
+                LocalDateTime.parse(value);
+            }
+            return new Cursor(value, Long.parseLong(cursor.substring(separator + 1)));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private record Cursor(String value, long id) {
+    }
+}
@@ -0,0 +1,10 @@
+package com.bonsai.shorturl;
+
+public record DeviceBreakdown(Long desktopCount, Long mobileCount) {
+
+    public DeviceBreakdown {
+        // 集計対象の行がないと sum() は null になる
+        desktopCount = desktopCount != null ? desktopCount : 0L;
+        mobileCount = mobileCount != null ? mobileCount : 0L;
+    }
+}
@@ -0,0 +1,4 @@
+package com.bonsai.shorturl;
+
+public record DimensionCount(String value, Long clicks) {
+}
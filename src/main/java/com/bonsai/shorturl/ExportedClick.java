@@ -0,0 +1,8 @@
+package com.bonsai.shorturl;
+
+import java.time.LocalDateTime;
+
+// クリックのエクスポート1件分（CSV の1行 / NDJSON の1行）
+public record ExportedClick(String shortCode, LocalDateTime clickedAt, String country, String city, String referrer,
+                            String deviceType, String ipAddress) {
+}
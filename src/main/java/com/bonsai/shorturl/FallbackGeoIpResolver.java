@@ -0,0 +1,19 @@
+package com.bonsai.shorturl;
+
+// primary で引けなかったときだけ secondary に問い合わせる
+public class FallbackGeoIpResolver implements GeoIpResolver {
+
+    private final GeoIpResolver primary;
+    private final GeoIpResolver secondary;
+
+    public FallbackGeoIpResolver(GeoIpResolver primary, GeoIpResolver secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+    }
+
+    @Override
+    public GeoLocation resolve(String ipAddress) {
+        GeoLocation location = primary.resolve(ipAddress);
+        return location != null ? location : secondary.resolve(ipAddress);
+    }
+}
@@ -0,0 +1,62 @@
+package com.bonsai.shorturl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+
+@Configuration
+public class GeoIpConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(GeoIpConfig.class);
+
+    @Bean
+    public GeoIpResolver geoIpResolver(ResourceLoader resourceLoader,
+                                       RestTemplateBuilder restTemplateBuilder,
+                                       @Value("${shorturl.geoip.database:}") String databaseLocation,
+                                       @Value("${shorturl.geoip.fallback:ip-api}") String fallback,
+                                       @Value("${shorturl.geoip.cache-size:10000}") int cacheSize,
+                                       @Value("${shorturl.geoip.cache-ttl:1h}") Duration cacheTtl) throws IOException {
+        IpRangeGeoIpResolver local = loadLocalDatabase(resourceLoader, databaseLocation);
+        boolean useIpApi = "ip-api".equalsIgnoreCase(fallback);
+        // ローカルのデータが無いと、すべてのIPが外部API行きか Unknown になる
+        if (local.size() == 0) {
+            log.warn("GeoIP database {} has no IP ranges; {}",
+                    databaseLocation == null || databaseLocation.isBlank() ? "(shorturl.geoip.database not set)" : databaseLocation,
+                    useIpApi ? "every new IP will be looked up on ip-api" : "every click will be stored with an Unknown location");
+        } else {
+            log.info("Loaded {} GeoIP ranges from {}", local.size(), databaseLocation);
+        }
+
+        GeoIpResolver resolver = local;
+        if (useIpApi) {
+            // 外部APIは遅いことがあるので、タイムアウトを短めにしたRestTemplateを1つだけ使い回す
+            RestTemplate restTemplate = restTemplateBuilder
+                    .connectTimeout(Duration.ofSeconds(2))
+                    .readTimeout(Duration.ofSeconds(2))
+                    .build();
+            resolver = new FallbackGeoIpResolver(resolver, new IpApiGeoIpResolver(restTemplate));
+        }
+
+        return new CachingGeoIpResolver(resolver, cacheSize, cacheTtl);
+    }
+
+    private IpRangeGeoIpResolver loadLocalDatabase(ResourceLoader resourceLoader, String databaseLocation) throws IOException {
+        if (databaseLocation == null || databaseLocation.isBlank()) {
+            return IpRangeGeoIpResolver.empty();
+        }
+        Resource resource = resourceLoader.getResource(databaseLocation);
+        try (InputStream inputStream = resource.getInputStream()) {
+            return IpRangeGeoIpResolver.load(inputStream);
+        }
+    }
+}
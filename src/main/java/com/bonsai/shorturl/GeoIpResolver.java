@@ -0,0 +1,8 @@
+package com.bonsai.shorturl;
+
+// IPアドレスから国・都市を引くための共通インターフェース
+public interface GeoIpResolver {
+
+    // 見つからない場合は null を返す
+    GeoLocation resolve(String ipAddress);
+}
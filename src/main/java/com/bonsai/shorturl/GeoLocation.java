@@ -0,0 +1,6 @@
+package com.bonsai.shorturl;
+
+public record GeoLocation(String country, String city) {
+
+    public static final GeoLocation UNKNOWN = new GeoLocation("Unknown", "Unknown");
+}
@@ -0,0 +1,180 @@
+package com.bonsai.shorturl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// ユニーク訪問者数を近似的に数えるための HyperLogLog
+// 精度 p のとき 2^p バイトのレジスタを使い、標準誤差は約 1.04 / sqrt(2^p)（p=12 で約1.6%, 4KB）
+// 訪問者が少ないうちはハッシュ値をそのまま保持する exact モードで正確に数え、
+// EXACT_LIMIT を超えたらレジスタ形式に切り替える
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 12;
+    static final int EXACT_LIMIT = 256;
+
+    private static final byte FORMAT_EXACT = 1;
+    private static final byte FORMAT_DENSE = 2;
+
+    private final int precision;
+    private long[] exactHashes = new long[8];
+    private int exactSize;
+    private byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision must be between 4 and 18: " + precision);
+        }
+        this.precision = precision;
+    }
+
+    public void add(String value) {
+        if (value != null) {
+            addHash(hash64(value));
+        }
+    }
+
+    public void addHash(long hash) {
+        if (registers != null) {
+            updateRegister(hash);
+            return;
+        }
+        int index = Arrays.binarySearch(exactHashes, 0, exactSize, hash);
+        if (index >= 0) {
+            return;
+        }
+        if (exactSize == EXACT_LIMIT) {
+            toDense();
+            updateRegister(hash);
+            return;
+        }
+        int insertAt = -index - 1;
+        if (exactSize == exactHashes.length) {
+            exactHashes = Arrays.copyOf(exactHashes, Math.min(exactHashes.length * 2, EXACT_LIMIT));
+        }
+        System.arraycopy(exactHashes, insertAt, exactHashes, insertAt + 1, exactSize - insertAt);
+        exactHashes[insertAt] = hash;
+        exactSize++;
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with different precision");
+        }
+        if (other.registers == null) {
+            for (int i = 0; i < other.exactSize; i++) {
+                addHash(other.exactHashes[i]);
+            }
+            return;
+        }
+        if (registers == null) {
+            toDense();
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long cardinality() {
+        if (registers == null) {
+            return exactSize;
+        }
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // 少ない件数では偏りが大きいので線形カウントで補正する
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isExact() {
+        return registers == null;
+    }
+
+    public byte[] toBytes() {
+        if (registers == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(2 + 4 + exactSize * 8);
+            buffer.put(FORMAT_EXACT).put((byte) precision).putInt(exactSize);
+            for (int i = 0; i < exactSize; i++) {
+                buffer.putLong(exactHashes[i]);
+            }
+            return buffer.array();
+        }
+        byte[] bytes = new byte[2 + registers.length];
+        bytes[0] = FORMAT_DENSE;
+        bytes[1] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 2, registers.length);
+        return bytes;
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte format = buffer.get();
+        HyperLogLog sketch = new HyperLogLog(buffer.get());
+        if (format == FORMAT_EXACT) {
+            int size = buffer.getInt();
+            sketch.exactHashes = new long[Math.max(8, size)];
+            for (int i = 0; i < size; i++) {
+                sketch.exactHashes[i] = buffer.getLong();
+            }
+            sketch.exactSize = size;
+        } else if (format == FORMAT_DENSE) {
+            sketch.registers = new byte[1 << sketch.precision];
+            buffer.get(sketch.registers);
+        } else {
+            throw new IllegalArgumentException("Unknown sketch format: " + format);
+        }
+        return sketch;
+    }
+
+    private void toDense() {
+        registers = new byte[1 << precision];
+        for (int i = 0; i < exactSize; i++) {
+            updateRegister(exactHashes[i]);
+        }
+        exactHashes = null;
+        exactSize = 0;
+    }
+
+    private void updateRegister(long hash) {
+        // 上位 p ビットでレジスタを選び、残りのビットの先頭の0の数+1を記録する
+        int index = (int) (hash >>> (64 - precision));
+        long rest = hash << precision;
+        int rank = rest == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    // FNV-1a で畳み込んだ後、MurmurHash3 の fmix64 でビットを十分に拡散させる
+    static long hash64(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
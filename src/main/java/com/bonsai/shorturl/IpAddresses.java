@@ -0,0 +1,41 @@
+package com.bonsai.shorturl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+// IPアドレスを文字列ではなく 4/16 バイトで保存するための変換
+public final class IpAddresses {
+
+    private IpAddresses() {
+    }
+
+    public static byte[] toBytes(String ipAddress) {
+        if (ipAddress == null) {
+            return null;
+        }
+        long ipv4 = IpRangeGeoIpResolver.parseIpv4(ipAddress);
+        if (ipv4 >= 0) {
+            return new byte[]{(byte) (ipv4 >>> 24), (byte) (ipv4 >>> 16), (byte) (ipv4 >>> 8), (byte) ipv4};
+        }
+        // ':' を含む文字列はIPv6リテラルとして解釈されるので、DNSの問い合わせは発生しない
+        if (ipAddress.indexOf(':') >= 0) {
+            try {
+                return InetAddress.getByName(ipAddress).getAddress();
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public static String toString(byte[] address) {
+        if (address == null) {
+            return null;
+        }
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.bonsai.shorturl;
+
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+// ip-api.com に問い合わせるGeoIP（ローカルデータで引けなかったときのフォールバック用）
+public class IpApiGeoIpResolver implements GeoIpResolver {
+
+    private final RestTemplate restTemplate;
+
+    public IpApiGeoIpResolver(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public GeoLocation resolve(String ipAddress) {
+        try {
+            IpApiResponse response = restTemplate.getForObject("http://ip-api.com/json/{ip}", IpApiResponse.class, ipAddress);
+            if (response == null || response.getCountry() == null) {
+                return null;
+            }
+            String city = response.getCity() != null ? response.getCity() : "Unknown";
+            return new GeoLocation(response.getCountry(), city);
+        } catch (RestClientException e) {
+            return null;
+        }
+    }
+}
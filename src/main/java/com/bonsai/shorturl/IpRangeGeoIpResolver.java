@@ -0,0 +1,152 @@
+package com.bonsai.shorturl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ローカルのIP範囲データ（CSV: start_ip,end_ip,country,city）を使うGeoIP
+// 範囲の開始・終了はソート済みの int 配列で持ち、二分探索で引く
+public class IpRangeGeoIpResolver implements GeoIpResolver {
+
+    private final int[] rangeStarts;
+    private final int[] rangeEnds;
+    private final int[] locationIndexes;
+    private final GeoLocation[] locations;
+
+    private IpRangeGeoIpResolver(int[] rangeStarts, int[] rangeEnds, int[] locationIndexes, GeoLocation[] locations) {
+        this.rangeStarts = rangeStarts;
+        this.rangeEnds = rangeEnds;
+        this.locationIndexes = locationIndexes;
+        this.locations = locations;
+    }
+
+    public static IpRangeGeoIpResolver empty() {
+        return new IpRangeGeoIpResolver(new int[0], new int[0], new int[0], new GeoLocation[0]);
+    }
+
+    public static IpRangeGeoIpResolver load(InputStream inputStream) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        List<GeoLocation> locations = new ArrayList<>();
+        // 同じ国・都市の組み合わせは1つのインスタンスを共有する
+        Map<GeoLocation, Integer> locationIds = new HashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("start")) {
+                    continue;
+                }
+                String[] columns = line.split(",", 4);
+                if (columns.length < 4) {
+                    throw new IOException("GeoIPデータの形式が不正です (" + lineNumber + "行目): " + line);
+                }
+                long start = parseIpv4(unquote(columns[0]));
+                long end = parseIpv4(unquote(columns[1]));
+                if (start < 0 || end < 0 || start > end) {
+                    throw new IOException("GeoIPデータのIP範囲が不正です (" + lineNumber + "行目): " + line);
+                }
+                GeoLocation location = new GeoLocation(unquote(columns[2]), unquote(columns[3]));
+                Integer locationId = locationIds.get(location);
+                if (locationId == null) {
+                    locationId = locations.size();
+                    locations.add(location);
+                    locationIds.put(location, locationId);
+                }
+                ranges.add(new long[]{start, end, locationId});
+            }
+        }
+
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        int size = ranges.size();
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        int[] indexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            long[] range = ranges.get(i);
+            starts[i] = (int) range[0];
+            ends[i] = (int) range[1];
+            indexes[i] = (int) range[2];
+        }
+        return new IpRangeGeoIpResolver(starts, ends, indexes, locations.toArray(new GeoLocation[0]));
+    }
+
+    @Override
+    public GeoLocation resolve(String ipAddress) {
+        if (rangeStarts.length == 0 || ipAddress == null) {
+            return null;
+        }
+        long parsed = parseIpv4(ipAddress);
+        if (parsed < 0) {
+            // IPv6や不正な値はこのデータでは引けない
+            return null;
+        }
+        int ip = (int) parsed;
+        // ip 以下で最大の開始アドレスを持つ範囲を探す
+        int low = 0;
+        int high = rangeStarts.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Integer.compareUnsigned(rangeStarts[mid], ip) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found == -1 || Integer.compareUnsigned(ip, rangeEnds[found]) > 0) {
+            return null;
+        }
+        return locations[locationIndexes[found]];
+    }
+
+    public int size() {
+        return rangeStarts.length;
+    }
+
+    // "a.b.c.d" を文字列を分割せずに符号なし32bit値へ変換する。不正な場合は -1
+    static long parseIpv4(String ipAddress) {
+        long result = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+        for (int i = 0; i < ipAddress.length(); i++) {
+            char c = ipAddress.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && digits > 0 && dots < 3) {
+                result = (result << 8) | octet;
+                octet = 0;
+                digits = 0;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || digits == 0) {
+            return -1;
+        }
+        return (result << 8) | octet;
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+}
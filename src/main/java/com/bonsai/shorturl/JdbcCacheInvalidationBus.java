@@ -0,0 +1,198 @@
+package com.bonsai.shorturl;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 共有DBの cache_invalidation テーブルを使う実装（shorturl.cluster.enabled=true）。
+// publish は1行 INSERT するだけで、各ノードは poll-interval ごとに前回より後ろの id を読んで自分の購読者に渡す。
+// catchUp が呼ばれたら（前回の読み込みから catch-up-interval 以上経っていれば）その場でも読む。
+// 古い行は1つのノードがまとめて削除する
+public class JdbcCacheInvalidationBus extends CacheInvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcCacheInvalidationBus.class);
+    private static final int POLL_BATCH_SIZE = 1000;
+
+    private static final String INSERT =
+            "insert into cache_invalidation (topic, cache_key, origin, created_at) values (?, ?, ?, ?)";
+    private static final String SELECT_AFTER =
+            "select id, topic, cache_key, origin from cache_invalidation where id > ? order by id";
+    private static final String SELECT_KEYS_SINCE =
+            "select distinct cache_key from cache_invalidation where topic = ? and created_at >= ?";
+    private static final String DELETE_BEFORE =
+            "delete from cache_invalidation where created_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    // poll 用。1回に読む行数を制限する
+    private final JdbcTemplate pollJdbcTemplate;
+    private final JobLockService jobLockService;
+    private final String nodeName;
+    private final long gapTimeoutNanos;
+    private final Duration retention;
+    private final Duration pruneInterval;
+    private final long catchUpIntervalNanos;
+    // 最後に poll を始めた時刻（System.nanoTime）
+    private volatile long lastPollStarted;
+    // poll はDBを読む間ロックを持つので、仮想スレッドがキャリアスレッドを占有しない Lock にする
+    private final ReentrantLock pollLock = new ReentrantLock();
+
+    // 以下は poll の中（pollLock を持っている間）だけで触る。
+    // lastId まではすべて処理済み。それより後ろで処理済みの id は received に持つ
+    private long lastId;
+    private final TreeSet<Long> received = new TreeSet<>();
+    private long gapSince;
+    private boolean gapOpen;
+
+    public JdbcCacheInvalidationBus(JdbcTemplate jdbcTemplate, JobLockService jobLockService, String nodeName,
+                                    Duration gapTimeout, Duration retention, Duration pruneInterval, Duration catchUpInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.pollJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.pollJdbcTemplate.setMaxRows(POLL_BATCH_SIZE);
+        this.jobLockService = jobLockService;
+        this.nodeName = nodeName;
+        this.gapTimeoutNanos = gapTimeout.toNanos();
+        this.retention = retention;
+        this.pruneInterval = pruneInterval;
+        this.catchUpIntervalNanos = catchUpInterval.toNanos();
+        this.lastPollStarted = System.nanoTime() - catchUpIntervalNanos;
+    }
+
+    // 起動前の通知は読まない（キャッシュは空から始まり、ShortCodeFilter などは起動時にDBから作る。
+    // ファイルから戻すリダイレクトキャッシュは keysPublishedSince で起動前の変更を反映する）
+    @PostConstruct
+    public void start() {
+        Long max = jdbcTemplate.queryForObject("select max(id) from cache_invalidation", Long.class);
+        lastId = max != null ? max : 0L;
+    }
+
+    @Override
+    public void publish(Topic topic, String key) {
+        try {
+            jdbcTemplate.update(INSERT, topic.name(), key, nodeName, Timestamp.valueOf(LocalDateTime.now()));
+        } catch (RuntimeException e) {
+            // 他のノードではキャッシュの TTL が切れるまで古い内容が返る（ShortCodeFilter は次の定期的な作り直しまで）
+            log.warn("Failed to publish {} invalidation for {}", topic, key, e);
+        }
+    }
+
+    @Override
+    public void publishAll(Topic topic, Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            rows.add(new Object[]{topic.name(), key, nodeName, now});
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT, rows);
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish {} {} invalidations", keys.size(), topic, e);
+        }
+    }
+
+    // prune が消すのは retention より古い行だけなので、それより新しい since なら全部残っている
+    @Override
+    public List<String> keysPublishedSince(Topic topic, LocalDateTime since) {
+        if (since.isBefore(LocalDateTime.now().minus(retention))) {
+            return null;
+        }
+        return jdbcTemplate.queryForList(SELECT_KEYS_SINCE, String.class, topic.name(), Timestamp.valueOf(since));
+    }
+
+    @Scheduled(fixedDelayString = "${shorturl.cluster.invalidation.poll-interval:500}")
+    public void poll() {
+        pollLock.lock();
+        try {
+            lastPollStarted = System.nanoTime();
+            pollJdbcTemplate.query(SELECT_AFTER, rs -> {
+                long id = rs.getLong(1);
+                if (received.add(id) && !nodeName.equals(rs.getString(4))) {
+                    Topic topic = topicOf(rs.getString(2));
+                    if (topic != null) {
+                        deliver(topic, rs.getString(3));
+                    }
+                }
+            }, lastId);
+            advance();
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    // ShortCodeFilter で「ない」と出たコードの確認用（作成されたばかりのコードの通知がまだ届いていないことがある）。
+    // スキャナーなどで「ない」コードが続いても、DBに読みに行くのは catch-up-interval に1回まで。
+    // 待っている間に他のスレッドが読み始めていたら、その結果を使う
+    @Override
+    public boolean catchUp() {
+        long requestedAt = System.nanoTime();
+        if (requestedAt - lastPollStarted < catchUpIntervalNanos) {
+            return false;
+        }
+        pollLock.lock();
+        try {
+            if (lastPollStarted - requestedAt < 0) {
+                poll();
+            }
+        } finally {
+            pollLock.unlock();
+        }
+        return true;
+    }
+
+    // ローリングアップデート中に新しいバージョンのノードが出した、知らない種類の通知は読み飛ばす
+    private static Topic topicOf(String name) {
+        try {
+            return Topic.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // 連番の id は採番順にコミットされるとは限らないので、抜けている id があればしばらくそこから読み直す。
+    // gap-timeout 経っても現れない id はロールバックなどで欠番になったものとして読み飛ばす
+    private void advance() {
+        while (!received.isEmpty()) {
+            long first = received.first();
+            if (first == lastId + 1) {
+                received.pollFirst();
+                lastId = first;
+                gapOpen = false;
+                continue;
+            }
+            long now = System.nanoTime();
+            if (!gapOpen) {
+                gapOpen = true;
+                gapSince = now;
+            }
+            if (now - gapSince < gapTimeoutNanos) {
+                return;
+            }
+            // 欠番ではなく、読めなかった通知かもしれない
+            log.info("Skipping missing cache invalidations {} to {}", lastId + 1, first - 1);
+            lastId = first - 1;
+            gapOpen = false;
+            deliverMissed();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${shorturl.cluster.invalidation.prune-interval:600000}")
+    public void prune() {
+        jobLockService.runExclusively("cache-invalidation-prune", pruneInterval.multipliedBy(9).dividedBy(10), () -> {
+            int deleted = jdbcTemplate.update(DELETE_BEFORE, Timestamp.valueOf(LocalDateTime.now().minus(retention)));
+            log.debug("Pruned {} cache invalidations", deleted);
+        });
+    }
+}
@@ -0,0 +1,36 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.time.LocalDateTime;
+
+// 定期ジョブをクラスタ内の1ノードだけで実行するためのロック（JobLockService が使う）
+@Entity
+public class JobLock {
+
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private LocalDateTime lockedUntil;
+
+    @Column(nullable = false, length = 128)
+    private String lockedBy;
+
+    public JobLock() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LocalDateTime getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public String getLockedBy() {
+        return lockedBy;
+    }
+}
@@ -0,0 +1,83 @@
+package com.bonsai.shorturl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// 定期ジョブをクラスタ内の1ノードだけで実行する。job_lock の行を locked_until まで借りたノードが実行し、
+// 他のノードはその回を読み飛ばす。借りたまま落ちたノードのロックも lockAtMostFor 経てば他のノードが取れる。
+// ジョブが lockAtLeastFor より早く終わってもそこまではロックを持ったままにして、
+// 少しずつずれて起動する他のノードが同じ周期にもう一度実行しないようにする（各ノードの時計は NTP で合わせておくこと）。
+// クラスタを組まないとき（enabled=false）はロックを取らずにそのまま実行する
+public class JobLockService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobLockService.class);
+
+    private static final String ACQUIRE =
+            "update job_lock set locked_until = ?, locked_by = ? where name = ? and locked_until <= ?";
+    private static final String INSERT =
+            "insert into job_lock (name, locked_until, locked_by) values (?, ?, ?)";
+    private static final String RELEASE =
+            "update job_lock set locked_until = ? where name = ? and locked_by = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final String nodeName;
+    private final Duration lockAtMostFor;
+
+    public JobLockService(JdbcTemplate jdbcTemplate, boolean enabled, String nodeName, Duration lockAtMostFor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.nodeName = nodeName;
+        this.lockAtMostFor = lockAtMostFor;
+    }
+
+    // ロックが取れたら job を実行して true を返す。他のノードが実行中（または lockAtLeastFor 以内に実行済み）なら false
+    public boolean runExclusively(String name, Duration lockAtLeastFor, Runnable job) {
+        if (!enabled) {
+            job.run();
+            return true;
+        }
+        LocalDateTime start = LocalDateTime.now();
+        if (!tryAcquire(name, start)) {
+            log.debug("Skipping {}: locked by another node", name);
+            return false;
+        }
+        try {
+            job.run();
+        } finally {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime minimum = start.plus(lockAtLeastFor);
+            try {
+                jdbcTemplate.update(RELEASE, Timestamp.valueOf(now.isAfter(minimum) ? now : minimum), name, nodeName);
+            } catch (RuntimeException e) {
+                // 解放できなくても lockAtMostFor 後には他のノードが取れる
+                log.warn("Failed to release job lock {}", name, e);
+            }
+        }
+        return true;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    private boolean tryAcquire(String name, LocalDateTime now) {
+        Timestamp lockedUntil = Timestamp.valueOf(now.plus(lockAtMostFor));
+        if (jdbcTemplate.update(ACQUIRE, lockedUntil, nodeName, name, Timestamp.valueOf(now)) > 0) {
+            return true;
+        }
+        try {
+            jdbcTemplate.update(INSERT, name, lockedUntil, nodeName);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // 他のノードが持っている
+            return false;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package com.bonsai.shorturl;
+
+public record LinkCheckTarget(Long id, String originalUrl, Integer consecutiveOkChecks) {
+}
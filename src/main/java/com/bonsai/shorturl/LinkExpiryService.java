@@ -0,0 +1,153 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+// 有効期限が来たリンクを、その時刻に status=EXPIRED にしてリダイレクトキャッシュから外す。
+// horizon 以内に期限が来るリンクだけを DelayQueue に載せておき（expiration_timestamp のインデックスで読む）、
+// 専用のスレッドが期限の来たものからまとめて更新する。EXPIRED のリンクはリンクチェックの対象から外れる。
+// 期限の判定そのものはリダイレクト時にも行っているので、ここが遅れても期限切れのリンクにリダイレクトすることはない
+@Service
+public class LinkExpiryService {
+
+    private static final Logger log = LoggerFactory.getLogger(LinkExpiryService.class);
+    private static final int BATCH_SIZE = 500;
+
+    private static final String SELECT_UPCOMING =
+            "select id, short_code, expiration_timestamp from url_mapping "
+                    + "where expiration_timestamp <= ? and status <> 'EXPIRED' order by expiration_timestamp";
+    // 期限が延ばされていたら更新しない
+    private static final String MARK_EXPIRED =
+            "update url_mapping set status = 'EXPIRED', next_check_at = null where id = ? and expiration_timestamp <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RedirectCache redirectCache;
+    private final Duration horizon;
+    private final DelayQueue<Expiry> queue = new DelayQueue<>();
+    // キューに載っているリンクの id（同じリンクを二重に載せない）
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+    private final Counter expiredCounter;
+
+    private volatile boolean running;
+    private Thread sweeperThread;
+
+    public LinkExpiryService(JdbcTemplate jdbcTemplate, RedirectCache redirectCache,
+                             @Value("${shorturl.expiry.horizon:1h}") Duration horizon,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.redirectCache = redirectCache;
+        this.horizon = horizon;
+        this.expiredCounter = meterRegistry.counter("shorturl.links.expired");
+        Gauge.builder("shorturl.links.expiry.scheduled", queue, DelayQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        loadUpcoming();
+        running = true;
+        sweeperThread = new Thread(this::runSweeper, "link-expiry");
+        sweeperThread.setDaemon(true);
+        sweeperThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        sweeperThread.interrupt();
+    }
+
+    // 次の horizon までに期限が来るリンクをキューに載せる。停止中に期限が過ぎたリンクもここで拾う
+    @Scheduled(fixedDelayString = "${shorturl.expiry.refresh-interval:600000}",
+            initialDelayString = "${shorturl.expiry.refresh-interval:600000}")
+    public void loadUpcoming() {
+        LocalDateTime until = LocalDateTime.now().plus(horizon);
+        jdbcTemplate.query(SELECT_UPCOMING, rs -> {
+            schedule(rs.getLong(1), rs.getString(2), rs.getTimestamp(3).toLocalDateTime());
+        }, Timestamp.valueOf(until));
+    }
+
+    // リンクの作成時に呼ぶ。horizon より先の期限は次の loadUpcoming で載せる
+    public void schedule(Long id, String shortCode, LocalDateTime expiresAt) {
+        if (expiresAt == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (expiresAt.isAfter(now.plus(horizon)) || !scheduled.add(id)) {
+            return;
+        }
+        long delayNanos = Math.max(0, Duration.between(now, expiresAt).toNanos());
+        queue.add(new Expiry(id, shortCode, System.nanoTime() + delayNanos));
+    }
+
+    private void runSweeper() {
+        List<Expiry> batch = new ArrayList<>(BATCH_SIZE);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                expire(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // 取りこぼしたリンクは次の loadUpcoming で載せ直す
+                log.error("Failed to mark {} links as expired", batch.size(), e);
+            } finally {
+                batch.forEach(expiry -> scheduled.remove(expiry.id()));
+                batch.clear();
+            }
+        }
+    }
+
+    private void expire(List<Expiry> batch) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> updates = new ArrayList<>(batch.size());
+        for (Expiry expiry : batch) {
+            updates.add(new Object[]{expiry.id(), now});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(MARK_EXPIRED, updates);
+        int expired = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            // クラスタでは各ノードが同じリンクを載せているので、実際に更新できたノードだけがキャッシュの削除を通知する
+            if (i >= counts.length || counts[i] != 0) {
+                redirectCache.invalidate(batch.get(i).shortCode());
+                expired++;
+            }
+        }
+        expiredCounter.increment(expired);
+        log.debug("Marked {} links as expired", expired);
+    }
+
+    private record Expiry(Long id, String shortCode, long dueNanos) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((Expiry) other).dueNanos);
+        }
+    }
+}
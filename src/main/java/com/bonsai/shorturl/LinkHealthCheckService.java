@@ -1,52 +1,143 @@
 package com.bonsai.shorturl;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class LinkHealthCheckService {
 
+    private static final Logger log = LoggerFactory.getLogger(LinkHealthCheckService.class);
+
+    // チェック中に期限切れになったリンクは EXPIRED のままにする
+    private static final String UPDATE_STATUS =
+            "update url_mapping set status = ?, last_checked_at = ?, next_check_at = ?, consecutive_ok_checks = ? "
+                    + "where id = ? and status <> 'EXPIRED'";
+
     private final UrlMappingRepository urlMappingRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final LinkHealthChecker linkHealthChecker;
+    private final int pageSize;
+    private final Duration baseInterval;
+    private final Duration maxInterval;
+    private final JobLockService jobLockService;
+    private final Duration minimumLockTime;
+    private final Timer checkRunTimer;
+    private final AtomicLong brokenLinks = new AtomicLong();
 
-    public LinkHealthCheckService(UrlMappingRepository urlMappingRepository) {
+    public LinkHealthCheckService(UrlMappingRepository urlMappingRepository,
+                                  JdbcTemplate jdbcTemplate,
+                                  @Value("${shorturl.health-check.page-size:500}") int pageSize,
+                                  @Value("${shorturl.health-check.timeout:5s}") Duration timeout,
+                                  @Value("${shorturl.health-check.max-concurrency:64}") int maxConcurrency,
+                                  @Value("${shorturl.health-check.max-concurrency-per-host:4}") int maxConcurrencyPerHost,
+                                  @Value("${shorturl.health-check.base-interval:1h}") Duration baseInterval,
+                                  @Value("${shorturl.health-check.max-interval:7d}") Duration maxInterval,
+                                  @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                  @Value("${shorturl.health-check.poll-interval:900000}") long pollInterval,
+                                  JobLockService jobLockService,
+                                  MeterRegistry meterRegistry) {
         this.urlMappingRepository = urlMappingRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.linkHealthChecker = new LinkHealthChecker(timeout, maxConcurrency, maxConcurrencyPerHost,
+                virtualThreads ? virtualThreadExecutor() : null);
+        this.pageSize = pageSize;
+        this.baseInterval = baseInterval;
+        this.maxInterval = maxInterval;
+        this.jobLockService = jobLockService;
+        // 他のノードが同じ周期に続けて実行しないよう、次の周期の少し前までロックを持つ
+        this.minimumLockTime = Duration.ofMillis(pollInterval * 9 / 10);
+        this.checkRunTimer = meterRegistry.timer("shorturl.healthcheck.duration");
+        Gauge.builder("shorturl.links.broken", brokenLinks, AtomicLong::get).register(meterRegistry);
     }
 
-    // 1時間ごとの自動チェック
-    @Scheduled(fixedRate = 3600000)
+    // チェック時期が来たリンクだけを定期的にチェックする
+    @Scheduled(fixedDelayString = "${shorturl.health-check.poll-interval:900000}")
     public void checkAllLinks() {
-        System.out.println("定期リンクチェックを開始します...");
-        List<UrlMapping> allMappings = urlMappingRepository.findAll();
+        // クラスタでは1つのノードだけがチェックする。リンク切れの数はどのノードのメトリクスでも見られるよう各ノードで数える
+        jobLockService.runExclusively("link-health-check", minimumLockTime, () -> checkRunTimer.record(this::checkDueLinks));
+        refreshBrokenLinkCount();
+    }
+
+    private void checkDueLinks() {
+        log.info("定期リンクチェックを開始します...");
+        LocalDateTime now = LocalDateTime.now();
+        long afterId = 0L;
+        int checked = 0;
+        int broken = 0;
+
+        while (true) {
+            List<LinkCheckTarget> targets = urlMappingRepository.findDueForCheck(now, afterId, PageRequest.of(0, pageSize));
+            if (targets.isEmpty()) {
+                break;
+            }
+            // 同じURLを指すリンクが複数あっても1回だけチェックする
+            Map<String, LinkStatus> results = linkHealthChecker.checkAll(targets.stream().map(LinkCheckTarget::originalUrl).toList());
+
+            LocalDateTime checkedAt = LocalDateTime.now();
+            List<Object[]> updates = new ArrayList<>(targets.size());
+            for (LinkCheckTarget target : targets) {
+                LinkStatus status = results.getOrDefault(target.originalUrl(), LinkStatus.BROKEN);
+                int consecutiveOk = status == LinkStatus.OK ? target.consecutiveOkChecks() + 1 : 0;
+                updates.add(new Object[]{status.name(), Timestamp.valueOf(checkedAt),
+                        Timestamp.valueOf(checkedAt.plus(nextInterval(consecutiveOk))), consecutiveOk, target.id()});
+                if (status == LinkStatus.BROKEN) {
+                    broken++;
+                }
+            }
+            jdbcTemplate.batchUpdate(UPDATE_STATUS, updates);
 
-        for (UrlMapping mapping : allMappings) {
-            checkSingleLink(mapping);
+            checked += targets.size();
+            afterId = targets.get(targets.size() - 1).id();
         }
-        System.out.println("定期リンクチェックが完了しました。");
+        log.info("定期リンクチェックが完了しました。({}件チェック, リンク切れ{}件)", checked, broken);
     }
 
-    // 1つのリンクだけをチェックするロジック
+    // 1つのリンクだけをチェックするロジック。定期チェックと同じ UPDATE_STATUS で書き込むので、
+    // チェックの間に期限切れになったリンクは EXPIRED のまま残る
     public void checkSingleLink(UrlMapping mapping) {
-        try {
-            URL url = new URL(mapping.getOriginalUrl());
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("HEAD");
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-
-            int responseCode = connection.getResponseCode();
-
-            if (responseCode >= 200 && responseCode < 400) {
-                mapping.setStatus(LinkStatus.OK);
-            } else {
-                mapping.setStatus(LinkStatus.BROKEN);
-            }
-        } catch (Exception e) {
-            mapping.setStatus(LinkStatus.BROKEN);
+        if (mapping.getStatus() == LinkStatus.EXPIRED) {
+            return;
         }
-        urlMappingRepository.save(mapping);
+        LinkStatus status = linkHealthChecker.check(mapping.getOriginalUrl());
+        int consecutiveOk = status == LinkStatus.OK ? mapping.getConsecutiveOkChecks() + 1 : 0;
+        LocalDateTime checkedAt = LocalDateTime.now();
+        jdbcTemplate.update(UPDATE_STATUS, status.name(), Timestamp.valueOf(checkedAt),
+                Timestamp.valueOf(checkedAt.plus(nextInterval(consecutiveOk))), consecutiveOk, mapping.getId());
+        refreshBrokenLinkCount();
+    }
+
+    // 今回チェックしなかったリンクも含めた、現在リンク切れになっているリンクの数
+    private void refreshBrokenLinkCount() {
+        brokenLinks.set(urlMappingRepository.countByStatus(LinkStatus.BROKEN));
+    }
+
+    // HttpClient のレスポンス処理も仮想スレッドで動かす（null なら HttpClient 既定のスレッドプール）
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("link-check-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+
+    // 正常が続くほど次のチェックまでの間隔を倍にしていく（最大 maxInterval）。リンク切れは baseInterval 後に再チェック
+    private Duration nextInterval(int consecutiveOk) {
+        Duration interval = baseInterval.multipliedBy(1L << Math.min(Math.max(consecutiveOk - 1, 0), 16));
+        return interval.compareTo(maxInterval) > 0 ? maxInterval : interval;
     }
-}
\ No newline at end of file
+}
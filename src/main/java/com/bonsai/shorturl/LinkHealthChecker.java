@@ -0,0 +1,106 @@
+package com.bonsai.shorturl;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+// 複数のURLを非同期の HttpClient でまとめてチェックする
+// 全体の同時接続数と、同じホストへの同時接続数をそれぞれ制限する
+public class LinkHealthChecker {
+
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final int maxConcurrent;
+    private final int maxConcurrentPerHost;
+
+    public LinkHealthChecker(Duration timeout, int maxConcurrent, int maxConcurrentPerHost, Executor executor) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.httpClient = builder.build();
+        this.timeout = timeout;
+        this.maxConcurrent = maxConcurrent;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+    }
+
+    // 同じURLは1回だけチェックする。戻り値は URL → 結果
+    public Map<String, LinkStatus> checkAll(Collection<String> urls) {
+        AsyncLimiter global = new AsyncLimiter(maxConcurrent);
+        Map<String, AsyncLimiter> perHost = new HashMap<>();
+        Map<String, LinkStatus> results = new ConcurrentHashMap<>();
+        Set<String> distinctUrls = new LinkedHashSet<>(urls);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[distinctUrls.size()];
+
+        int i = 0;
+        for (String url : distinctUrls) {
+            URI uri = parse(url);
+            if (uri == null) {
+                results.put(url, LinkStatus.BROKEN);
+                futures[i++] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            AsyncLimiter hostLimiter = perHost.computeIfAbsent(uri.getHost().toLowerCase(), host -> new AsyncLimiter(maxConcurrentPerHost));
+            // ホストの枠 → 全体の枠の順に確保する（逆順にはしないのでデッドロックしない）
+            futures[i++] = hostLimiter.submit(() -> global.submit(() -> check(uri)))
+                    .handle((status, error) -> results.put(url, error == null ? status : LinkStatus.BROKEN));
+        }
+        CompletableFuture.allOf(futures).join();
+        return results;
+    }
+
+    public LinkStatus check(String url) {
+        URI uri = parse(url);
+        if (uri == null) {
+            return LinkStatus.BROKEN;
+        }
+        try {
+            return check(uri).join();
+        } catch (RuntimeException e) {
+            return LinkStatus.BROKEN;
+        }
+    }
+
+    private CompletableFuture<LinkStatus> check(URI uri) {
+        return send(uri, "HEAD").thenCompose(code -> {
+            // HEAD に対応していないサーバーもあるので GET で確認し直す
+            if (code == 405 || code == 501) {
+                return send(uri, "GET");
+            }
+            return CompletableFuture.completedFuture(code);
+        }).handle((code, error) -> error == null && code >= 200 && code < 400 ? LinkStatus.OK : LinkStatus.BROKEN);
+    }
+
+    private CompletableFuture<Integer> send(URI uri, String method) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .timeout(timeout)
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(HttpResponse::statusCode);
+    }
+
+    private static URI parse(String url) {
+        try {
+            URI uri = URI.create(url.trim());
+            String scheme = uri.getScheme();
+            if (uri.getHost() == null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+                return null;
+            }
+            return uri;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.bonsai.shorturl;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.List;
+
+// ログインユーザーのリンク検索API
+//   GET /api/links/search?q=example+docs&limit=20
+// 短縮コードの前方一致、または元のURLのホスト・パスの語の前方一致・部分一致。空白で区切った語はすべてを含むものを新しい順に返す
+@Controller
+public class LinkSearchController {
+
+    private static final int MAX_LIMIT = 500;
+
+    private final LinkSearchIndex linkSearchIndex;
+    private final DashboardQueryService dashboardQueryService;
+
+    public LinkSearchController(LinkSearchIndex linkSearchIndex, DashboardQueryService dashboardQueryService) {
+        this.linkSearchIndex = linkSearchIndex;
+        this.dashboardQueryService = dashboardQueryService;
+    }
+
+    @GetMapping("/api/links/search")
+    @ResponseBody
+    public ResponseEntity<List<DashboardLink>> search(@RequestParam("q") String query,
+                                                      @RequestParam(value = "limit", defaultValue = "20") int limit,
+                                                      @AuthenticationPrincipal User user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        List<Long> ids = linkSearchIndex.search(user.getId(), query, Math.max(1, Math.min(limit, MAX_LIMIT)));
+        return ResponseEntity.ok(dashboardQueryService.findLinksByIds(user.getId(), ids));
+    }
+}
@@ -0,0 +1,5 @@
+package com.bonsai.shorturl;
+
+// 検索インデックスに載せるリンクの列
+public record LinkSearchEntry(Long id, String shortCode, String originalUrl) {
+}
@@ -0,0 +1,363 @@
+package com.bonsai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// ユーザーごとのリンク検索用インデックス（メモリ上）。
+//   短縮コード: 小文字にしたコード → id のソート済みマップ。前方一致は範囲の切り出しで求める（トライ木の代わり）
+//   元のURL: ホストとパスを英数字の並びで区切ったトークン → id の転置インデックス。トークンの前方一致と、
+//            トークンに含まれる3文字 → トークンの索引を使った部分一致で引く
+// 最初に検索したときにそのユーザーのリンクをDBから読み込み、以降は作成・更新のたびに差分を反映する。
+// 保持するユーザー数は max-users までで、使われていないユーザーから捨てる。
+// 読み込みと差分の反映・破棄はユーザーごとのロック（ユーザー id で選ぶ）を取って行うので、読み込み中の作成・更新は読み込み後に反映される
+@Component
+public class LinkSearchIndex {
+
+    // 部分一致は3文字の索引で引くので、これより短い語は前方一致だけにする
+    private static final int MIN_SUBSTRING_LENGTH = 3;
+    private static final int USER_LOCK_COUNT = 64;
+
+    private final UrlMappingRepository urlMappingRepository;
+    private final LruCache<Long, UserIndex> indexes;
+    private final CacheInvalidationBus invalidationBus;
+    // DBアクセス中に仮想スレッドがキャリアスレッドを占有しないよう、synchronized ではなく Lock を使う
+    private final ReentrantLock[] userLocks = new ReentrantLock[USER_LOCK_COUNT];
+
+    public LinkSearchIndex(UrlMappingRepository urlMappingRepository,
+                           @Value("${shorturl.search.max-users:1000}") int maxUsers,
+                           CacheInvalidationBus invalidationBus) {
+        this.urlMappingRepository = urlMappingRepository;
+        this.indexes = new LruCache<>(maxUsers, Duration.ZERO);
+        this.invalidationBus = invalidationBus;
+        for (int i = 0; i < USER_LOCK_COUNT; i++) {
+            userLocks[i] = new ReentrantLock();
+        }
+        // 他のノードで作成・更新されたリンクは差分が分からないので、そのユーザーのインデックスを捨てて次の検索時に読み直す
+        invalidationBus.subscribe(CacheInvalidationBus.Topic.LINK_SEARCH, userId -> discard(Long.valueOf(userId)));
+    }
+
+    // 空白で区切った語をすべて含むリンクの id を新しい順に最大 limit 件返す
+    public List<Long> search(Long userId, String query, int limit) {
+        List<String> terms = new ArrayList<>();
+        for (String term : query.toLowerCase(Locale.ROOT).trim().split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        return indexFor(userId).search(terms, limit);
+    }
+
+    // 作成・更新時に呼ぶ。まだ読み込んでいないユーザーは次の検索時にDBから読むので何もしない
+    public void put(Long userId, Long urlMappingId, String shortCode, String originalUrl) {
+        if (userId == null) {
+            return;
+        }
+        update(userId, index -> index.put(urlMappingId, shortCode, originalUrl));
+        invalidationBus.publish(CacheInvalidationBus.Topic.LINK_SEARCH, userId.toString());
+    }
+
+    // 一括登録用。他のノードへの通知は1回にまとめる
+    public void putAll(Long userId, List<LinkSearchEntry> entries) {
+        if (userId == null || entries.isEmpty()) {
+            return;
+        }
+        update(userId, index -> {
+            for (LinkSearchEntry entry : entries) {
+                index.put(entry.id(), entry.shortCode(), entry.originalUrl());
+            }
+        });
+        invalidationBus.publish(CacheInvalidationBus.Topic.LINK_SEARCH, userId.toString());
+    }
+
+    public void invalidate(Long userId) {
+        discard(userId);
+        invalidationBus.publish(CacheInvalidationBus.Topic.LINK_SEARCH, userId.toString());
+    }
+
+    private UserIndex indexFor(Long userId) {
+        UserIndex index = indexes.get(userId);
+        if (index != null) {
+            return index;
+        }
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            // 待っている間に他のスレッドが読み込んでいた
+            index = indexes.get(userId);
+            if (index != null) {
+                return index;
+            }
+            index = new UserIndex();
+            for (LinkSearchEntry entry : urlMappingRepository.findSearchEntriesByUserId(userId)) {
+                index.put(entry.id(), entry.shortCode(), entry.originalUrl());
+            }
+            indexes.put(userId, index);
+            return index;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 読み込み中なら、読み込み終わったインデックスに反映する
+    private void update(Long userId, Consumer<UserIndex> change) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            UserIndex index = indexes.get(userId);
+            if (index != null) {
+                change.accept(index);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discard(Long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            indexes.invalidate(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(Long userId) {
+        return userLocks[Long.hashCode(userId) & (USER_LOCK_COUNT - 1)];
+    }
+
+    // URL のホストとパスを英数字（と非ASCII文字）の並びごとに区切る。クエリ文字列とフラグメントは対象外
+    static Set<String> tokenize(String originalUrl) {
+        if (originalUrl == null) {
+            return new LinkedHashSet<>();
+        }
+        String target = originalUrl;
+        try {
+            URI uri = new URI(originalUrl.trim());
+            if (uri.getHost() != null) {
+                target = uri.getHost() + (uri.getRawPath() != null ? uri.getRawPath() : "");
+            }
+        } catch (URISyntaxException e) {
+            // URI として読めない場合は文字列全体を区切る
+        }
+        return words(target.toLowerCase(Locale.ROOT));
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && isWordChar(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c > 0x7F;
+    }
+
+    private static final class UserIndex {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // キーは「小文字にしたコード + \0 + id」（大文字小文字だけが違うコードも別のキーにする）
+        private final NavigableMap<String, Long> codes = new TreeMap<>();
+        private final NavigableMap<String, Set<Long>> tokens = new TreeMap<>();
+        // 部分一致用。トークンに含まれる3文字 → そのトークン
+        private final Map<String, Set<String>> trigrams = new HashMap<>();
+        // 更新時に古いコードとトークンを取り除くため、登録済みの内容を覚えておく
+        private final Map<Long, Indexed> entries = new HashMap<>();
+
+        void put(Long id, String shortCode, String originalUrl) {
+            String code = shortCode.toLowerCase(Locale.ROOT) + '\0' + id;
+            Set<String> urlTokens = tokenize(originalUrl);
+            lock.writeLock().lock();
+            try {
+                Indexed previous = entries.put(id, new Indexed(code, urlTokens));
+                if (previous != null) {
+                    codes.remove(previous.code());
+                    previous.tokens().forEach(token -> removeToken(token, id));
+                }
+                codes.put(code, id);
+                urlTokens.forEach(token -> addToken(token, id));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<Long> search(List<String> terms, int limit) {
+            lock.readLock().lock();
+            try {
+                List<Postings> matches = new ArrayList<>(terms.size());
+                for (String term : terms) {
+                    Postings postings = match(term);
+                    if (postings.size() == 0) {
+                        return List.of();
+                    }
+                    matches.add(postings);
+                }
+                // 当たりの少ない語の候補を、残りの語にも当たるかどうかで絞り込み、新しい順（id の降順）の上位 limit 件だけを残す
+                matches.sort(Comparator.comparingLong(Postings::size));
+                PriorityQueue<Long> top = new PriorityQueue<>(limit + 1);
+                Set<Long> seen = new HashSet<>();
+                for (Set<Long> ids : matches.get(0).sets()) {
+                    candidates:
+                    for (Long id : ids) {
+                        if (!seen.add(id)) {
+                            continue;
+                        }
+                        for (int i = 1; i < matches.size(); i++) {
+                            if (!matches.get(i).contains(id)) {
+                                continue candidates;
+                            }
+                        }
+                        top.add(id);
+                        if (top.size() > limit) {
+                            top.poll();
+                        }
+                    }
+                }
+                List<Long> ids = new ArrayList<>(top);
+                ids.sort(Collections.reverseOrder());
+                return ids;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // 短縮コードの前方一致、または語に含まれる英数字の並びがすべてURLのトークンに当たるもの
+        private Postings match(String term) {
+            List<Set<Long>> sets = new ArrayList<>();
+            Collection<Long> codeMatches = prefix(codes, term).values();
+            if (!codeMatches.isEmpty()) {
+                sets.add(new HashSet<>(codeMatches));
+            }
+            List<String> termWords = new ArrayList<>(words(term));
+            if (termWords.size() == 1) {
+                sets.addAll(matchToken(termWords.get(0)).sets());
+            } else if (termWords.size() > 1) {
+                // "page-123" のように区切り文字を含む語は、区切った語をすべて含むものに絞り込む
+                List<Postings> wordMatches = new ArrayList<>(termWords.size());
+                termWords.forEach(word -> wordMatches.add(matchToken(word)));
+                wordMatches.sort(Comparator.comparingLong(Postings::size));
+                Set<Long> both = new HashSet<>();
+                for (Set<Long> ids : wordMatches.get(0).sets()) {
+                    for (Long id : ids) {
+                        if (wordMatches.stream().skip(1).allMatch(other -> other.contains(id))) {
+                            both.add(id);
+                        }
+                    }
+                }
+                sets.add(both);
+            }
+            return new Postings(sets);
+        }
+
+        private Postings matchToken(String word) {
+            List<Set<Long>> sets = new ArrayList<>(prefix(tokens, word).values());
+            if (word.length() >= MIN_SUBSTRING_LENGTH) {
+                // 語の中の3文字ずつのうち、当たるトークンが最も少ないものを候補にして確かめる
+                Set<String> candidates = null;
+                for (int i = 0; i + 3 <= word.length(); i++) {
+                    Set<String> containing = trigrams.getOrDefault(word.substring(i, i + 3), Set.of());
+                    if (candidates == null || containing.size() < candidates.size()) {
+                        candidates = containing;
+                    }
+                }
+                for (String token : candidates) {
+                    // 前方一致のものは上で拾っている
+                    if (token.indexOf(word, 1) > 0) {
+                        sets.add(tokens.get(token));
+                    }
+                }
+            }
+            return new Postings(sets);
+        }
+
+        private void addToken(String token, Long id) {
+            Set<Long> ids = tokens.computeIfAbsent(token, key -> new HashSet<>(1));
+            if (ids.isEmpty()) {
+                for (int i = 0; i + 3 <= token.length(); i++) {
+                    trigrams.computeIfAbsent(token.substring(i, i + 3), key -> new HashSet<>(2)).add(token);
+                }
+            }
+            ids.add(id);
+        }
+
+        private void removeToken(String token, Long id) {
+            if (remove(tokens, token, id)) {
+                for (int i = 0; i + 3 <= token.length(); i++) {
+                    remove(trigrams, token.substring(i, i + 3), token);
+                }
+            }
+        }
+
+        // term で始まるキーの範囲
+        private static <V> NavigableMap<String, V> prefix(NavigableMap<String, V> map, String term) {
+            return map.subMap(term, true, term + Character.MAX_VALUE, false);
+        }
+
+        // 空になったキーは取り除き、そのとき true を返す
+        private static <T> boolean remove(Map<String, Set<T>> map, String key, T value) {
+            Set<T> values = map.get(key);
+            if (values != null && values.remove(value) && values.isEmpty()) {
+                map.remove(key);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // 1つの語に当たる id の集合の和。重なりがあり得るので、まとめずにそのまま持つ
+    private record Postings(List<Set<Long>> sets) {
+
+        long size() {
+            long size = 0;
+            for (Set<Long> ids : sets) {
+                size += ids.size();
+            }
+            return size;
+        }
+
+        boolean contains(Long id) {
+            for (Set<Long> ids : sets) {
+                if (ids.contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private record Indexed(String code, Set<String> tokens) {
+    }
+}
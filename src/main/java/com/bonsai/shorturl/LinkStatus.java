@@ -3,5 +3,7 @@ package com.bonsai.shorturl;
 public enum LinkStatus {
     OK,
     BROKEN,
-    UNCHECKED
+    UNCHECKED,
+    // 有効期限切れ（LinkExpiryService が設定する）。リンクチェックの対象外
+    EXPIRED
 }
\ No newline at end of file
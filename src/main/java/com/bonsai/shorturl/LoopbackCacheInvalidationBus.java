@@ -0,0 +1,34 @@
+package com.bonsai.shorturl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 同じプロセス内でだけ通知を届ける実装。同じ Hub につながった他のインスタンスに同期的に届ける。
+// 単一ノード（shorturl.cluster.enabled=false）では Hub につながるのが自分だけなので、publish は何もしない。
+// テストでは1つの Hub に複数つないで、それぞれをノードに見立てる
+public class LoopbackCacheInvalidationBus extends CacheInvalidationBus {
+
+    private final Hub hub;
+
+    public LoopbackCacheInvalidationBus() {
+        this(new Hub());
+    }
+
+    public LoopbackCacheInvalidationBus(Hub hub) {
+        this.hub = hub;
+        hub.buses.add(this);
+    }
+
+    @Override
+    public void publish(Topic topic, String key) {
+        for (LoopbackCacheInvalidationBus bus : hub.buses) {
+            if (bus != this) {
+                bus.deliver(topic, key);
+            }
+        }
+    }
+
+    public static final class Hub {
+        private final List<LoopbackCacheInvalidationBus> buses = new CopyOnWriteArrayList<>();
+    }
+}
@@ -0,0 +1,271 @@
+package com.bonsai.shorturl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 件数上限付きのLRUキャッシュ。TTLを過ぎたエントリは取得時に捨てる。
+// get も順番を入れ替えるのでロックが要る。リダイレクトのたびに1つのロックを取り合わないよう、
+// キーのハッシュで最大16個のセグメントに分け、セグメントごとにロックとLRUの順番を持つ。
+// 追い出しはセグメントの中で最も古いものなので、キャッシュ全体で見ると近似的なLRUになる。
+// 元データを読んでいる間に invalidate されたら古い値を載せないよう、セグメントごとに invalidate の回数を数える
+// （読む前に invalidationCount を取っておき、putUnlessInvalidated に渡す）
+public class LruCache<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+    // これより小さいセグメントは作らない（LRU の近似が粗くなりすぎる）
+    private static final int MIN_SEGMENT_SIZE = 16;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LruCache(int maxSize, Duration ttl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = (ttl == null || ttl.isZero() || ttl.isNegative()) ? 0L : ttl.toNanos();
+        int segmentCount = Math.max(1, Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize / MIN_SEGMENT_SIZE)));
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        // 上限の合計が maxSize になるよう、余りは先頭のセグメントから1件ずつ配る
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0), evictions);
+        }
+    }
+
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            long now = System.nanoTime();
+            if (isStale(entry, now)) {
+                segment.entries.remove(key);
+                evictions.increment();
+                misses.increment();
+                return null;
+            }
+            entry.lastAccess = now;
+            hits.increment();
+            return entry.value;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        segment.lock.lock();
+        try {
+            segment.entries.put(key, new Entry<>(value, now, now));
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // invalidationCount を取ってから、同じセグメントで invalidate・clear されていなければ追加する。
+    // 別のキーの invalidate でも載せないことがあるが、次の get でまた読み込まれるだけ
+    public boolean putUnlessInvalidated(K key, V value, long invalidationCount) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        segment.lock.lock();
+        try {
+            if (segment.invalidations != invalidationCount) {
+                return false;
+            }
+            segment.entries.put(key, new Entry<>(value, now, now));
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public long invalidationCount(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            return segment.invalidations;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // age だけ前に載せたものとして追加する（別のところから移したエントリの TTL を引き継ぐ）。
+    // すでに TTL を過ぎているか、同じキーのエントリがあれば何もせずに false を返す
+    public boolean put(K key, V value, Duration age) {
+        long ageNanos = Math.max(0, age.toNanos());
+        if (ttlNanos > 0 && ageNanos > ttlNanos) {
+            return false;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        segment.lock.lock();
+        try {
+            if (segment.entries.containsKey(key)) {
+                return false;
+            }
+            segment.entries.put(key, new Entry<>(value, now - ageNanos, now));
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // 最近使われた順に最大 limit 件。TTL を過ぎたものは含めない（ヒット・ミスには数えない）。
+    // セグメントごとに新しいほうから limit 件ずつ集め、最後に使われた時刻で並べ直す
+    public List<CachedEntry<K, V>> recentEntries(int limit) {
+        List<Recent<K, V>> candidates = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                // accessOrder なので反復は古い順。新しい順にするため逆から詰める
+                List<Map.Entry<K, Entry<V>>> all = new ArrayList<>(segment.entries.entrySet());
+                int taken = 0;
+                for (int i = all.size() - 1; i >= 0 && taken < limit; i--) {
+                    Entry<V> entry = all.get(i).getValue();
+                    if (!isStale(entry, now)) {
+                        candidates.add(new Recent<>(new CachedEntry<>(all.get(i).getKey(), entry.value,
+                                Duration.ofNanos(now - entry.createdAt)), entry.lastAccess));
+                        taken++;
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        candidates.sort(Comparator.comparingLong((Recent<K, V> recent) -> recent.lastAccess()).reversed());
+        List<CachedEntry<K, V>> recent = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = 0; i < candidates.size() && recent.size() < limit; i++) {
+            recent.add(candidates.get(i).entry());
+        }
+        return recent;
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.entries.remove(key);
+            segment.invalidations++;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.entries.clear();
+                segment.invalidations++;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & segmentMask];
+    }
+
+    private boolean isStale(Entry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.createdAt > ttlNanos;
+    }
+
+    public record CachedEntry<K, V>(K key, V value, Duration age) {
+    }
+
+    private record Recent<K, V>(CachedEntry<K, V> entry, long lastAccess) {
+    }
+
+    // lastAccess はセグメントのロックを持っている間だけ書き換える
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long createdAt;
+        private long lastAccess;
+
+        private Entry(V value, long createdAt, long lastAccess) {
+            this.value = value;
+            this.createdAt = createdAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class Segment<K, V> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> entries;
+        // invalidate・clear の回数。lock を持っている間だけ読み書きする
+        private long invalidations;
+
+        private Segment(int maxSize, LongAdder evictions) {
+            // accessOrder = true にすると get のたびに末尾へ移動するので、先頭が最も古いエントリになる
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
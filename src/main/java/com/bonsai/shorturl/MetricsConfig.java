@@ -0,0 +1,102 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// キューやキャッシュのように状態を持つ部品は、スクレイプ時に現在値を読みに行くメーターとして登録する
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder redirectCacheMetrics(RedirectCache redirectCache) {
+        return registry -> {
+            Gauge.builder("shorturl.cache.size", redirectCache, RedirectCache::size)
+                    .tag("cache", "redirect").register(registry);
+            FunctionCounter.builder("shorturl.cache.requests", redirectCache, RedirectCache::getHitCount)
+                    .tag("cache", "redirect").tag("result", "hit").register(registry);
+            FunctionCounter.builder("shorturl.cache.requests", redirectCache, RedirectCache::getMissCount)
+                    .tag("cache", "redirect").tag("result", "miss").register(registry);
+            FunctionCounter.builder("shorturl.cache.evictions", redirectCache, RedirectCache::getEvictionCount)
+                    .tag("cache", "redirect").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder geoIpCacheMetrics(GeoIpResolver geoIpResolver) {
+        return registry -> {
+            if (!(geoIpResolver instanceof CachingGeoIpResolver caching)) {
+                return;
+            }
+            LruCache<String, GeoLocation> cache = caching.getCache();
+            Gauge.builder("shorturl.cache.size", cache, LruCache::size)
+                    .tag("cache", "geoip").register(registry);
+            FunctionCounter.builder("shorturl.cache.requests", cache, LruCache::getHitCount)
+                    .tag("cache", "geoip").tag("result", "hit").register(registry);
+            FunctionCounter.builder("shorturl.cache.requests", cache, LruCache::getMissCount)
+                    .tag("cache", "geoip").tag("result", "miss").register(registry);
+            FunctionCounter.builder("shorturl.cache.evictions", cache, LruCache::getEvictionCount)
+                    .tag("cache", "geoip").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder userAgentCacheMetrics(UserAgentClassifier userAgentClassifier) {
+        return registry -> {
+            LruCache<String, UserAgentClassifier.Classification> cache = userAgentClassifier.getCache();
+            Gauge.builder("shorturl.cache.size", cache, LruCache::size)
+                    .tag("cache", "user-agent").register(registry);
+            FunctionCounter.builder("shorturl.cache.requests", cache, LruCache::getHitCount)
+                    .tag("cache", "user-agent").tag("result", "hit").register(registry);
+            FunctionCounter.builder("shorturl.cache.requests", cache, LruCache::getMissCount)
+                    .tag("cache", "user-agent").tag("result", "miss").register(registry);
+            FunctionCounter.builder("shorturl.cache.evictions", cache, LruCache::getEvictionCount)
+                    .tag("cache", "user-agent").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder clickIngestionMetrics(ClickIngestionService clickIngestionService) {
+        return registry -> {
+            Gauge.builder("shorturl.ingest.queue.size", clickIngestionService, ClickIngestionService::getQueueSize)
+                    .register(registry);
+            Gauge.builder("shorturl.ingest.queue.capacity", clickIngestionService, ClickIngestionService::getQueueCapacity)
+                    .register(registry);
+            FunctionCounter.builder("shorturl.ingest.clicks", clickIngestionService, ClickIngestionService::getAcceptedCount)
+                    .tag("result", "accepted").register(registry);
+            FunctionCounter.builder("shorturl.ingest.clicks", clickIngestionService, ClickIngestionService::getDroppedCount)
+                    .tag("result", "dropped").register(registry);
+            FunctionCounter.builder("shorturl.ingest.clicks", clickIngestionService, ClickIngestionService::getPersistedCount)
+                    .tag("result", "persisted").register(registry);
+            FunctionCounter.builder("shorturl.ingest.clicks", clickIngestionService, ClickIngestionService::getFailedCount)
+                    .tag("result", "failed").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder shortCodeFilterMetrics(ShortCodeFilter shortCodeFilter) {
+        return registry -> {
+            Gauge.builder("shorturl.shortcode.filter.codes", shortCodeFilter, ShortCodeFilter::getCodeCount)
+                    .register(registry);
+            Gauge.builder("shorturl.shortcode.filter.size", shortCodeFilter, ShortCodeFilter::getSizeInBytes)
+                    .baseUnit("bytes").register(registry);
+            // ビットの埋まり具合からの見積もり。実測は lookups の false_positive / (absent + false_positive)
+            Gauge.builder("shorturl.shortcode.filter.false.positive.rate", shortCodeFilter,
+                    ShortCodeFilter::getEstimatedFalsePositiveRate).register(registry);
+            FunctionCounter.builder("shorturl.shortcode.filter.lookups", shortCodeFilter, ShortCodeFilter::getAbsentCount)
+                    .tag("result", "absent").register(registry);
+            FunctionCounter.builder("shorturl.shortcode.filter.lookups", shortCodeFilter, ShortCodeFilter::getPresentCount)
+                    .tag("result", "maybe_present").register(registry);
+            FunctionCounter.builder("shorturl.shortcode.filter.lookups", shortCodeFilter, ShortCodeFilter::getFalsePositiveCount)
+                    .tag("result", "false_positive").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder clickCounterMetrics(ClickCounter clickCounter) {
+        return registry -> Gauge.builder("shorturl.clicks.pending.links", clickCounter, ClickCounter::getPendingLinkCount)
+                .register(registry);
+    }
+}
@@ -0,0 +1,8 @@
+package com.bonsai.shorturl;
+
+import java.time.LocalDateTime;
+
+// キューに積むクリック情報。GeoIPの解決などはDBへ書き込むスレッド側で行う
+public record PendingClick(Long urlMappingId, LocalDateTime clickTimestamp, String ipAddress, String referrer,
+                           String deviceType) {
+}
@@ -0,0 +1,86 @@
+package com.bonsai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+@Component
+public class RedirectCache {
+
+    private final UrlMappingRepository urlMappingRepository;
+    private final ShortCodeFilter shortCodeFilter;
+    private final LruCache<String, RedirectTarget> cache;
+    private final CacheInvalidationBus invalidationBus;
+
+    public RedirectCache(UrlMappingRepository urlMappingRepository,
+                         ShortCodeFilter shortCodeFilter,
+                         CacheInvalidationBus invalidationBus,
+                         @Value("${shorturl.redirect-cache.max-size:10000}") int maxSize,
+                         @Value("${shorturl.redirect-cache.ttl:10m}") Duration ttl) {
+        this.urlMappingRepository = urlMappingRepository;
+        this.shortCodeFilter = shortCodeFilter;
+        this.cache = new LruCache<>(maxSize, ttl);
+        this.invalidationBus = invalidationBus;
+        invalidationBus.subscribe(CacheInvalidationBus.Topic.REDIRECT, cache::invalidate);
+    }
+
+    // キャッシュにあればDBに問い合わせずに返す。なければDBから読み込んでキャッシュに載せる。
+    // 存在しないことが ShortCodeFilter で分かるコードはDBに問い合わせない
+    public Optional<RedirectTarget> resolve(String shortCode) {
+        return Optional.ofNullable(find(shortCode));
+    }
+
+    // resolve と同じだが、見つからなければ null を返す（RedirectFilter でリクエストごとの割り当てを減らすため）
+    public RedirectTarget find(String shortCode) {
+        RedirectTarget cached = cache.get(shortCode);
+        if (cached != null) {
+            return cached;
+        }
+        if (!shortCodeFilter.mightContain(shortCode)) {
+            return null;
+        }
+        // DBから読んでいる間に更新・削除されて invalidate されたら、読んだ古い値はキャッシュに載せない
+        long invalidationCount = cache.invalidationCount(shortCode);
+        RedirectTarget loaded = urlMappingRepository.findByShortCode(shortCode).map(RedirectTarget::from).orElse(null);
+        if (loaded != null) {
+            cache.putUnlessInvalidated(shortCode, loaded, invalidationCount);
+        } else {
+            shortCodeFilter.recordFalsePositive();
+        }
+        return loaded;
+    }
+
+    // 他のノードのキャッシュからも外す
+    public void invalidate(String shortCode) {
+        cache.invalidate(shortCode);
+        invalidationBus.publish(CacheInvalidationBus.Topic.REDIRECT, shortCode);
+    }
+
+    // RedirectCacheSnapshot 用
+    public List<LruCache.CachedEntry<String, RedirectTarget>> recentEntries(int limit) {
+        return cache.recentEntries(limit);
+    }
+
+    public boolean restore(String shortCode, RedirectTarget target, Duration age) {
+        return cache.put(shortCode, target, age);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+}
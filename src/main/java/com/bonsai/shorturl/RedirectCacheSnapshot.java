@@ -0,0 +1,245 @@
+package com.bonsai.shorturl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+// リダイレクトキャッシュのうち、よく使われているエントリを定期的にローカルファイルへ書き出しておき、
+// 起動時（Webサーバーがリクエストを受け付ける前）にキャッシュへ戻す。デプロイ直後のリダイレクトがすべてDBに行くのを防ぐ。
+// 書き出すのは最近使われた max-entries × 2 件のうちクリック数の多い max-entries 件。
+// 戻したエントリはキャッシュに載った時刻を引き継ぐので、TTL を過ぎたものは戻さない。
+// 書き出した後（停止中も含む）に更新・削除されたリンクは、その間の REDIRECT 通知を読んで戻さない。
+// 通知が削除されていて書き出した時刻までさかのぼれなければ、ファイルは使わない。
+// ファイル形式: magic, version, 書き出した時刻, 件数, 各エントリ, 最後に CRC32C。壊れていれば読まずに空のキャッシュで始める
+@Component
+public class RedirectCacheSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(RedirectCacheSnapshot.class);
+
+    private static final int MAGIC = 0x53524353; // "SRCS"
+    private static final int VERSION = 2;
+    private static final int ID_BATCH_SIZE = 500;
+    // ノード間の時計のずれと、created_at より後にコミットされた通知の分
+    private static final Duration CLOCK_SKEW_MARGIN = Duration.ofMinutes(1);
+
+    private final RedirectCache redirectCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheInvalidationBus invalidationBus;
+    private final boolean enabled;
+    private final Path file;
+    private final int maxEntries;
+
+    public RedirectCacheSnapshot(RedirectCache redirectCache, JdbcTemplate jdbcTemplate,
+                                 @Value("${shorturl.redirect-cache.snapshot.enabled:true}") boolean enabled,
+                                 @Value("${shorturl.redirect-cache.snapshot.file:./data/redirect-cache.snapshot}") Path file,
+                                 @Value("${shorturl.redirect-cache.snapshot.max-entries:5000}") int maxEntries,
+                                 CacheInvalidationBus invalidationBus) {
+        this.redirectCache = redirectCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.invalidationBus = invalidationBus;
+        this.enabled = enabled;
+        this.file = file;
+        this.maxEntries = maxEntries;
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            log.warn("Failed to read redirect cache snapshot {}", file, e);
+            return;
+        }
+        Snapshot snapshot;
+        try {
+            snapshot = decode(bytes);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring corrupt redirect cache snapshot {}", file, e);
+            return;
+        }
+        LocalDateTime savedAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(snapshot.savedAtMillis()), ZoneId.systemDefault());
+        List<String> changed = invalidationBus.keysPublishedSince(CacheInvalidationBus.Topic.REDIRECT,
+                savedAt.minus(CLOCK_SKEW_MARGIN));
+        if (changed == null) {
+            log.info("Ignoring redirect cache snapshot {} saved at {}: invalidations since then are no longer retained",
+                    file, savedAt);
+            return;
+        }
+        Set<String> stale = new HashSet<>(changed);
+        List<SnapshotEntry> entries = snapshot.entries();
+
+        long nowMillis = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        int restored = 0;
+        // 新しい順に並んでいるので、古いほうから入れて LRU の順番も戻す
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            SnapshotEntry entry = entries.get(i);
+            if (!entry.target().isExpired(now) && !stale.contains(entry.shortCode())
+                    && redirectCache.restore(entry.shortCode(), entry.target(), Duration.ofMillis(nowMillis - entry.cachedAtMillis()))) {
+                restored++;
+            }
+        }
+        log.info("Restored {} of {} redirect cache entries from {} in {} ms", restored, entries.size(), file,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Scheduled(fixedDelayString = "${shorturl.redirect-cache.snapshot.interval:300000}",
+            initialDelayString = "${shorturl.redirect-cache.snapshot.interval:300000}")
+    public void save() {
+        if (!enabled) {
+            return;
+        }
+        List<LruCache.CachedEntry<String, RedirectTarget>> candidates = new ArrayList<>(
+                redirectCache.recentEntries(maxEntries * 2));
+        if (candidates.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> clickCounts = clickCounts(candidates);
+        // 安定ソートなので、クリック数が同じなら最近使われたほうが先に残る
+        candidates.sort(Comparator.comparingLong(
+                (LruCache.CachedEntry<String, RedirectTarget> entry) -> clickCounts.getOrDefault(entry.value().id(), 0L)).reversed());
+        List<LruCache.CachedEntry<String, RedirectTarget>> hottest = candidates.subList(0, Math.min(maxEntries, candidates.size()));
+        // ファイル上は最近使われた順に並べる
+        hottest.sort(Comparator.comparing(LruCache.CachedEntry::age));
+
+        try {
+            byte[] bytes = encode(hottest, System.currentTimeMillis());
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved {} redirect cache entries to {} ({} bytes)", hottest.size(), file, bytes.length);
+        } catch (IOException e) {
+            log.warn("Failed to save redirect cache snapshot {}", file, e);
+        }
+    }
+
+    // 正常終了時にも書き出しておく（次の起動で戻せる件数が一番多くなる）
+    @PreDestroy
+    public void saveOnShutdown() {
+        save();
+    }
+
+    private Map<Long, Long> clickCounts(List<LruCache.CachedEntry<String, RedirectTarget>> entries) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (int from = 0; from < entries.size(); from += ID_BATCH_SIZE) {
+            List<LruCache.CachedEntry<String, RedirectTarget>> batch = entries.subList(from, Math.min(from + ID_BATCH_SIZE, entries.size()));
+            Object[] ids = batch.stream().map(entry -> entry.value().id()).toArray();
+            String placeholders = String.join(", ", Arrays.stream(ids).map(id -> "?").toList());
+            jdbcTemplate.query("select id, click_count from url_mapping where id in (" + placeholders + ")", rs -> {
+                counts.put(rs.getLong(1), rs.getLong(2));
+            }, ids);
+        }
+        return counts;
+    }
+
+    static byte[] encode(List<LruCache.CachedEntry<String, RedirectTarget>> entries, long nowMillis) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(entries.size() * 96 + 32);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(nowMillis);
+        out.writeInt(entries.size());
+        for (LruCache.CachedEntry<String, RedirectTarget> entry : entries) {
+            RedirectTarget target = entry.value();
+            out.writeUTF(entry.key());
+            out.writeLong(target.id());
+            byte[] url = target.originalUrl().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(url.length);
+            out.write(url);
+            LocalDateTime expiration = target.expirationTimestamp();
+            out.writeBoolean(expiration != null);
+            if (expiration != null) {
+                out.writeLong(expiration.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(expiration.getNano());
+            }
+            out.writeUTF(target.redirectType().name());
+            out.writeBoolean(target.edgeCacheable());
+            out.writeLong(nowMillis - entry.age().toMillis());
+        }
+        out.flush();
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.toByteArray());
+        out.writeInt((int) crc.getValue());
+        return buffer.toByteArray();
+    }
+
+    static Snapshot decode(byte[] bytes) throws IOException {
+        if (bytes.length < 4) {
+            throw new IOException("Snapshot is truncated");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unsupported snapshot format");
+        }
+        long savedAtMillis = in.readLong();
+        int count = in.readInt();
+        List<SnapshotEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String shortCode = in.readUTF();
+            long id = in.readLong();
+            byte[] url = new byte[in.readInt()];
+            in.readFully(url);
+            LocalDateTime expiration = in.readBoolean()
+                    ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+            RedirectType redirectType = RedirectType.valueOf(in.readUTF());
+            boolean edgeCacheable = in.readBoolean();
+            long cachedAtMillis = in.readLong();
+            entries.add(new SnapshotEntry(shortCode, new RedirectTarget(id, new String(url, StandardCharsets.UTF_8),
+                    expiration, redirectType, edgeCacheable), cachedAtMillis));
+        }
+        return new Snapshot(savedAtMillis, entries);
+    }
+
+    record Snapshot(long savedAtMillis, List<SnapshotEntry> entries) {
+    }
+
+    record SnapshotEntry(String shortCode, RedirectTarget target, long cachedAtMillis) {
+    }
+}
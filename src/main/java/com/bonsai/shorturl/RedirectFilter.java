@@ -0,0 +1,107 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// GET /{shortCode} のリダイレクトを、Spring Security や Spring MVC を通さずにここで直接返す。
+// セッションは作らず、Location はキャッシュ済みの RedirectTarget に作っておいた文字列をそのまま使う（ヘッダーは RedirectResponder）。
+// 見つからない・期限切れのリンクは、画面を表示するために今までどおりコントローラーへ流す
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(name = "shorturl.redirect.fast-path.enabled", havingValue = "true", matchIfMissing = true)
+public class RedirectFilter implements Filter {
+
+    // 1階層のパスでアプリの画面やAPIに使っているもの。短縮コードとしては使えない
+    private static final Set<String> RESERVED_PATHS = Set.of(
+            "login", "logout", "register", "dashboard", "shorten", "update", "analytics", "edit", "check",
+            "api", "actuator", "error", "h2-console");
+
+    private final RedirectCache redirectCache;
+    private final ClickTracker clickTracker;
+    private final RedirectResponder redirectResponder;
+    private final Timer redirectTimer;
+    private final Timer lookupTimer;
+    private final Counter redirectedCounter;
+
+    public RedirectFilter(RedirectCache redirectCache, ClickTracker clickTracker, RedirectResponder redirectResponder,
+                          MeterRegistry meterRegistry) {
+        this.redirectCache = redirectCache;
+        this.clickTracker = clickTracker;
+        this.redirectResponder = redirectResponder;
+        // コントローラーと同じメーターに記録する
+        this.redirectTimer = meterRegistry.timer("shorturl.redirect");
+        this.lookupTimer = meterRegistry.timer("shorturl.redirect.phase", "phase", "lookup");
+        this.redirectedCounter = meterRegistry.counter("shorturl.redirect.requests", "outcome", "redirected");
+    }
+
+    public static boolean isReserved(String shortCode) {
+        return RESERVED_PATHS.contains(shortCode);
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        String shortCode = shortCodeOf(request);
+        if (shortCode == null) {
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        long start = System.nanoTime();
+        RedirectTarget target = redirectCache.find(shortCode);
+        lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        LocalDateTime now = LocalDateTime.now();
+        if (target == null || target.isExpired(now)) {
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        clickTracker.record(target, request, now);
+
+        redirectResponder.send((HttpServletResponse) servletResponse, target, now);
+
+        redirectedCounter.increment();
+        redirectTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    // "/{shortCode}" の形（英数字・ハイフン・アンダースコアだけの1階層）ならコードを返す。それ以外は null
+    static String shortCodeOf(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return null;
+        }
+        String uri = request.getRequestURI();
+        int begin = request.getContextPath().length() + 1;
+        if (uri.length() <= begin || uri.charAt(begin - 1) != '/') {
+            return null;
+        }
+        for (int i = begin; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+            if (!allowed) {
+                return null;
+            }
+        }
+        String shortCode = uri.substring(begin);
+        return isReserved(shortCode) ? null : shortCode;
+    }
+}
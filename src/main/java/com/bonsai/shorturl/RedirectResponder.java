@@ -0,0 +1,43 @@
+package com.bonsai.shorturl;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// リダイレクトのレスポンス（ステータス、Location、キャッシュ関連ヘッダー）を書く
+// edgeCacheable でないリンクは、クリックを毎回数えられるようにどこにもキャッシュさせない。
+// edgeCacheable なリンクは max-age の間ブラウザやCDNにキャッシュさせる。有効期限があればそれを超えないようにする
+@Component
+public class RedirectResponder {
+
+    private static final String NO_STORE = "no-store";
+
+    private final long maxAgeSeconds;
+    private final String defaultCacheControl;
+
+    public RedirectResponder(@Value("${shorturl.redirect.edge-cache-max-age:1d}") Duration maxAge) {
+        this.maxAgeSeconds = maxAge.getSeconds();
+        this.defaultCacheControl = "public, max-age=" + maxAgeSeconds;
+    }
+
+    public void send(HttpServletResponse response, RedirectTarget target, LocalDateTime now) {
+        response.setStatus(target.redirectType().getStatusCode());
+        response.setHeader("Location", target.location());
+
+        if (!target.edgeCacheable()) {
+            response.setHeader("Cache-Control", NO_STORE);
+        } else if (target.expirationTimestamp() == null) {
+            response.setHeader("Cache-Control", defaultCacheControl);
+        } else {
+            long secondsLeft = Duration.between(now, target.expirationTimestamp()).getSeconds();
+            long maxAge = Math.max(0, Math.min(maxAgeSeconds, secondsLeft));
+            response.setHeader("Cache-Control", "public, max-age=" + maxAge);
+            // HTTP/1.0 のキャッシュ向け。max-age と同じ時点にそろえる
+            response.setDateHeader("Expires", System.currentTimeMillis() + maxAge * 1000);
+        }
+        response.setContentLength(0);
+    }
+}
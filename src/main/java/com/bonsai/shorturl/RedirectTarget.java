@@ -0,0 +1,33 @@
+package com.bonsai.shorturl;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.LocalDateTime;
+
+// リダイレクトに必要な最小限の情報だけを持つ（JPAエンティティをキャッシュに載せないため）
+// location は Location ヘッダーにそのまま書ける形（非ASCII文字はパーセントエンコード済み）で、キャッシュに載せる時に1回だけ作る
+public record RedirectTarget(Long id, String originalUrl, LocalDateTime expirationTimestamp,
+                             RedirectType redirectType, boolean edgeCacheable, String location) {
+
+    public RedirectTarget(Long id, String originalUrl, LocalDateTime expirationTimestamp,
+                          RedirectType redirectType, boolean edgeCacheable) {
+        this(id, originalUrl, expirationTimestamp, redirectType, edgeCacheable, toLocation(originalUrl));
+    }
+
+    public static RedirectTarget from(UrlMapping urlMapping) {
+        return new RedirectTarget(urlMapping.getId(), urlMapping.getOriginalUrl(), urlMapping.getExpirationTimestamp(),
+                urlMapping.getRedirectType(), urlMapping.isEdgeCacheable());
+    }
+
+    public boolean isExpired(LocalDateTime now) {
+        return expirationTimestamp != null && now.isAfter(expirationTimestamp);
+    }
+
+    private static String toLocation(String url) {
+        try {
+            return new URI(url).toASCIIString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.bonsai.shorturl;
+
+// リンクごとのリダイレクトのステータスコード
+// 301/308 はブラウザにも恒久的なリダイレクトとして扱われる。307/308 はリクエストのメソッドを変えない
+public enum RedirectType {
+    MOVED_PERMANENTLY(301, "301 Moved Permanently"),
+    FOUND(302, "302 Found"),
+    TEMPORARY_REDIRECT(307, "307 Temporary Redirect"),
+    PERMANENT_REDIRECT(308, "308 Permanent Redirect");
+
+    private final int statusCode;
+    private final String label;
+
+    RedirectType(int statusCode, String label) {
+        this.statusCode = statusCode;
+        this.label = label;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,105 @@
+package com.bonsai.shorturl;
+
+public final class Referrers {
+
+    public static final String DIRECT = "Direct";
+    public static final String UNKNOWN = "Unknown";
+    // click_dimension の辞書がいっぱいになってから初めて来たリファラー
+    public static final String OTHER = "Other";
+
+    private Referrers() {
+    }
+
+    // Referer ヘッダーからホスト名だけを取り出す（パスやクエリごとに別の値にしない）。
+    // クリックごとに呼ばれるので URI は作らず、ヘッダーの中を直接走査してホスト名の部分だけを小文字でコピーする
+    public static String host(String referrer) {
+        if (referrer == null || referrer.isEmpty()) {
+            return DIRECT;
+        }
+        int start = 0;
+        int end = referrer.length();
+        while (start < end && referrer.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && referrer.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        // scheme://[userinfo@]host[:port][/path][?query][#fragment]
+        int separator = referrer.indexOf("://", start);
+        if (separator <= start || separator + 3 > end || !isScheme(referrer, start, separator)) {
+            return UNKNOWN;
+        }
+        int authorityStart = separator + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < end && "/?#".indexOf(referrer.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        int hostStart = referrer.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) {
+            hostStart = authorityStart;
+        }
+
+        int hostEnd;
+        if (hostStart < authorityEnd && referrer.charAt(hostStart) == '[') {
+            // IPv6 アドレスは [] ごと返す（URI#getHost と同じ）
+            hostEnd = referrer.indexOf(']', hostStart);
+            if (hostEnd < 0 || hostEnd >= authorityEnd) {
+                return UNKNOWN;
+            }
+            hostEnd++;
+        } else {
+            hostEnd = hostStart;
+            while (hostEnd < authorityEnd && referrer.charAt(hostEnd) != ':') {
+                hostEnd++;
+            }
+        }
+        if (hostEnd == hostStart) {
+            return UNKNOWN;
+        }
+        return lowerCaseHost(referrer, hostStart, hostEnd);
+    }
+
+    private static boolean isScheme(String value, int start, int end) {
+        if (!isAsciiLetter(value.charAt(start))) {
+            return false;
+        }
+        for (int i = start + 1; i < end; i++) {
+            char c = value.charAt(i);
+            if (!isAsciiLetter(c) && !isAsciiDigit(c) && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ホスト名に使えない文字が含まれていれば UNKNOWN。大文字がなければ部分文字列をそのまま返す
+    private static String lowerCaseHost(String value, int start, int end) {
+        boolean hasUpperCase = false;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                hasUpperCase = true;
+            } else if (!isAsciiLetter(c) && !isAsciiDigit(c) && c != '-' && c != '.' && c != '[' && c != ']' && c != ':') {
+                return UNKNOWN;
+            }
+        }
+        if (!hasUpperCase) {
+            return value.substring(start, end);
+        }
+        char[] host = new char[end - start];
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            host[i - start] = (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        return new String(host);
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,6 @@
+package com.bonsai.shorturl;
+
+public enum RollupDimension {
+    COUNTRY,
+    REFERRER
+}
@@ -0,0 +1,56 @@
+package com.bonsai.shorturl;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Savepoint;
+import java.util.function.Supplier;
+
+// トランザクションの途中で、一意制約違反になるかもしれない INSERT や、削除されたかもしれないテーブルへの SELECT を実行する。
+// PostgreSQL では失敗した文のあとトランザクション全体が中断され、以降の文がすべて失敗するので、
+// 文の前にセーブポイントを置き、失敗したらそこまで戻してから続ける（H2 は失敗した文だけが取り消される）。
+// トランザクションの外（自動コミット）ではそのまま実行する（接続を先に借りると statement がもう1本借りてしまう）
+public final class Savepoints {
+
+    private Savepoints() {
+    }
+
+    // 一意制約違反なら false（文の変更はすべて取り消されている）
+    public static boolean runIgnoringDuplicateKey(JdbcTemplate jdbcTemplate, Runnable statement) {
+        try {
+            run(jdbcTemplate, () -> {
+                statement.run();
+                return null;
+            });
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    // 失敗したら文の変更をすべて取り消してから例外を投げ直す（呼び出し元はトランザクションを続けられる）
+    public static <T> T run(JdbcTemplate jdbcTemplate, Supplier<T> statement) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return statement.get();
+        }
+        return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+            if (connection.getAutoCommit()) {
+                return statement.get();
+            }
+            // トランザクションが接続を持っているので、statement の JdbcTemplate も同じ接続を使う
+            Savepoint savepoint = connection.setSavepoint();
+            T result;
+            try {
+                result = statement.get();
+            } catch (DataAccessException e) {
+                connection.rollback(savepoint);
+                throw e;
+            }
+            connection.releaseSavepoint(savepoint);
+            return result;
+        });
+    }
+}
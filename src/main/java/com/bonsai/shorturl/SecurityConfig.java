@@ -1,12 +1,25 @@
 package com.bonsai.shorturl;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestHeaderRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 @Configuration
 @EnableWebSecurity
@@ -17,7 +30,39 @@ public class SecurityConfig {
         return new BCryptPasswordEncoder();
     }
 
+    // /actuator/** はアプリのユーザーとは別の監視用アカウントだけが使える。ヘルスチェックは誰でも見られる
     @Bean
+    @Order(1)
+    public SecurityFilterChain actuatorSecurityFilterChain(HttpSecurity http,
+                                                           PasswordEncoder passwordEncoder,
+                                                           @Value("${shorturl.metrics.username:metrics}") String username,
+                                                           @Value("${shorturl.metrics.password:}") String password) throws Exception {
+        InMemoryUserDetailsManager metricsUsers = new InMemoryUserDetailsManager();
+        if (!password.isBlank()) {
+            metricsUsers.createUser(org.springframework.security.core.userdetails.User.withUsername(username)
+                    .password(passwordEncoder.encode(password))
+                    .roles("METRICS")
+                    .build());
+        }
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(metricsUsers);
+        provider.setPasswordEncoder(passwordEncoder);
+
+        http
+                .securityMatcher(EndpointRequest.toAnyEndpoint())
+                .authorizeHttpRequests(authorize -> authorize
+                        .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                        .anyRequest().hasRole("METRICS")
+                )
+                .authenticationManager(new ProviderManager(provider))
+                .httpBasic(Customizer.withDefaults())
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .csrf(csrf -> csrf.disable());
+
+        return http.build();
+    }
+
+    @Bean
+    @Order(2)
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
                 .authorizeHttpRequests(authorize -> authorize
@@ -32,8 +77,18 @@ public class SecurityConfig {
                 .logout(logout -> logout
                         .logoutSuccessUrl("/login?logout")
                         .permitAll()
-                );
+                )
+                // APIはCSRFトークンの代わりにBasic認証で呼び出せる
+                .httpBasic(Customizer.withDefaults())
+                .csrf(csrf -> csrf.ignoringRequestMatchers(basicAuthenticatedApiRequest()));
 
         return http.build();
     }
+
+    // CSRFチェックを省くのは Authorization ヘッダー付きの /api/** だけ（他のサイトからはプリフライトなしに付けられない）。
+    // セッションのCookieだけで呼ばれたAPIは、画面と同じようにCSRFトークンが要る
+    private static RequestMatcher basicAuthenticatedApiRequest() {
+        return new AndRequestMatcher(PathPatternRequestMatcher.withDefaults().matcher("/api/**"),
+                new RequestHeaderRequestMatcher("Authorization"));
+    }
 }
\ No newline at end of file
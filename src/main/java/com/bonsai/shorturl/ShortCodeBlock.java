@@ -0,0 +1,27 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+// 各ノードが借りていく連番の範囲を管理するテーブル
+@Entity
+public class ShortCodeBlock {
+
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private long nextValue;
+
+    public ShortCodeBlock() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getNextValue() {
+        return nextValue;
+    }
+}
@@ -0,0 +1,192 @@
+package com.bonsai.shorturl;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 存在する全短縮コードの Bloom フィルタ。ここで「ない」と分かったコードはDBに問い合わせずに404にする
+// （でたらめなパスを叩き続けるスキャナーやボットの分のクエリがなくなる）。
+// 起動時に url_mapping から作り、リンクを登録したら add で追加する。
+// 登録数が想定件数を超えて偽陽性率が上がってきたら、倍の件数で作り直す。
+// クラスタでは他のノードで登録されたコードを通知で受け取るので、「ない」と出たら通知を読みに行ってから確かめ直す。
+// 通知を取りこぼしたかもしれないときと、rebuild-interval ごと（0 なら作り直さない）にもDBから作り直す
+@Component
+public class ShortCodeFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ShortCodeFilter.class);
+    private static final int FETCH_SIZE = 10000;
+
+    private final JdbcTemplate jdbcTemplate;
+    // 全件を読むときだけ使う。fetch size を指定して少しずつ取り出す
+    private final JdbcTemplate scanJdbcTemplate;
+    private final boolean enabled;
+    private final long expectedCodes;
+    private final double falsePositiveRate;
+    private final CacheInvalidationBus invalidationBus;
+    private final long rebuildIntervalNanos;
+
+    // 読み込みが終わるまでは null（すべて「あるかもしれない」として扱う）
+    private volatile BloomFilter filter;
+    // 作り直している間の新しいフィルタ。add はこちらにも入れる
+    private volatile BloomFilter rebuilding;
+    // filter を作り始めた時刻（System.nanoTime）
+    private volatile long builtAt;
+    // 通知を取りこぼしたかもしれないので、次の確認で作り直す
+    private volatile boolean stale;
+    // 作り直しは同時に1つだけ。全件を読む間も仮想スレッドがキャリアスレッドを占有しないよう Lock を使う
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    private final LongAdder absent = new LongAdder();
+    private final LongAdder present = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public ShortCodeFilter(JdbcTemplate jdbcTemplate,
+                           @Value("${shorturl.shortcode-filter.enabled:true}") boolean enabled,
+                           @Value("${shorturl.shortcode-filter.expected-codes:1000000}") long expectedCodes,
+                           @Value("${shorturl.shortcode-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                           @Value("${shorturl.shortcode-filter.rebuild-interval:0}") Duration rebuildInterval,
+                           CacheInvalidationBus invalidationBus) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.scanJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.scanJdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.enabled = enabled;
+        this.expectedCodes = expectedCodes;
+        this.falsePositiveRate = falsePositiveRate;
+        this.invalidationBus = invalidationBus;
+        this.rebuildIntervalNanos = rebuildInterval.toNanos();
+        // 他のノードで登録されたコード
+        invalidationBus.subscribe(CacheInvalidationBus.Topic.SHORT_CODE, this::put);
+        invalidationBus.subscribeMissed(() -> stale = true);
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        Long count = jdbcTemplate.queryForObject("select count(*) from url_mapping", Long.class);
+        rebuild(Math.max(expectedCodes, (count != null ? count : 0) * 2));
+    }
+
+    // false なら確実に存在しない
+    public boolean mightContain(String shortCode) {
+        BloomFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+        if (current.mightContain(shortCode)) {
+            present.increment();
+            return true;
+        }
+        // 他のノードで登録されたばかりで、まだ通知が届いていないだけかもしれない
+        if (invalidationBus.catchUp() && filter.mightContain(shortCode)) {
+            present.increment();
+            return true;
+        }
+        absent.increment();
+        return false;
+    }
+
+    // mightContain が true だったのにDBになかったときに呼ぶ（偽陽性の実測用）
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    // リンクを登録した後（コミット後）に呼ぶ。他のノードのフィルタにも追加する
+    public void add(String shortCode) {
+        put(shortCode);
+        invalidationBus.publish(CacheInvalidationBus.Topic.SHORT_CODE, shortCode);
+    }
+
+    // 一括登録用。他のノードへの通知もまとめて送る
+    public void addAll(Collection<String> shortCodes) {
+        shortCodes.forEach(this::put);
+        invalidationBus.publishAll(CacheInvalidationBus.Topic.SHORT_CODE, shortCodes);
+    }
+
+    // 作り直し中なら新しいフィルタにも入れる
+    private void put(String shortCode) {
+        BloomFilter pending = rebuilding;
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(shortCode);
+        }
+        if (pending != null) {
+            pending.put(shortCode);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${shorturl.shortcode-filter.check-interval:60000}")
+    public void rebuildIfNeeded() {
+        BloomFilter current = filter;
+        if (current == null) {
+            return;
+        }
+        if (current.getInsertionCount() > current.getExpectedInsertions()) {
+            rebuild(current.getInsertionCount() * 2);
+        } else if (stale || (rebuildIntervalNanos > 0 && System.nanoTime() - builtAt > rebuildIntervalNanos)) {
+            rebuild(current.getExpectedInsertions());
+        }
+    }
+
+    // rebuilding を先に公開してから読み込むので、読み込み中にコミットされたコードも add で新しいフィルタに入る
+    private void rebuild(long expectedInsertions) {
+        rebuildLock.lock();
+        try {
+            long start = System.nanoTime();
+            BloomFilter next = new BloomFilter(expectedInsertions, falsePositiveRate);
+            // ここまでに取りこぼした通知の分は、この読み込みで反映される
+            stale = false;
+            rebuilding = next;
+            try {
+                scanJdbcTemplate.query("select short_code from url_mapping", rs -> {
+                    next.put(rs.getString(1));
+                });
+                filter = next;
+                builtAt = start;
+            } finally {
+                rebuilding = null;
+            }
+            log.info("Short code filter built with {} codes ({} KB, {} hashes) in {} ms", next.getInsertionCount(),
+                    next.sizeInBytes() / 1024, next.getHashCount(), (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    public long getCodeCount() {
+        BloomFilter current = filter;
+        return current != null ? current.getInsertionCount() : 0;
+    }
+
+    public long getSizeInBytes() {
+        BloomFilter current = filter;
+        return current != null ? current.sizeInBytes() : 0;
+    }
+
+    public double getEstimatedFalsePositiveRate() {
+        BloomFilter current = filter;
+        return current != null ? current.estimatedFalsePositiveRate() : 0;
+    }
+
+    public long getAbsentCount() {
+        return absent.sum();
+    }
+
+    public long getPresentCount() {
+        return present.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+}
@@ -0,0 +1,8 @@
+package com.bonsai.shorturl;
+
+// 短縮コードの生成方法を差し替えられるようにするためのインターフェース
+// 実装は生成したコードが重複しないことを保証し、DBへの存在確認を必要としない
+public interface ShortCodeGenerator {
+
+    String nextCode();
+}
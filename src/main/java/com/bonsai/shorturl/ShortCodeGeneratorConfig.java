@@ -0,0 +1,27 @@
+package com.bonsai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@Configuration
+public class ShortCodeGeneratorConfig {
+
+    @Bean
+    public ShortCodeGenerator shortCodeGenerator(JdbcTemplate jdbcTemplate,
+                                                 PlatformTransactionManager transactionManager,
+                                                 @Value("${shorturl.code.strategy:block}") String strategy,
+                                                 @Value("${shorturl.code.block-size:1000}") int blockSize,
+                                                 @Value("${shorturl.code.initial-value:916132832}") long initialValue,
+                                                 @Value("${shorturl.code.node-id:0}") long nodeId) {
+        if ("snowflake".equalsIgnoreCase(strategy)) {
+            return new SnowflakeShortCodeGenerator(nodeId);
+        }
+        if ("block".equalsIgnoreCase(strategy)) {
+            return new BlockSequenceShortCodeGenerator(jdbcTemplate, transactionManager, blockSize, initialValue);
+        }
+        throw new IllegalArgumentException("Unknown shorturl.code.strategy: " + strategy);
+    }
+}
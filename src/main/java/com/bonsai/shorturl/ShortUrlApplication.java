@@ -1,8 +1,12 @@
 package com.bonsai.shorturl;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -15,7 +19,8 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.servlet.view.RedirectView;
 
@@ -23,7 +28,6 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @SpringBootApplication
 @EnableScheduling
@@ -31,15 +35,46 @@ import java.util.stream.Collectors;
 public class ShortUrlApplication {
 
     private final UrlMappingRepository urlMappingRepository;
-    private final ClickEventRepository clickEventRepository;
+    private final ClickEventStore clickEventStore;
     private final UserRepository userRepository;
     private final LinkHealthCheckService linkHealthCheckService;
-
-    public ShortUrlApplication(UrlMappingRepository urlMappingRepository, ClickEventRepository clickEventRepository, UserRepository userRepository, LinkHealthCheckService linkHealthCheckService) {
+    private final RedirectCache redirectCache;
+    private final ClickTracker clickTracker;
+    private final RedirectResponder redirectResponder;
+    private final ClickCounter clickCounter;
+    private final AnalyticsQueryService analyticsQueryService;
+    private final DashboardQueryService dashboardQueryService;
+    private final LinkSearchIndex linkSearchIndex;
+    private final ShortCodeFilter shortCodeFilter;
+    private final LinkExpiryService linkExpiryService;
+    private final ShortCodeGenerator shortCodeGenerator;
+    private final Timer redirectTimer;
+    private final Timer lookupTimer;
+    private final Counter redirectedCounter;
+    private final Counter notFoundCounter;
+    private final Counter expiredCounter;
+
+    public ShortUrlApplication(UrlMappingRepository urlMappingRepository, ClickEventStore clickEventStore, UserRepository userRepository, LinkHealthCheckService linkHealthCheckService, RedirectCache redirectCache, ClickTracker clickTracker, RedirectResponder redirectResponder, ClickCounter clickCounter, AnalyticsQueryService analyticsQueryService, DashboardQueryService dashboardQueryService, LinkSearchIndex linkSearchIndex, ShortCodeFilter shortCodeFilter, LinkExpiryService linkExpiryService, ShortCodeGenerator shortCodeGenerator, MeterRegistry meterRegistry) {
         this.urlMappingRepository = urlMappingRepository;
-        this.clickEventRepository = clickEventRepository;
+        this.clickEventStore = clickEventStore;
         this.userRepository = userRepository;
         this.linkHealthCheckService = linkHealthCheckService;
+        this.redirectCache = redirectCache;
+        this.clickTracker = clickTracker;
+        this.redirectResponder = redirectResponder;
+        this.clickCounter = clickCounter;
+        this.analyticsQueryService = analyticsQueryService;
+        this.dashboardQueryService = dashboardQueryService;
+        this.linkSearchIndex = linkSearchIndex;
+        this.shortCodeFilter = shortCodeFilter;
+        this.linkExpiryService = linkExpiryService;
+        this.shortCodeGenerator = shortCodeGenerator;
+        // 位置情報の解決と保存はクリック書き込みスレッド側で計測する（ClickEventWriter）
+        this.redirectTimer = meterRegistry.timer("shorturl.redirect");
+        this.lookupTimer = meterRegistry.timer("shorturl.redirect.phase", "phase", "lookup");
+        this.redirectedCounter = meterRegistry.counter("shorturl.redirect.requests", "outcome", "redirected");
+        this.notFoundCounter = meterRegistry.counter("shorturl.redirect.requests", "outcome", "not_found");
+        this.expiredCounter = meterRegistry.counter("shorturl.redirect.requests", "outcome", "expired");
     }
 
     public static void main(String[] args) {
@@ -58,13 +93,31 @@ public class ShortUrlApplication {
     }
 
     @GetMapping("/dashboard")
-    public String dashboard(Model model, @AuthenticationPrincipal User user) {
+    public String dashboard(@RequestParam(value = "sort", defaultValue = "NEWEST") DashboardQuery.Sort sort,
+                            @RequestParam(value = "status", required = false) LinkStatus status,
+                            @RequestParam(value = "expiration", defaultValue = "ALL") DashboardQuery.Expiration expiration,
+                            @RequestParam(value = "minClicks", defaultValue = "0") int minClicks,
+                            @RequestParam(value = "cursor", required = false) String cursor,
+                            @RequestParam(value = "q", required = false) String searchQuery,
+                            Model model, @AuthenticationPrincipal User user) {
         if (user == null) {
             return "redirect:/login";
         }
         model.addAttribute("username", user.getUsername());
-        List<UrlMapping> userUrls = urlMappingRepository.findAllByUser(user);
-        model.addAttribute("urls", userUrls);
+        DashboardQuery query = new DashboardQuery(sort, status, expiration, minClicks, cursor);
+        if (searchQuery != null && !searchQuery.isBlank()) {
+            // 検索時は新しい順の上位1ページ分だけを表示する
+            List<Long> ids = linkSearchIndex.search(user.getId(), searchQuery, dashboardQueryService.getPageSize());
+            model.addAttribute("urls", dashboardQueryService.findLinksByIds(user.getId(), ids));
+            model.addAttribute("nextCursor", null);
+        } else {
+            DashboardPage page = dashboardQueryService.findLinks(user.getId(), query, LocalDateTime.now());
+            model.addAttribute("urls", page.links());
+            model.addAttribute("nextCursor", page.nextCursor());
+        }
+        model.addAttribute("q", searchQuery);
+        model.addAttribute("query", query);
+        model.addAttribute("statuses", LinkStatus.values());
         return "dashboard";
     }
 
@@ -81,72 +134,72 @@ public class ShortUrlApplication {
             return "redirect:/login";
         }
 
-        String shortCode;
-        if (customCode != null && !customCode.trim().isEmpty()) {
-            if (urlMappingRepository.findByShortCode(customCode).isPresent()) {
-                redirectAttributes.addFlashAttribute("error", "このカスタムURLはすでに使用されています: " + customCode);
-                return "redirect:/dashboard";
-            }
-            shortCode = customCode.trim();
-        } else {
-            do {
-                shortCode = UUID.randomUUID().toString().substring(0, 6);
-            } while (urlMappingRepository.findByShortCode(shortCode).isPresent());
+        boolean custom = customCode != null && !customCode.trim().isEmpty();
+        if (custom && RedirectFilter.isReserved(customCode.trim())) {
+            redirectAttributes.addFlashAttribute("error", "このカスタムURLは使用できません: " + customCode);
+            return "redirect:/dashboard";
+        }
+        // フィルタで存在しないと分かるコードはDBで確かめない
+        if (custom && shortCodeFilter.mightContain(customCode.trim())
+                && urlMappingRepository.findByShortCode(customCode.trim()).isPresent()) {
+            redirectAttributes.addFlashAttribute("error", "このカスタムURLはすでに使用されています: " + customCode);
+            return "redirect:/dashboard";
         }
 
-        UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl);
-        if (expirationTimestamp != null) {
-            urlMapping.setExpirationTimestamp(expirationTimestamp);
+        // 自動生成のコードは重複しないので存在確認はしない。
+        // まれにカスタムURLと同じ文字列になった場合だけ、一意制約違反を受けて次のコードで作り直す
+        for (int attempt = 0; attempt < 5; attempt++) {
+            String shortCode = custom ? customCode.trim() : shortCodeGenerator.nextCode();
+            UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl);
+            if (expirationTimestamp != null) {
+                urlMapping.setExpirationTimestamp(expirationTimestamp);
+            }
+            urlMapping.setUser(user);
+            try {
+                urlMappingRepository.save(urlMapping);
+            } catch (DataIntegrityViolationException e) {
+                if (custom) {
+                    redirectAttributes.addFlashAttribute("error", "このカスタムURLはすでに使用されています: " + customCode);
+                    return "redirect:/dashboard";
+                }
+                continue;
+            }
+            redirectCache.invalidate(shortCode);
+            shortCodeFilter.add(shortCode);
+            linkSearchIndex.put(user.getId(), urlMapping.getId(), shortCode, urlMapping.getOriginalUrl());
+            linkExpiryService.schedule(urlMapping.getId(), shortCode, urlMapping.getExpirationTimestamp());
+            return "redirect:/dashboard";
         }
-        urlMapping.setUser(user);
-        urlMappingRepository.save(urlMapping);
 
+        redirectAttributes.addFlashAttribute("error", "短縮URLを作成できませんでした。もう一度お試しください。");
         return "redirect:/dashboard";
     }
 
     @GetMapping("/{shortCode}")
-    public String redirectToOriginalUrl(@PathVariable("shortCode") String shortCode, HttpServletRequest request) {
-        Optional<UrlMapping> urlMappingOptional = urlMappingRepository.findByShortCode(shortCode);
-
-        if (urlMappingOptional.isPresent()) {
-            UrlMapping urlMapping = urlMappingOptional.get();
-
-            if (urlMapping.getExpirationTimestamp() != null && LocalDateTime.now().isAfter(urlMapping.getExpirationTimestamp())) {
-                return "expired";
-            }
-
-            String ipAddress = request.getRemoteAddr();
-            if ("0:0:0:0:0:0:0:1".equals(ipAddress) || "127.0.0.1".equals(ipAddress)) {
-                ipAddress = "8.8.8.8";
-            }
-
-            String apiUrl = "http://ip-api.com/json/" + ipAddress;
-            RestTemplate restTemplate = new RestTemplate();
-            IpApiResponse response = restTemplate.getForObject(apiUrl, IpApiResponse.class);
+    public ModelAndView redirectToOriginalUrl(@PathVariable("shortCode") String shortCode, HttpServletRequest request) {
+        return redirectTimer.record(() -> redirect(shortCode, request));
+    }
 
-            String country = (response != null && response.getCountry() != null) ? response.getCountry() : "Unknown";
-            String city = (response != null && response.getCity() != null) ? response.getCity() : "Unknown";
+    private ModelAndView redirect(String shortCode, HttpServletRequest request) {
+        Optional<RedirectTarget> targetOptional = lookupTimer.record(() -> redirectCache.resolve(shortCode));
 
-            String referrer = request.getHeader("Referer");
-            if (referrer == null || referrer.isEmpty()) {
-                referrer = "Direct";
-            }
+        if (targetOptional.isPresent()) {
+            RedirectTarget target = targetOptional.get();
 
-            String userAgent = request.getHeader("User-Agent");
-            String deviceType = "Desktop";
-            if (userAgent != null && (userAgent.toLowerCase().contains("mobile") || userAgent.toLowerCase().contains("android") || userAgent.toLowerCase().contains("iphone"))) {
-                deviceType = "Mobile";
+            LocalDateTime now = LocalDateTime.now();
+            if (target.isExpired(now)) {
+                expiredCounter.increment();
+                return new ModelAndView("expired");
             }
 
-            ClickEvent clickEvent = new ClickEvent(urlMapping, LocalDateTime.now(), country, city, referrer, deviceType, ipAddress);
-            clickEventRepository.save(clickEvent);
-
-            urlMapping.incrementClickCount();
-            urlMappingRepository.save(urlMapping);
-
-            return "redirect:" + urlMapping.getOriginalUrl();
+            clickTracker.record(target, request, now);
+            redirectedCounter.increment();
+            // ステータスコードとキャッシュ関連ヘッダーはリンクの設定に従う（RedirectFilter と同じ）
+            View redirectView = (model, viewRequest, response) -> redirectResponder.send(response, target, now);
+            return new ModelAndView(redirectView);
         } else {
-            return "error/404";
+            notFoundCounter.increment();
+            return new ModelAndView("error/404");
         }
     }
 
@@ -154,6 +207,10 @@ public class ShortUrlApplication {
     @GetMapping("/analytics/{shortCode}")
     public String showAnalytics(@PathVariable("shortCode") String shortCode,
                                 @RequestParam(defaultValue = "0") int page,
+                                @RequestParam(value = "from", required = false)
+                                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                @RequestParam(value = "to", required = false)
+                                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
                                 @AuthenticationPrincipal User currentUser,
                                 Model model) {
         Optional<UrlMapping> urlMappingOptional = urlMappingRepository.findByShortCode(shortCode);
@@ -164,56 +221,40 @@ public class ShortUrlApplication {
                 return "error/404";
             }
 
+            urlMapping.setPendingClickCount(clickCounter.getPendingCount(urlMapping.getId()));
             model.addAttribute("urlMapping", urlMapping);
             Pageable pageable = PageRequest.of(page, 10);
-            Page<ClickEvent> clickEventsPage = clickEventRepository.findByUrlMappingOrderByClickTimestampDesc(urlMapping, pageable);
+            Page<ClickEvent> clickEventsPage = clickEventStore.findRecent(urlMapping.getId(), pageable);
             model.addAttribute("clickEventsPage", clickEventsPage);
 
-            List<ClickEvent> allClickEvents = clickEventRepository.findAllByUrlMapping(urlMapping);
+            // 期間の指定がなければ今日までの7日間
+            LocalDate rangeTo = (to != null) ? to : LocalDate.now();
+            LocalDate rangeFrom = AnalyticsQueryService.rangeStart(from, rangeTo);
 
-            long uniqueUserCount = allClickEvents.stream()
-                    .map(ClickEvent::getIpAddress)
-                    .distinct()
-                    .count();
-            model.addAttribute("uniqueUserCount", uniqueUserCount);
+            AnalyticsSummary summary = analyticsQueryService.summarize(urlMapping.getId(), rangeFrom, rangeTo);
+            model.addAttribute("from", rangeFrom);
+            model.addAttribute("to", rangeTo);
 
-            long desktopCount = allClickEvents.stream().filter(e -> "Desktop".equals(e.getDeviceType())).count();
-            long mobileCount = allClickEvents.stream().filter(e -> "Mobile".equals(e.getDeviceType())).count();
-            model.addAttribute("desktopCount", desktopCount);
-            model.addAttribute("mobileCount", mobileCount);
+            // ユニーク訪問者数は HyperLogLog の近似値（少ないうちは正確な値）
+            model.addAttribute("uniqueUserCount", analyticsQueryService.countUniqueVisitors(urlMapping.getId()));
+            model.addAttribute("rangeUniqueUserCount", summary.uniqueVisitors());
 
-            // ▼▼▼ 日別クリック数の計算ロジックをここから変更 ▼▼▼
+            model.addAttribute("desktopCount", summary.devices().desktopCount());
+            model.addAttribute("mobileCount", summary.devices().mobileCount());
+            model.addAttribute("topCountries", summary.topCountries());
+            model.addAttribute("topReferrers", summary.topReferrers());
 
-            // 1. まずは今まで通り、日付ごとのクリック数を集計しておく
-            Map<String, Long> clicksByDate = allClickEvents.stream()
-                    .collect(Collectors.groupingBy(
-                            e -> e.getClickTimestamp().toLocalDate().format(DateTimeFormatter.ofPattern("MM/dd")),
-                            Collectors.counting()
-                    ));
-
-            // 2. グラフに表示するラベルとデータを入れるための空のリストを用意
             List<String> dateLabels = new ArrayList<>();
             List<Long> clickCounts = new ArrayList<>();
-
-            // 3. 今日から3日後までの4日間をループ処理
-            LocalDate today = LocalDate.now();
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd");
-            for (int i = 0; i < 4; i++) {
-                LocalDate currentDate = today.plusDays(i);
-                String formattedDate = currentDate.format(formatter);
-
-                // ラベルリストに日付を追加
-                dateLabels.add(formattedDate);
-
-                // 集計したマップから該当日付のクリック数を取得（なければ0）して、データリストに追加
-                clickCounts.add(clicksByDate.getOrDefault(formattedDate, 0L));
+            for (DailyCount daily : summary.dailyCounts()) {
+                dateLabels.add(daily.date().format(formatter));
+                clickCounts.add(daily.clicks());
             }
 
             model.addAttribute("dateLabels", dateLabels);
             model.addAttribute("clickCounts", clickCounts);
 
-            // ▲▲▲ 日別クリック数の計算ロジックの変更はここまで ▲▲▲
-
             return "analytics";
         } else {
             return "error/404";
@@ -231,6 +272,7 @@ public class ShortUrlApplication {
                 return "error/404";
             }
             model.addAttribute("urlMapping", urlMapping);
+            model.addAttribute("redirectTypes", RedirectType.values());
             return "edit";
         } else {
             return "error/404";
@@ -240,6 +282,8 @@ public class ShortUrlApplication {
     @PostMapping("/update")
     public String updateUrl(@RequestParam("shortCode") String shortCode,
                             @RequestParam("originalUrl") String newOriginalUrl,
+                            @RequestParam(value = "redirectType", defaultValue = "FOUND") RedirectType redirectType,
+                            @RequestParam(value = "edgeCacheable", defaultValue = "false") boolean edgeCacheable,
                             @AuthenticationPrincipal User currentUser,
                             RedirectAttributes redirectAttributes) {
         Optional<UrlMapping> urlMappingOptional = urlMappingRepository.findByShortCode(shortCode);
@@ -248,8 +292,9 @@ public class ShortUrlApplication {
             if (currentUser == null || urlMapping.getUser() == null || !urlMapping.getUser().getId().equals(currentUser.getId())) {
                 return "error/404";
             }
-            urlMapping.setOriginalUrl(newOriginalUrl);
-            urlMappingRepository.save(urlMapping);
+            urlMappingRepository.updateTarget(urlMapping.getId(), newOriginalUrl, redirectType, edgeCacheable);
+            redirectCache.invalidate(shortCode);
+            linkSearchIndex.put(currentUser.getId(), urlMapping.getId(), shortCode, newOriginalUrl);
             return "redirect:/analytics/" + shortCode;
         } else {
             return "error/404";
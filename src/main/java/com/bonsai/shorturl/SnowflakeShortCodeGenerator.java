@@ -0,0 +1,54 @@
+package com.bonsai.shorturl;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 時刻(41bit)・ノードID(10bit)・ミリ秒内の連番(12bit)を組み合わせたIDを62進数にする
+// ノードごとにIDが分かれるので、複数インスタンスでもDBを介さずに重複しないコードを作れる
+public class SnowflakeShortCodeGenerator implements ShortCodeGenerator {
+
+    private static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    // (経過ミリ秒 << SEQUENCE_BITS) | 連番 を1つの long で持ち、CASで更新する
+    private final AtomicLong lastState = new AtomicLong();
+
+    public SnowflakeShortCodeGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("nodeId must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String nextCode() {
+        return Base62.encode(nextId());
+    }
+
+    long nextId() {
+        while (true) {
+            long previous = lastState.get();
+            long previousTime = previous >>> SEQUENCE_BITS;
+            long now = System.currentTimeMillis() - EPOCH;
+            long next;
+            if (now > previousTime) {
+                next = now << SEQUENCE_BITS;
+            } else if ((previous & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                // 同じミリ秒内（または時計が戻った場合）は前回の時刻のまま連番を進める
+                next = previous + 1;
+            } else {
+                // 連番を使い切ったら、前回の時刻の次のミリ秒として扱う
+                next = (previousTime + 1) << SEQUENCE_BITS;
+            }
+            if (lastState.compareAndSet(previous, next)) {
+                long time = next >>> SEQUENCE_BITS;
+                long sequence = next & SEQUENCE_MASK;
+                return (time << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.bonsai.shorturl;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+
+// spring.main.lazy-initialization=true（fast-start プロファイル）にしても、定期ジョブや起動時の読み込みを持つ Bean は起動時に作る。
+// 遅延させると、どこからも参照されないジョブは動かず、キャッシュの復元や Bloom フィルタの読み込みが最初のリクエストまで遅れる
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerLifecycleBeans() {
+        return (beanName, beanDefinition, beanType) -> beanType != null && hasLifecycleMethods(beanType);
+    }
+
+    private static boolean hasLifecycleMethods(Class<?> beanType) {
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(beanType)) {
+            if (method.isAnnotationPresent(Scheduled.class) || method.isAnnotationPresent(PostConstruct.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,10 +5,21 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
+// user_id から始まる3つはダッシュボードの並び順ごとのキーセットページング用（DashboardQueryService）
+@Table(indexes = {
+        @Index(name = "idx_url_mapping_next_check", columnList = "next_check_at"),
+        // LinkExpiryService が期限の近いリンクを読む
+        @Index(name = "idx_url_mapping_expiration", columnList = "expiration_timestamp"),
+        @Index(name = "idx_url_mapping_user", columnList = "user_id, id"),
+        @Index(name = "idx_url_mapping_user_clicks", columnList = "user_id, click_count, id"),
+        @Index(name = "idx_url_mapping_user_expiration", columnList = "user_id, expiration_timestamp, id")
+})
 public class UrlMapping {
 
+    // IDENTITY だとINSERTごとにIDを取得する必要がありJDBCバッチが効かないので、シーケンスを使う
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "url_mapping_seq")
+    @SequenceGenerator(name = "url_mapping_seq", sequenceName = "url_mapping_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true)
@@ -16,13 +27,34 @@ public class UrlMapping {
 
     private String originalUrl;
 
+    // ClickCounter が click_count = click_count + ? で加算する。エンティティの save では書き込まない
+    @Column(name = "click_count", updatable = false)
     private int clickCount = 0;
 
+    // まだDBに反映されていないクリック数（ClickCounter が保持している分）
+    @Transient
+    private long pendingClickCount = 0;
+
+    @Column(name = "expiration_timestamp")
     private LocalDateTime expirationTimestamp;
 
+    @Enumerated(EnumType.STRING)
+    private RedirectType redirectType = RedirectType.FOUND;
+
+    // true ならブラウザやCDNにリダイレクトのキャッシュを許可する。キャッシュから返された分のクリックは記録されない
+    private boolean edgeCacheable = false;
+
     @Enumerated(EnumType.STRING)
     private LinkStatus status = LinkStatus.UNCHECKED;
 
+    private LocalDateTime lastCheckedAt;
+
+    // 次にリンクチェックを行う日時。正常なリンクほど間隔を空ける
+    @Column(name = "next_check_at")
+    private LocalDateTime nextCheckAt;
+
+    private int consecutiveOkChecks = 0;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
@@ -55,8 +87,12 @@ public class UrlMapping {
         return clickCount;
     }
 
-    public void incrementClickCount() {
-        this.clickCount++;
+    public long getTotalClickCount() {
+        return clickCount + pendingClickCount;
+    }
+
+    public void setPendingClickCount(long pendingClickCount) {
+        this.pendingClickCount = pendingClickCount;
     }
 
     public LocalDateTime getExpirationTimestamp() {
@@ -67,6 +103,22 @@ public class UrlMapping {
         this.expirationTimestamp = expirationTimestamp;
     }
 
+    public RedirectType getRedirectType() {
+        return redirectType;
+    }
+
+    public void setRedirectType(RedirectType redirectType) {
+        this.redirectType = redirectType;
+    }
+
+    public boolean isEdgeCacheable() {
+        return edgeCacheable;
+    }
+
+    public void setEdgeCacheable(boolean edgeCacheable) {
+        this.edgeCacheable = edgeCacheable;
+    }
+
     public User getUser() {
         return user;
     }
@@ -82,4 +134,16 @@ public class UrlMapping {
     public void setStatus(LinkStatus status) {
         this.status = status;
     }
+
+    public LocalDateTime getLastCheckedAt() {
+        return lastCheckedAt;
+    }
+
+    public LocalDateTime getNextCheckAt() {
+        return nextCheckAt;
+    }
+
+    public int getConsecutiveOkChecks() {
+        return consecutiveOkChecks;
+    }
 }
\ No newline at end of file
@@ -1,7 +1,14 @@
 package com.bonsai.shorturl;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -9,4 +16,29 @@ public interface UrlMappingRepository extends JpaRepository<UrlMapping, Long> {
     Optional<UrlMapping> findByShortCode(String shortCode);
 
     List<UrlMapping> findAllByUser(User user);
-}
\ No newline at end of file
+
+    long countByStatus(LinkStatus status);
+
+    // チェック時期が来ているリンクを id 順に少しずつ取得する（id より後ろから続きを読む）。期限切れのリンクは除く
+    @Query("select new com.bonsai.shorturl.LinkCheckTarget(u.id, u.originalUrl, u.consecutiveOkChecks) from UrlMapping u "
+            + "where (u.nextCheckAt is null or u.nextCheckAt <= :now) and u.id > :afterId "
+            + "and u.status <> com.bonsai.shorturl.LinkStatus.EXPIRED "
+            + "and (u.expirationTimestamp is null or u.expirationTimestamp > :now) order by u.id")
+    List<LinkCheckTarget> findDueForCheck(@Param("now") LocalDateTime now, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select new com.bonsai.shorturl.LinkSearchEntry(u.id, u.shortCode, u.originalUrl) from UrlMapping u "
+            + "where u.user.id = :userId")
+    List<LinkSearchEntry> findSearchEntriesByUserId(@Param("userId") Long userId);
+
+    @Query("select u.shortCode from UrlMapping u where u.shortCode in :shortCodes")
+    List<String> findExistingShortCodes(@Param("shortCodes") Collection<String> shortCodes);
+
+    // リンクの転送先だけを書き換える。読み込んだエンティティを save すると、その後に加算された click_count や
+    // 期限切れ・チェック結果の status を読み込んだ時点の値で上書きしてしまう
+    @Modifying
+    @Transactional
+    @Query("update UrlMapping u set u.originalUrl = :originalUrl, u.redirectType = :redirectType, "
+            + "u.edgeCacheable = :edgeCacheable where u.id = :id")
+    int updateTarget(@Param("id") Long id, @Param("originalUrl") String originalUrl,
+                     @Param("redirectType") RedirectType redirectType, @Param("edgeCacheable") boolean edgeCacheable);
+}
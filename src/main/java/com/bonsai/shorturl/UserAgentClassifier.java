@@ -0,0 +1,147 @@
+package com.bonsai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// User-Agent からデバイス種別・OS・ブラウザ・ボットかどうかを判定する。
+// 判定語はあらかじめ小文字で持ち、先頭文字の一致を見てから regionMatches(ignoreCase) で比べるので、User-Agent をコピーしない。
+// 同じ User-Agent は何度も来るので、判定結果は LRU キャッシュに載せる（結果は規則の組み合わせごとの共有インスタンス）
+@Component
+public class UserAgentClassifier {
+
+    public static final String MOBILE = "Mobile";
+    public static final String DESKTOP = "Desktop";
+    // ボットのクリックはデバイス種別を "Bot" として保存し、集計から除く
+    public static final String BOT = "Bot";
+    public static final String OTHER = "Other";
+
+    // User-Agent ヘッダーがないクリック（判定できないのでこれまでどおり Desktop として数える）
+    public static final Classification NO_USER_AGENT = new Classification(DESKTOP, OTHER, OTHER, false);
+
+    // これより長い User-Agent はキャッシュしない（毎回違う長い値を送られてもキャッシュが膨らまないように）
+    private static final int MAX_CACHED_LENGTH = 512;
+
+    private static final Token[] BOT_TOKENS = tokens(
+            "bot", "crawler", "spider", "slurp", "facebookexternalhit", "whatsapp/", "headlesschrome", "lighthouse",
+            "curl/", "wget/", "python-", "java/", "go-http-client", "okhttp/", "axios/", "node-fetch", "libwww-perl");
+    private static final Token[] MOBILE_TOKENS = tokens("mobile", "android", "iphone");
+
+    // 上から順に最初に一致したものを使う（iOS の User-Agent には "Mac OS X"、Edge や Opera には "Chrome/" も含まれる）
+    private static final Rule[] OS_RULES = {
+            new Rule("Windows", tokens("windows")),
+            new Rule("iOS", tokens("iphone", "ipad", "ipod")),
+            new Rule("Android", tokens("android")),
+            new Rule("ChromeOS", tokens("cros ")),
+            new Rule("macOS", tokens("mac os x", "macintosh")),
+            new Rule("Linux", tokens("linux")),
+    };
+    private static final Rule[] BROWSER_RULES = {
+            new Rule("Edge", tokens("edg/", "edga/", "edgios/")),
+            new Rule("Opera", tokens("opr/", "opera")),
+            new Rule("Samsung Internet", tokens("samsungbrowser/")),
+            new Rule("Firefox", tokens("firefox/", "fxios/")),
+            new Rule("Chrome", tokens("chrome/", "crios/", "chromium/")),
+            new Rule("Safari", tokens("safari/")),
+    };
+
+    private final LruCache<String, Classification> cache;
+
+    public UserAgentClassifier(@Value("${shorturl.user-agent.cache-size:10000}") int cacheSize) {
+        this.cache = new LruCache<>(cacheSize, null);
+    }
+
+    public Classification classify(String userAgent) {
+        if (userAgent == null || userAgent.isEmpty()) {
+            return NO_USER_AGENT;
+        }
+        if (userAgent.length() > MAX_CACHED_LENGTH) {
+            return classifyUncached(userAgent);
+        }
+        Classification cached = cache.get(userAgent);
+        if (cached != null) {
+            return cached;
+        }
+        Classification classification = classifyUncached(userAgent);
+        cache.put(userAgent, classification);
+        return classification;
+    }
+
+    static Classification classifyUncached(String userAgent) {
+        boolean bot = matchesAny(userAgent, BOT_TOKENS);
+        String deviceType = bot ? BOT : matchesAny(userAgent, MOBILE_TOKENS) ? MOBILE : DESKTOP;
+        return Classification.of(deviceType, firstMatch(userAgent, OS_RULES), firstMatch(userAgent, BROWSER_RULES), bot);
+    }
+
+    public LruCache<String, Classification> getCache() {
+        return cache;
+    }
+
+    private static boolean matchesAny(String userAgent, Token[] tokens) {
+        for (Token token : tokens) {
+            if (token.foundIn(userAgent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String firstMatch(String userAgent, Rule[] rules) {
+        for (Rule rule : rules) {
+            if (matchesAny(userAgent, rule.tokens())) {
+                return rule.name();
+            }
+        }
+        return OTHER;
+    }
+
+    private static Token[] tokens(String... texts) {
+        Token[] tokens = new Token[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            tokens[i] = new Token(texts[i]);
+        }
+        return tokens;
+    }
+
+    public record Classification(String deviceType, String os, String browser, boolean bot) {
+
+        // キャッシュに同じ内容の結果をいくつも持たないよう、組み合わせごとに1つのインスタンスを返す
+        private static final ConcurrentHashMap<Classification, Classification> INSTANCES = new ConcurrentHashMap<>();
+
+        static Classification of(String deviceType, String os, String browser, boolean bot) {
+            Classification classification = new Classification(deviceType, os, browser, bot);
+            Classification existing = INSTANCES.putIfAbsent(classification, classification);
+            return existing != null ? existing : classification;
+        }
+    }
+
+    private record Rule(String name, Token[] tokens) {
+    }
+
+    // 小文字（ASCII）の判定語。大文字・小文字を区別せずに User-Agent の中を探す
+    private static final class Token {
+
+        private final String text;
+        private final char lower;
+        private final char upper;
+
+        Token(String text) {
+            this.text = text;
+            this.lower = text.charAt(0);
+            this.upper = Character.toUpperCase(lower);
+        }
+
+        boolean foundIn(String value) {
+            int length = text.length();
+            int last = value.length() - length;
+            for (int i = 0; i <= last; i++) {
+                char c = value.charAt(i);
+                if ((c == lower || c == upper) && value.regionMatches(true, i + 1, text, 1, length - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.bonsai.shorturl;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+// spring.threads.virtual.enabled=true（virtual-threads プロファイル）のときだけ読み込まれる。
+// Java 21 未満では Spring Boot がこの設定を黙って無視してしまうので、起動時に止める
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    static final int MINIMUM_JAVA_VERSION = 21;
+
+    public VirtualThreadConfig() {
+        int javaVersion = Runtime.version().feature();
+        if (javaVersion < MINIMUM_JAVA_VERSION) {
+            throw new IllegalStateException("spring.threads.virtual.enabled=true requires Java " + MINIMUM_JAVA_VERSION
+                    + " or later, but this JVM is Java " + javaVersion);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+
+// リンクの日ごと、およびリンク全期間のユニーク訪問者スケッチ（HyperLogLog）
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"url_mapping_id", "click_date"}))
+public class VisitorSketch {
+
+    // 全期間のスケッチは click_date にこの日付を入れて保存する（実際のクリック日とは重ならない）
+    public static final LocalDate ALL_TIME = LocalDate.EPOCH;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "url_mapping_id", nullable = false)
+    private Long urlMappingId;
+
+    @Column(name = "click_date", nullable = false)
+    private LocalDate clickDate;
+
+    @Column(nullable = false, length = 8192)
+    private byte[] sketch;
+
+    // 複数のノードから同じ行を更新しても上書きで訪問者が消えないよう、楽観ロックで更新する
+    @Column(nullable = false)
+    private long version;
+
+    public VisitorSketch() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUrlMappingId() {
+        return urlMappingId;
+    }
+
+    public LocalDate getClickDate() {
+        return clickDate;
+    }
+
+    public byte[] getSketch() {
+        return sketch;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,13 @@
+package com.bonsai.shorturl;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+public interface VisitorSketchRepository extends JpaRepository<VisitorSketch, Long> {
+    Optional<VisitorSketch> findByUrlMappingIdAndClickDate(Long urlMappingId, LocalDate clickDate);
+
+    List<VisitorSketch> findByUrlMappingIdAndClickDateBetween(Long urlMappingId, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,99 @@
+package com.bonsai.shorturl;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// クリックのIPアドレスをリンクごと・日ごとの HyperLogLog スケッチに加える
+@Service
+public class VisitorSketchService {
+
+    private static final int MAX_RETRIES = 5;
+    // ClickRollupService と同じく、行はキーの順に更新する（同時に走るバッチがデッドロックしないように）
+    private static final Comparator<SketchKey> SKETCH_ORDER =
+            Comparator.comparing(SketchKey::urlMappingId).thenComparing(SketchKey::clickDate);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VisitorSketchRepository visitorSketchRepository;
+
+    public VisitorSketchService(JdbcTemplate jdbcTemplate, VisitorSketchRepository visitorSketchRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.visitorSketchRepository = visitorSketchRepository;
+    }
+
+    // 呼び出し元（ClickEventWriter）のトランザクション内で実行される
+    public void apply(List<ClickRollupService.Click> clicks) {
+        Map<SketchKey, HyperLogLog> sketches = new TreeMap<>(SKETCH_ORDER);
+        for (ClickRollupService.Click click : clicks) {
+            if (click.ipAddress() == null) {
+                continue;
+            }
+            long hash = HyperLogLog.hash64(click.ipAddress());
+            sketches.computeIfAbsent(new SketchKey(click.urlMappingId(), click.clickDate()), key -> new HyperLogLog()).addHash(hash);
+            sketches.computeIfAbsent(new SketchKey(click.urlMappingId(), VisitorSketch.ALL_TIME), key -> new HyperLogLog()).addHash(hash);
+        }
+        sketches.forEach(this::mergeInto);
+    }
+
+    public long countUniqueVisitors(Long urlMappingId) {
+        return visitorSketchRepository.findByUrlMappingIdAndClickDate(urlMappingId, VisitorSketch.ALL_TIME)
+                .map(row -> HyperLogLog.fromBytes(row.getSketch()).cardinality())
+                .orElse(0L);
+    }
+
+    // 日ごとのスケッチをマージして、期間内のユニーク訪問者数を求める
+    public long countUniqueVisitors(Long urlMappingId, LocalDate from, LocalDate to) {
+        HyperLogLog merged = new HyperLogLog();
+        for (VisitorSketch row : visitorSketchRepository.findByUrlMappingIdAndClickDateBetween(urlMappingId, from, to)) {
+            merged.merge(HyperLogLog.fromBytes(row.getSketch()));
+        }
+        return merged.cardinality();
+    }
+
+    private void mergeInto(SketchKey key, HyperLogLog delta) {
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            StoredSketch stored = load(key);
+            if (stored == null) {
+                // 他のノード（またはスレッド）が先に作成していたら、読み直してマージする
+                if (Savepoints.runIgnoringDuplicateKey(jdbcTemplate, () -> jdbcTemplate.update(
+                        "insert into visitor_sketch (url_mapping_id, click_date, sketch, version) values (?, ?, ?, 0)",
+                        key.urlMappingId(), Date.valueOf(key.clickDate()), delta.toBytes()))) {
+                    return;
+                }
+                continue;
+            }
+            HyperLogLog merged = HyperLogLog.fromBytes(stored.sketch());
+            merged.merge(delta);
+            int updated = jdbcTemplate.update("update visitor_sketch set sketch = ?, version = version + 1 where id = ? and version = ?",
+                    merged.toBytes(), stored.id(), stored.version());
+            if (updated == 1) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Could not update visitor sketch for " + key + " after " + MAX_RETRIES + " attempts");
+    }
+
+    private StoredSketch load(SketchKey key) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    "select id, sketch, version from visitor_sketch where url_mapping_id = ? and click_date = ?",
+                    (rs, rowNum) -> new StoredSketch(rs.getLong(1), rs.getBytes(2), rs.getLong(3)),
+                    key.urlMappingId(), Date.valueOf(key.clickDate()));
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    private record SketchKey(Long urlMappingId, LocalDate clickDate) {
+    }
+
+    private record StoredSketch(long id, byte[] sketch, long version) {
+    }
+}
@@ -0,0 +1,139 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// source=rollup と source=events は同じクリックから同じ集計を返す。リポジトリはアプリと同じくJPAで動かす
+class AnalyticsQueryServiceTests {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final Map<String, GeoLocation> LOCATIONS = Map.of(
+            "203.0.113.1", new GeoLocation("JP", "Tokyo"),
+            "203.0.113.2", new GeoLocation("JP", "Osaka"),
+            "198.51.100.1", new GeoLocation("US", "Ashburn"));
+
+    private SingleConnectionDataSource dataSource;
+    private EntityManagerFactory entityManagerFactory;
+    private ClickEventWriter writer;
+    private AnalyticsQueryService rollups;
+    private AnalyticsQueryService events;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:analytics-query-test", "sa", "", true);
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan(ShortUrlApplication.class.getPackageName());
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(Map.of(
+                "hibernate.hbm2ddl.auto", "create",
+                "hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName(),
+                "hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName()));
+        factoryBean.afterPropertiesSet();
+        entityManagerFactory = factoryBean.getObject();
+        EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        JpaRepositoryFactory repositories = new JpaRepositoryFactory(entityManager);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        DailyClickRollupRepository dailyClickRollupRepository = repositories.getRepository(DailyClickRollupRepository.class);
+        DailyDimensionRollupRepository dailyDimensionRollupRepository =
+                repositories.getRepository(DailyDimensionRollupRepository.class);
+        ClickEventStore clickEventStore = new ClickEventStore(jdbcTemplate, new ClickDimensionDictionary(jdbcTemplate, 1000),
+                dailyClickRollupRepository, 100, "varbinary(16)", new LoopbackCacheInvalidationBus());
+        VisitorSketchService visitorSketchService = new VisitorSketchService(jdbcTemplate,
+                repositories.getRepository(VisitorSketchRepository.class));
+        // リダイレクト時と同じ経路で、クリックと日別集計・スケッチを書き込む
+        writer = new ClickEventWriter(clickEventStore, LOCATIONS::get, new ClickRollupService(jdbcTemplate),
+                visitorSketchService, new DataSourceTransactionManager(dataSource), 1, Duration.ofSeconds(10), false,
+                new SimpleMeterRegistry());
+        rollups = new AnalyticsQueryService(clickEventStore, dailyClickRollupRepository, dailyDimensionRollupRepository,
+                visitorSketchService, "rollup");
+        events = new AnalyticsQueryService(clickEventStore, dailyClickRollupRepository, dailyDimensionRollupRepository,
+                visitorSketchService, "events");
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+        entityManagerFactory.close();
+        new JdbcTemplate(dataSource).execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void rollupsAndEventsGiveSameSummary() {
+        List<PendingClick> clicks = new ArrayList<>();
+        // 期間より前の日と、期間内のクリックのない日（2, 4〜6日前）を含む
+        clicks.add(click(1L, 9, "203.0.113.1", "Direct", "Desktop"));
+        clicks.add(click(1L, 7, "203.0.113.1", "google.com", "Desktop"));
+        clicks.add(click(1L, 7, "203.0.113.2", "google.com", "Mobile"));
+        clicks.add(click(1L, 3, "203.0.113.1", "Direct", "Mobile"));
+        clicks.add(click(1L, 3, "198.51.100.1", "google.com", "Desktop"));
+        clicks.add(click(1L, 1, "203.0.113.2", "google.com", "Desktop"));
+        clicks.add(click(1L, 0, "203.0.113.1", "google.com", "Mobile"));
+        // ボットと他のリンクのクリックは数えない
+        clicks.add(click(1L, 0, "198.51.100.1", "Direct", UserAgentClassifier.BOT));
+        clicks.add(click(2L, 0, "198.51.100.1", "Direct", "Desktop"));
+        writer.write(clicks);
+
+        LocalDate from = TODAY.minusDays(7);
+        AnalyticsSummary summary = rollups.summarize(1L, from, TODAY);
+
+        assertEquals(new AnalyticsSummary(from, TODAY,
+                new DeviceBreakdown(3L, 3L),
+                List.of(new DailyCount(from, 2L), new DailyCount(TODAY.minusDays(6), 0L), new DailyCount(TODAY.minusDays(5), 0L),
+                        new DailyCount(TODAY.minusDays(4), 0L), new DailyCount(TODAY.minusDays(3), 2L),
+                        new DailyCount(TODAY.minusDays(2), 0L), new DailyCount(TODAY.minusDays(1), 1L), new DailyCount(TODAY, 1L)),
+                3,
+                List.of(new DimensionCount("JP", 5L), new DimensionCount("US", 1L)),
+                List.of(new DimensionCount("google.com", 5L), new DimensionCount("Direct", 1L))), summary);
+        assertEquals(summary, events.summarize(1L, from, TODAY));
+    }
+
+    @Test
+    void fillsRangeWithoutClicks() {
+        AnalyticsSummary empty = new AnalyticsSummary(TODAY.minusDays(2), TODAY, new DeviceBreakdown(0L, 0L),
+                List.of(new DailyCount(TODAY.minusDays(2), 0L), new DailyCount(TODAY.minusDays(1), 0L), new DailyCount(TODAY, 0L)),
+                0, List.of(), List.of());
+
+        assertEquals(empty, rollups.summarize(1L, TODAY.minusDays(2), TODAY));
+        assertEquals(empty, events.summarize(1L, TODAY.minusDays(2), TODAY));
+    }
+
+    @Test
+    void clampsRangeStart() {
+        LocalDate to = LocalDate.of(2024, 5, 31);
+
+        assertEquals(LocalDate.of(2024, 5, 25), AnalyticsQueryService.rangeStart(null, to));
+        assertEquals(LocalDate.of(2024, 5, 1), AnalyticsQueryService.rangeStart(LocalDate.of(2024, 5, 1), to));
+        assertEquals(to, AnalyticsQueryService.rangeStart(LocalDate.of(2024, 6, 1), to));
+        // 1年を超える期間は to の365日前から
+        assertEquals(LocalDate.of(2023, 6, 1), AnalyticsQueryService.rangeStart(LocalDate.of(2023, 6, 1), to));
+        assertEquals(LocalDate.of(2023, 6, 1), AnalyticsQueryService.rangeStart(LocalDate.of(2020, 1, 1), to));
+    }
+
+    private static PendingClick click(Long urlMappingId, int daysAgo, String ipAddress, String referrer, String deviceType) {
+        return new PendingClick(urlMappingId, TODAY.minusDays(daysAgo).atTime(12, 0), ipAddress, referrer, deviceType);
+    }
+}
@@ -0,0 +1,78 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 同じDBを共有する2つのノードから並行してコードを払い出す（スレッドごとに別の接続を使う）
+class BlockSequenceShortCodeGeneratorTests {
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:block-sequence-test;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table short_code_block (name varchar(64) primary key, next_value bigint not null)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("drop all objects");
+    }
+
+    @Test
+    void leasesConsecutiveBlocksFromInitialValue() {
+        BlockSequenceShortCodeGenerator generator = generator(3, 1000);
+
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            codes.add(generator.nextCode());
+        }
+
+        assertEquals(List.of(Base62.encode(1000), Base62.encode(1001), Base62.encode(1002), Base62.encode(1003)), codes);
+        // 2つ目のブロック（1003〜1005）を借りている
+        assertEquals(1006L, jdbcTemplate.queryForObject("select next_value from short_code_block", Long.class));
+    }
+
+    @Test
+    void nodesNeverHandOutTheSameCode() throws InterruptedException {
+        List<BlockSequenceShortCodeGenerator> nodes = List.of(generator(10, 1000), generator(10, 1000));
+        Set<String> codes = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            BlockSequenceShortCodeGenerator node = nodes.get(i % 2);
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 500; j++) {
+                    assertTrue(codes.add(node.nextCode()));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4000, codes.size());
+        long leased = jdbcTemplate.queryForObject("select next_value from short_code_block", Long.class) - 1000;
+        // 使い切っていないブロックはノードごとに高々1つ
+        assertTrue(leased >= 4000 && leased <= 4000 + 2 * 10, "leased " + leased);
+    }
+
+    private BlockSequenceShortCodeGenerator generator(int blockSize, long initialValue) {
+        return new BlockSequenceShortCodeGenerator(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+                blockSize, initialValue);
+    }
+}
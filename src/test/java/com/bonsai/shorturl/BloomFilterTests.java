@@ -0,0 +1,41 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTests {
+
+    @Test
+    void neverReportsAnAddedCodeAsAbsent() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("code-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("code-" + i));
+        }
+        assertEquals(10_000, filter.getInsertionCount());
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put(Base62.encode(i));
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("unknown-" + i)) {
+                falsePositives++;
+            }
+        }
+        // 目標の1%に対して、ばらつきを見込んで2%まで許容する
+        assertTrue(falsePositives < probes * 0.02, "false positives: " + falsePositives);
+        assertEquals(0.01, filter.estimatedFalsePositiveRate(), 0.005);
+        // 10万件・1%で約117KB
+        assertTrue(filter.sizeInBytes() < 125 * 1024);
+    }
+}
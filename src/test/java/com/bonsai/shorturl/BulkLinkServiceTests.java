@@ -0,0 +1,93 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// チャンクの一括INSERTが一意制約違反になったとき、1件ずつ登録し直す
+class BulkLinkServiceTests {
+
+    // DBに既にあるコード。"taken1" は過去にカスタムURLとして登録されたもの
+    private final Set<String> savedCodes = new HashSet<>(Set.of("taken1", "late1"));
+
+    @Test
+    void retriesGeneratedCodesThatCollideWithCustomCodes() {
+        Iterator<String> generated = List.of("taken1", "fresh1").iterator();
+        BulkLinkService service = service(generated::next);
+        User user = new User();
+        user.setId(1L);
+
+        List<BulkLinkResult> results = service.createChunk(List.of(
+                new BulkLinkRecord("https://example.com/a", null, null),
+                // 確認した後に他のリクエストが登録した
+                new BulkLinkRecord("https://example.com/b", "late1", null)), 1, user);
+
+        assertEquals(List.of(
+                BulkLinkResult.created(1, "https://example.com/a", "fresh1"),
+                BulkLinkResult.failed(2, "https://example.com/b", "customCode is already in use: late1")), results);
+    }
+
+    @Test
+    void givesUpAfterRepeatedCollisions() {
+        BulkLinkService service = service(() -> "taken1");
+        User user = new User();
+        user.setId(1L);
+
+        List<BulkLinkResult> results = service.createChunk(List.of(
+                new BulkLinkRecord("https://example.com/a", null, null)), 1, user);
+
+        assertEquals("error", results.get(0).status());
+    }
+
+    private BulkLinkService service(ShortCodeGenerator generator) {
+        CacheInvalidationBus bus = new LoopbackCacheInvalidationBus();
+        return new BulkLinkService(repository(), generator, proxy(EntityManager.class), transactionManager(),
+                new LinkSearchIndex(repository(), 10, bus),
+                new ShortCodeFilter(new JdbcTemplate(new DriverManagerDataSource()), false, 0, 0.01, Duration.ZERO, bus),
+                new LinkExpiryService(null, null, Duration.ofHours(1), new SimpleMeterRegistry()));
+    }
+
+    // 一括INSERTは必ず失敗させ、1件ずつの save は savedCodes と重なるコードだけ失敗させる
+    private UrlMappingRepository repository() {
+        return (UrlMappingRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UrlMappingRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "saveAllAndFlush" -> throw new DataIntegrityViolationException("duplicate short code");
+                    case "save" -> {
+                        UrlMapping mapping = (UrlMapping) args[0];
+                        if (!savedCodes.add(mapping.getShortCode())) {
+                            throw new DataIntegrityViolationException("duplicate short code");
+                        }
+                        yield mapping;
+                    }
+                    default -> List.of();
+                });
+    }
+
+    private static PlatformTransactionManager transactionManager() {
+        return (PlatformTransactionManager) Proxy.newProxyInstance(BulkLinkServiceTests.class.getClassLoader(),
+                new Class<?>[]{PlatformTransactionManager.class},
+                (proxy, method, args) -> method.getName().equals("getTransaction") ? new SimpleTransactionStatus() : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type) {
+        return (T) Proxy.newProxyInstance(BulkLinkServiceTests.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,181 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 同じDBを共有する2つのノードを1プロセス内に作って、通知とジョブのロックを確かめる
+class CacheInvalidationBusTests {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createTables() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:cache-invalidation-test", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table cache_invalidation (id bigint generated by default as identity primary key, "
+                + "topic varchar(32) not null, cache_key varchar(255) not null, origin varchar(128) not null, "
+                + "created_at timestamp not null)");
+        jdbcTemplate.execute("create table job_lock (name varchar(255) primary key, locked_until timestamp not null, "
+                + "locked_by varchar(128) not null)");
+    }
+
+    @AfterEach
+    void dropTables() {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void loopbackDeliversToOtherNodesOnly() {
+        LoopbackCacheInvalidationBus.Hub hub = new LoopbackCacheInvalidationBus.Hub();
+        LoopbackCacheInvalidationBus nodeA = new LoopbackCacheInvalidationBus(hub);
+        LoopbackCacheInvalidationBus nodeB = new LoopbackCacheInvalidationBus(hub);
+        LoopbackCacheInvalidationBus otherCluster = new LoopbackCacheInvalidationBus();
+        List<String> receivedByA = subscribe(nodeA);
+        List<String> receivedByB = subscribe(nodeB);
+        List<String> receivedByOther = subscribe(otherCluster);
+
+        nodeA.publish(CacheInvalidationBus.Topic.REDIRECT, "abc123");
+
+        assertEquals(List.of(), receivedByA);
+        assertEquals(List.of("abc123"), receivedByB);
+        assertEquals(List.of(), receivedByOther);
+    }
+
+    @Test
+    void jdbcBusDeliversPublishedKeysToOtherNodes() {
+        JdbcCacheInvalidationBus nodeA = jdbcBus("node-a");
+        JdbcCacheInvalidationBus nodeB = jdbcBus("node-b");
+        List<String> receivedByA = subscribe(nodeA);
+        List<String> receivedByB = subscribe(nodeB);
+
+        nodeA.publish(CacheInvalidationBus.Topic.REDIRECT, "abc123");
+        nodeA.publishAll(CacheInvalidationBus.Topic.REDIRECT, List.of("def456", "ghi789"));
+        nodeB.publish(CacheInvalidationBus.Topic.SHORT_CODE, "xyz000");
+        nodeA.poll();
+        nodeB.poll();
+        nodeB.poll();
+
+        assertEquals(List.of("xyz000"), receivedByA);
+        assertEquals(List.of("abc123", "def456", "ghi789"), receivedByB);
+    }
+
+    @Test
+    void jdbcBusWaitsForMissingIdsBeforeMovingOn() {
+        JdbcCacheInvalidationBus nodeB = jdbcBus("node-b");
+        List<String> receivedByB = subscribe(nodeB);
+
+        // id 1 はまだコミットされていない（または欠番になった）
+        insert(2, "second");
+        nodeB.poll();
+        insert(1, "first");
+        nodeB.poll();
+        nodeB.poll();
+
+        assertEquals(List.of("second", "first"), receivedByB);
+    }
+
+    @Test
+    void jdbcBusReportsSkippedIdsAsMissed() {
+        JobLockService jobLockService = new JobLockService(jdbcTemplate, true, "node-b", Duration.ofHours(1));
+        JdbcCacheInvalidationBus nodeB = new JdbcCacheInvalidationBus(jdbcTemplate, jobLockService, "node-b",
+                Duration.ZERO, Duration.ofHours(1), Duration.ofMinutes(10), Duration.ZERO);
+        nodeB.start();
+        AtomicBoolean missed = new AtomicBoolean();
+        nodeB.subscribeMissed(() -> missed.set(true));
+
+        insert(2, "second");
+        nodeB.poll();
+
+        assertTrue(missed.get());
+    }
+
+    @Test
+    void shortCodeFilterCatchesUpWithCodesCreatedOnOtherNodes() {
+        jdbcTemplate.execute("create table url_mapping (short_code varchar(32) not null)");
+        JdbcCacheInvalidationBus nodeA = jdbcBus("node-a");
+        JdbcCacheInvalidationBus nodeB = jdbcBus("node-b");
+        ShortCodeFilter filterB = new ShortCodeFilter(jdbcTemplate, true, 1000, 0.01, Duration.ZERO, nodeB);
+        filterB.load();
+
+        // node-b の定期的な読み込みより先にリダイレクトが来る
+        jdbcTemplate.update("insert into url_mapping (short_code) values ('new123')");
+        nodeA.publish(CacheInvalidationBus.Topic.SHORT_CODE, "new123");
+
+        assertTrue(filterB.mightContain("new123"));
+    }
+
+    @Test
+    void shortCodeFilterRebuildsAfterMissedInvalidations() {
+        jdbcTemplate.execute("create table url_mapping (short_code varchar(32) not null)");
+        ShortCodeFilter filter = new ShortCodeFilter(jdbcTemplate, true, 1000, 0.01, Duration.ZERO,
+                new LoopbackCacheInvalidationBus());
+        filter.load();
+        // 他のノードで登録されたが、通知が届かなかった
+        jdbcTemplate.update("insert into url_mapping (short_code) values ('lost12')");
+
+        filter.rebuildIfNeeded();
+        assertFalse(filter.mightContain("lost12"));
+
+        LoopbackCacheInvalidationBus bus = new LoopbackCacheInvalidationBus();
+        ShortCodeFilter clusterFilter = new ShortCodeFilter(jdbcTemplate, true, 1000, 0.01, Duration.ZERO, bus);
+        clusterFilter.load();
+        jdbcTemplate.update("insert into url_mapping (short_code) values ('lost34')");
+        bus.deliverMissed();
+        clusterFilter.rebuildIfNeeded();
+        assertTrue(clusterFilter.mightContain("lost34"));
+    }
+
+    @Test
+    void onlyOneNodeRunsLockedJob() {
+        JobLockService nodeA = new JobLockService(jdbcTemplate, true, "node-a", Duration.ofHours(1));
+        JobLockService nodeB = new JobLockService(jdbcTemplate, true, "node-b", Duration.ofHours(1));
+        AtomicBoolean ranOnB = new AtomicBoolean();
+
+        assertTrue(nodeA.runExclusively("job", Duration.ofMinutes(5), () -> {
+        }));
+        assertFalse(nodeB.runExclusively("job", Duration.ofMinutes(5), () -> ranOnB.set(true)));
+        assertFalse(ranOnB.get());
+
+        // lockAtLeastFor が切れたら他のノードも実行できる
+        jdbcTemplate.update("update job_lock set locked_until = ?", Timestamp.valueOf(LocalDateTime.now().minusMinutes(1)));
+        assertTrue(nodeB.runExclusively("job", Duration.ZERO, () -> ranOnB.set(true)));
+        assertTrue(ranOnB.get());
+    }
+
+    private JdbcCacheInvalidationBus jdbcBus(String nodeName) {
+        JobLockService jobLockService = new JobLockService(jdbcTemplate, true, nodeName, Duration.ofHours(1));
+        JdbcCacheInvalidationBus bus = new JdbcCacheInvalidationBus(jdbcTemplate, jobLockService, nodeName,
+                Duration.ofHours(1), Duration.ofHours(1), Duration.ofMinutes(10), Duration.ZERO);
+        bus.start();
+        return bus;
+    }
+
+    private void insert(long id, String key) {
+        jdbcTemplate.update("insert into cache_invalidation (id, topic, cache_key, origin, created_at) "
+                + "values (?, 'REDIRECT', ?, 'node-a', current_timestamp)", id, key);
+    }
+
+    private static List<String> subscribe(CacheInvalidationBus bus) {
+        List<String> received = new ArrayList<>();
+        for (CacheInvalidationBus.Topic topic : CacheInvalidationBus.Topic.values()) {
+            bus.subscribe(topic, received::add);
+        }
+        return received;
+    }
+}
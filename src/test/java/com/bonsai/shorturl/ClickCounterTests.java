@@ -0,0 +1,90 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClickCounterTests {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ClickCounter clickCounter;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:click-counter-test", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table url_mapping (id bigint primary key, click_count int not null)");
+        jdbcTemplate.update("insert into url_mapping (id, click_count) values (1, 0), (2, 0), (3, 0)");
+        clickCounter = new ClickCounter(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void keepsEveryClickWhileFlushingConcurrently() throws InterruptedException {
+        int threads = 8;
+        int clicksPerThread = 20_000;
+        AtomicBoolean done = new AtomicBoolean();
+        Thread flusher = new Thread(() -> {
+            while (!done.get()) {
+                clickCounter.flush();
+            }
+        });
+        flusher.start();
+
+        List<Thread> clickers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread clicker = new Thread(() -> {
+                for (int i = 0; i < clicksPerThread; i++) {
+                    clickCounter.increment(1L + (i % 3));
+                }
+            });
+            clickers.add(clicker);
+            clicker.start();
+        }
+        for (Thread clicker : clickers) {
+            clicker.join();
+        }
+        done.set(true);
+        flusher.join();
+        clickCounter.flush();
+
+        assertEquals(threads * clicksPerThread,
+                jdbcTemplate.queryForObject("select sum(click_count) from url_mapping", Long.class));
+        assertEquals(0, clickCounter.getPendingLinkCount());
+    }
+
+    @Test
+    void retriesFailedFlushOnce() {
+        clickCounter.increment(1L);
+        clickCounter.increment(1L);
+        clickCounter.increment(2L);
+
+        jdbcTemplate.execute("alter table url_mapping rename to url_mapping_away");
+        clickCounter.flush();
+        assertEquals(2, clickCounter.getPendingCount(1L));
+        assertEquals(1, clickCounter.getPendingCount(2L));
+
+        jdbcTemplate.execute("alter table url_mapping_away rename to url_mapping");
+        clickCounter.increment(1L);
+        clickCounter.flush();
+        clickCounter.flush();
+
+        assertEquals(3, jdbcTemplate.queryForObject("select click_count from url_mapping where id = 1", Integer.class));
+        assertEquals(1, jdbcTemplate.queryForObject("select click_count from url_mapping where id = 2", Integer.class));
+        assertEquals(0, clickCounter.getPendingCount(1L));
+    }
+}
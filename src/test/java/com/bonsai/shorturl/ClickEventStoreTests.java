@@ -0,0 +1,170 @@
+package com.bonsai.shorturl;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// 日別テーブルへの保存と、日をまたいだ読み出し
+class ClickEventStoreTests {
+
+    private static final String URL = "jdbc:h2:mem:click-event-store-test";
+    private static final LocalDate DAY1 = LocalDate.of(2024, 5, 1);
+    private static final LocalDate DAY2 = DAY1.plusDays(1);
+    private static final LocalDate DAY3 = DAY1.plusDays(2);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ClickDimensionDictionary dictionary;
+    private ClickEventStore clickEventStore;
+    private ClickRollupService clickRollupService;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource(URL, "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table daily_click_rollup (id bigint generated by default as identity primary key, "
+                + "url_mapping_id bigint not null, click_date date not null, clicks bigint not null, "
+                + "desktop_clicks bigint not null, mobile_clicks bigint not null, unique (url_mapping_id, click_date))");
+        jdbcTemplate.execute("create table daily_dimension_rollup (id bigint generated by default as identity primary key, "
+                + "url_mapping_id bigint not null, click_date date not null, dimension varchar(16) not null, "
+                + "dimension_value varchar(255) not null, clicks bigint not null, "
+                + "unique (url_mapping_id, click_date, dimension, dimension_value))");
+        jdbcTemplate.execute("create table click_partition (click_date date primary key)");
+        jdbcTemplate.execute("create table click_dimension (id int generated by default as identity primary key, "
+                + "dimension_value varchar(255) not null unique)");
+        dictionary = new ClickDimensionDictionary(jdbcTemplate, 10);
+        clickEventStore = new ClickEventStore(jdbcTemplate, dictionary, rollupRepository(), 100, "varbinary(16)",
+                new LoopbackCacheInvalidationBus());
+        clickRollupService = new ClickRollupService(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void pagesRecentClicksAcrossDaysWithoutBots() {
+        store(click(1L, DAY1.atTime(9, 0), "Desktop", "203.0.113.1"),
+                click(1L, DAY2.atTime(9, 0), "Desktop", "203.0.113.2"),
+                click(1L, DAY2.atTime(10, 0), UserAgentClassifier.BOT, "198.51.100.1"),
+                click(1L, DAY2.atTime(11, 0), "Mobile", "203.0.113.3"),
+                click(2L, DAY2.atTime(12, 0), "Desktop", "203.0.113.4"),
+                click(1L, DAY3.atTime(9, 0), "Desktop", "203.0.113.5"));
+
+        assertEquals(List.of(DAY1, DAY2, DAY3), List.copyOf(clickEventStore.getPartitions()));
+        Page<ClickEvent> first = clickEventStore.findRecent(1L, PageRequest.of(0, 2));
+        assertEquals(4, first.getTotalElements());
+        assertEquals(List.of(DAY3.atTime(9, 0), DAY2.atTime(11, 0)), times(first));
+        // 2ページ目は DAY3 を読まずに DAY2 の途中から始まる
+        Page<ClickEvent> second = clickEventStore.findRecent(1L, PageRequest.of(1, 2));
+        assertEquals(List.of(DAY2.atTime(9, 0), DAY1.atTime(9, 0)), times(second));
+        assertEquals("203.0.113.1", second.getContent().get(1).getIpAddress());
+    }
+
+    @Test
+    void readsOutsideTransactionWithSingleConnectionPool() {
+        store(click(1L, DAY1.atTime(9, 0), "Desktop", "203.0.113.1"),
+                click(1L, DAY2.atTime(9, 0), "Desktop", "203.0.113.2"));
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(URL);
+        config.setUsername("sa");
+        config.setMaximumPoolSize(1);
+        config.setConnectionTimeout(250);
+        try (HikariDataSource pool = new HikariDataSource(config)) {
+            // 分析ページと同じくトランザクションの外で読む。1回の読み込みで接続を2本借りると時間切れになる
+            ClickEventStore pooledStore = new ClickEventStore(new JdbcTemplate(pool), dictionary, rollupRepository(), 100,
+                    "varbinary(16)", new LoopbackCacheInvalidationBus());
+            pooledStore.loadPartitions();
+
+            Page<ClickEvent> recent = pooledStore.findRecent(1L, PageRequest.of(0, 10));
+
+            assertEquals(List.of(DAY2.atTime(9, 0), DAY1.atTime(9, 0)), times(recent));
+        }
+    }
+
+    @Test
+    void countsDistinctIpAddressesAcrossDays() {
+        store(click(1L, DAY1.atTime(9, 0), "Desktop", "203.0.113.1"),
+                click(1L, DAY2.atTime(9, 0), "Desktop", "203.0.113.1"),
+                click(1L, DAY2.atTime(10, 0), "Mobile", "2001:db8::1"),
+                click(1L, DAY2.atTime(11, 0), UserAgentClassifier.BOT, "198.51.100.1"),
+                click(2L, DAY3.atTime(9, 0), "Desktop", "203.0.113.9"));
+
+        assertEquals(2, clickEventStore.countDistinctIpAddress(1L, DAY1, DAY3));
+        assertEquals(1, clickEventStore.countDistinctIpAddress(1L, DAY1, DAY1));
+        assertEquals(0, clickEventStore.countDistinctIpAddress(1L, DAY3.plusDays(1), DAY3.plusDays(5)));
+    }
+
+    @Test
+    void treatsDaysDroppedByAnotherNodeAsEmpty() {
+        store(click(1L, DAY1.atTime(9, 0), "Desktop", "203.0.113.1"),
+                click(1L, DAY2.atTime(9, 0), "Desktop", "203.0.113.2"));
+        // 他のノードが保持期間を過ぎた DAY1 を削除したが、このノードにはまだ通知が届いていない
+        jdbcTemplate.update("delete from click_partition where click_date = ?", Date.valueOf(DAY1));
+        jdbcTemplate.execute("drop table click_event_20240501");
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.executeWithoutResult(status -> {
+            assertEquals(List.of(new DailyCount(DAY2, 1L)), clickEventStore.countByDay(1L, DAY1, DAY2));
+            assertEquals(1, clickEventStore.countDistinctIpAddress(1L, DAY1, DAY2));
+        });
+        assertEquals(List.of(DAY2), List.copyOf(clickEventStore.getPartitions()));
+    }
+
+    @Test
+    void storesNewReferrersAsOtherOnceDictionaryIsFull() {
+        for (int i = 0; i < 10; i++) {
+            dictionary.idOf("site" + i + ".example");
+        }
+
+        assertEquals("site3.example", clickEventStore.referrerOrOther("site3.example"));
+        assertEquals(Referrers.OTHER, clickEventStore.referrerOrOther("new.example"));
+    }
+
+    private void store(ClickEvent... events) {
+        clickEventStore.insert(clickEventStore.prepare(List.of(events)));
+        for (ClickEvent event : events) {
+            if (!event.isBot()) {
+                clickRollupService.apply(List.of(new ClickRollupService.Click(event.getUrlMappingId(),
+                        event.getClickTimestamp().toLocalDate(), event.getDeviceType(), event.getCountry(),
+                        event.getReferrer(), event.getIpAddress())));
+            }
+        }
+    }
+
+    private static ClickEvent click(Long urlMappingId, LocalDateTime clickedAt, String deviceType, String ipAddress) {
+        return new ClickEvent(urlMappingId, clickedAt, "JP", "Tokyo", "Direct", deviceType, ipAddress);
+    }
+
+    private static List<LocalDateTime> times(Page<ClickEvent> page) {
+        return page.getContent().stream().map(ClickEvent::getClickTimestamp).toList();
+    }
+
+    // findRecent が使う日別の件数だけを daily_click_rollup から返す
+    private DailyClickRollupRepository rollupRepository() {
+        return (DailyClickRollupRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DailyClickRollupRepository.class}, (proxy, method, args) -> jdbcTemplate.query(
+                        "select click_date, clicks from daily_click_rollup where url_mapping_id = ? "
+                                + "and click_date between ? and ? order by click_date",
+                        (rs, rowNum) -> new DailyCount(rs.getObject(1, LocalDate.class), rs.getLong(2)),
+                        args[0], args[1], args[2]));
+    }
+}
@@ -0,0 +1,23 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickExportControllerTests {
+
+    @Test
+    void acceptsGzipOnlyWithPositiveQuality() {
+        assertTrue(ClickExportController.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ClickExportController.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(ClickExportController.acceptsGzip("x-gzip"));
+        assertTrue(ClickExportController.acceptsGzip("*"));
+        assertFalse(ClickExportController.acceptsGzip("gzip;q=0"));
+        assertFalse(ClickExportController.acceptsGzip("gzip; q=0.000, deflate"));
+        // gzip が明示されていれば * より優先
+        assertFalse(ClickExportController.acceptsGzip("*;q=1, gzip;q=0"));
+        assertFalse(ClickExportController.acceptsGzip("identity"));
+        assertFalse(ClickExportController.acceptsGzip(null));
+    }
+}
@@ -0,0 +1,105 @@
+package com.bonsai.shorturl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickExportServiceTests {
+
+    private static final LocalDate DAY1 = LocalDate.of(2024, 5, 1);
+    private static final LocalDate DAY2 = DAY1.plusDays(1);
+    private static final LocalDate DAY3 = DAY1.plusDays(2);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ClickEventStore clickEventStore;
+    private ClickExportService clickExportService;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:click-export-test", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table click_partition (click_date date primary key)");
+        jdbcTemplate.execute("create table url_mapping (id bigint primary key, user_id bigint)");
+        jdbcTemplate.execute("insert into url_mapping (id, user_id) values (1, 7), (2, 8)");
+        jdbcTemplate.execute("create table click_dimension (id int generated by default as identity primary key, "
+                + "dimension_value varchar(255) not null unique)");
+        // 1ページ2件
+        clickEventStore = new ClickEventStore(jdbcTemplate, new ClickDimensionDictionary(jdbcTemplate, 1000), null, 2,
+                "varbinary(16)", new LoopbackCacheInvalidationBus());
+        clickExportService = new ClickExportService(clickEventStore, new ObjectMapper().registerModule(new JavaTimeModule()));
+        clickEventStore.insert(clickEventStore.prepare(List.of(
+                new ClickEvent(1L, DAY1.atTime(9, 0), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.1"),
+                new ClickEvent(2L, DAY1.atTime(9, 30), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.9"),
+                new ClickEvent(1L, DAY2.atTime(10, 0), "US", "Ashburn", "a.example", "Mobile", "203.0.113.2"),
+                new ClickEvent(1L, DAY3.atTime(11, 0), "JP", "Osaka, Kita", "Direct", "Desktop", null))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void exportsEachDayInOrder() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        clickExportService.exportLink(1L, "abc123", DAY1, DAY3, ClickExportService.Format.CSV, out);
+
+        assertEquals("""
+                short_code,clicked_at,country,city,referrer,device_type,ip_address
+                abc123,2024-05-01T09:00:00,JP,Tokyo,Direct,Desktop,203.0.113.1
+                abc123,2024-05-02T10:00:00,US,Ashburn,a.example,Mobile,203.0.113.2
+                abc123,2024-05-03T11:00:00,JP,"Osaka, Kita",Direct,Desktop,
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void pagesThroughDayWithoutSplittingSameTimeClicks() throws IOException {
+        LocalDate day = DAY1.plusDays(10);
+        clickEventStore.insert(clickEventStore.prepare(List.of(
+                new ClickEvent(1L, day.atTime(8, 0), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.1"),
+                // 2件目と3件目はページの境目をまたぐ同じ時刻のクリック
+                new ClickEvent(1L, day.atTime(8, 30), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.2"),
+                new ClickEvent(1L, day.atTime(8, 30), "JP", "Tokyo", "Direct", "Mobile", "203.0.113.3"),
+                new ClickEvent(1L, day.atTime(9, 0), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.4"),
+                new ClickEvent(1L, day.atTime(9, 30), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.5"),
+                new ClickEvent(2L, day.atTime(7, 0), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.9"))));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        clickExportService.exportLink(1L, "abc123", day, day, ClickExportService.Format.CSV, out);
+
+        List<String> ips = out.toString(StandardCharsets.UTF_8).lines().skip(1)
+                .map(line -> line.substring(line.lastIndexOf(',') + 1)).sorted().toList();
+        assertEquals(List.of("203.0.113.1", "203.0.113.2", "203.0.113.3", "203.0.113.4", "203.0.113.5"), ips);
+    }
+
+    @Test
+    void skipsDaysDroppedDuringExport() throws IOException {
+        // 他のノードが保持期間を過ぎた DAY1 を削除したが、このノードにはまだ通知が届いていない
+        jdbcTemplate.update("delete from click_partition where click_date = ?", Date.valueOf(DAY1));
+        jdbcTemplate.execute("drop table click_event_20240501");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        clickExportService.exportUser(7L, Map.of(1L, "abc123"), DAY1, DAY2, ClickExportService.Format.NDJSON, out);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"referrer\":\"a.example\""), lines.get(0));
+    }
+}
@@ -0,0 +1,131 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// キューが一杯のときの背圧の方針、停止時の書き切り、書き込み失敗時の再試行
+class ClickIngestionServiceTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    // 書き込まれたクリックの urlMappingId
+    private final List<Long> written = Collections.synchronizedList(new ArrayList<>());
+    // 残りこの回数だけ write を失敗させる
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final ClickEventWriter writer = new ClickEventWriter(null, null, null, null, null, 1, Duration.ZERO, false,
+            new SimpleMeterRegistry()) {
+        @Override
+        public void write(List<PendingClick> clicks) {
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("database is down");
+            }
+            clicks.forEach(click -> written.add(click.urlMappingId()));
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+    }
+
+    @Test
+    void dropOldestKeepsNewestClicks() throws InterruptedException {
+        ClickIngestionService service = service(3, BackpressurePolicy.DROP_OLDEST, 10, 0.8);
+        submit(service, 5);
+
+        assertEquals(3, service.getQueueSize());
+        assertEquals(2, service.getDroppedCount());
+        assertEquals(5, service.getAcceptedCount());
+
+        service.start();
+        service.stop();
+        assertEquals(List.of(3L, 4L, 5L), written);
+    }
+
+    @Test
+    void sampleDropsMostClicksAboveThreshold() {
+        // 閾値（5件）を超えたら、ほぼすべて捨てる
+        ClickIngestionService service = service(10, BackpressurePolicy.SAMPLE, Integer.MAX_VALUE, 0.5);
+        submit(service, 20);
+
+        assertEquals(5, service.getAcceptedCount());
+        assertEquals(15, service.getDroppedCount());
+        assertEquals(5, service.getQueueSize());
+    }
+
+    @Test
+    void blockWaitsForRoomInsteadOfDropping() throws InterruptedException {
+        ClickIngestionService service = service(2, BackpressurePolicy.BLOCK, 10, 0.8);
+        submit(service, 2);
+        Thread blocked = new Thread(() -> service.submit(click(3L)));
+        blocked.start();
+        blocked.join(200);
+        assertTrue(blocked.isAlive());
+
+        service.start();
+        blocked.join(5000);
+        service.stop();
+
+        assertEquals(0, service.getDroppedCount());
+        assertEquals(List.of(1L, 2L, 3L), written);
+    }
+
+    @Test
+    void stopDrainsQueuedClicks() throws InterruptedException {
+        ClickIngestionService service = service(1000, BackpressurePolicy.BLOCK, 10, 0.8);
+        submit(service, 1000);
+
+        service.start();
+        service.stop();
+
+        assertEquals(1000, written.size());
+        assertEquals(1000, service.getPersistedCount());
+        assertEquals(0, service.getQueueSize());
+    }
+
+    @Test
+    void retriesBatchUntilWriteSucceeds() throws InterruptedException {
+        ClickIngestionService service = service(100, BackpressurePolicy.BLOCK, 10, 0.8);
+        failuresLeft.set(2);
+        submit(service, 3);
+
+        service.start();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (service.getPersistedCount() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        service.stop();
+
+        assertEquals(List.of(1L, 2L, 3L), written);
+        assertEquals(6, service.getFailedCount());
+        assertEquals(0, service.getDroppedCount());
+    }
+
+    private ClickIngestionService service(int capacity, BackpressurePolicy policy, int sampleRate, double sampleThreshold) {
+        return new ClickIngestionService(writer, Optional.empty(), capacity, 500, Duration.ofMillis(20), policy,
+                sampleRate, sampleThreshold, Duration.ofSeconds(10));
+    }
+
+    // urlMappingId が 1, 2, ... のクリックを順に送る
+    private static void submit(ClickIngestionService service, int count) {
+        for (long id = 1; id <= count; id++) {
+            service.submit(click(id));
+        }
+    }
+
+    private static PendingClick click(Long urlMappingId) {
+        return new PendingClick(urlMappingId, NOW, "203.0.113.1", "Direct", "Desktop");
+    }
+}
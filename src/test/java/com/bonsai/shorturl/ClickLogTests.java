@@ -0,0 +1,110 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ClickLogTests {
+
+    private static final LocalDateTime CLICKED_AT = LocalDateTime.of(2024, 5, 1, 12, 30, 15, 250_000_000);
+
+    private Path directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("click-log-test");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    void readsBackAppendedClicks() throws IOException {
+        try (ClickLog clickLog = open()) {
+            clickLog.append(new PendingClick(42L, CLICKED_AT, "203.0.113.9", "www.google.com", "Mobile"));
+            clickLog.append(new PendingClick(43L, CLICKED_AT, "2001:db8::1", "Direct", "Desktop"));
+            clickLog.append(new PendingClick(44L, CLICKED_AT, null, null, null));
+
+            ClickLog.Batch batch = clickLog.read(0, 10);
+            assertEquals(3, batch.nextOffset());
+            assertEquals(new PendingClick(42L, CLICKED_AT, "203.0.113.9", "www.google.com", "Mobile"), batch.clicks().get(0));
+            assertEquals("2001:db8:0:0:0:0:0:1", batch.clicks().get(1).ipAddress());
+            assertNull(batch.clicks().get(2).ipAddress());
+            assertEquals("", batch.clicks().get(2).referrer());
+        }
+    }
+
+    @Test
+    void truncatesLongReferrerOnCharacterBoundary() throws IOException {
+        try (ClickLog clickLog = open()) {
+            clickLog.append(new PendingClick(1L, CLICKED_AT, null, "例".repeat(30), "Desktop"));
+
+            // 74バイトに収まる3バイト文字は24文字まで
+            assertEquals("例".repeat(24), clickLog.read(0, 1).clicks().get(0).referrer());
+        }
+    }
+
+    @Test
+    void replaysUncommittedClicksAfterRestart() throws IOException {
+        try (ClickLog clickLog = open()) {
+            for (long id = 0; id < 10; id++) {
+                clickLog.append(new PendingClick(id, CLICKED_AT, "203.0.113.9", "Direct", "Desktop"));
+            }
+            clickLog.commit(clickLog.read(0, 6).nextOffset());
+        }
+
+        try (ClickLog reopened = open()) {
+            assertEquals(6, reopened.getCommittedOffset());
+            assertEquals(10, reopened.getEndOffset());
+            List<PendingClick> replayed = reopened.read(reopened.getCommittedOffset(), 100).clicks();
+            assertEquals(List.of(6L, 7L, 8L, 9L), replayed.stream().map(PendingClick::urlMappingId).toList());
+
+            reopened.append(new PendingClick(10L, CLICKED_AT, null, "Direct", "Desktop"));
+            assertEquals(11, reopened.getEndOffset());
+        }
+    }
+
+    @Test
+    void deletesSegmentsOnceConsumed() throws IOException {
+        try (ClickLog clickLog = open()) {
+            for (long id = 0; id < 10; id++) {
+                clickLog.append(new PendingClick(id, CLICKED_AT, null, "Direct", "Desktop"));
+            }
+            assertEquals(3, segmentCount());
+
+            clickLog.commit(8);
+            assertEquals(1, segmentCount());
+            assertEquals(2, clickLog.getLag());
+            assertFalse(clickLog.read(8, 10).clicks().isEmpty());
+        }
+    }
+
+    private ClickLog open() throws IOException {
+        return ClickLog.open(directory, 4, ClickLog.FsyncPolicy.NONE, Duration.ofSeconds(1));
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+}
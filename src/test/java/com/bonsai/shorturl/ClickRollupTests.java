@@ -0,0 +1,150 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// 取り込み時の集計（UPDATE / INSERT）と、保存済みのクリックからの作り直し
+class ClickRollupTests {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final LocalDate PAST = TODAY.minusDays(3);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ClickEventStore clickEventStore;
+    private ClickRollupService clickRollupService;
+    private VisitorSketchService visitorSketchService;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:click-rollup-test", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table daily_click_rollup (id bigint generated by default as identity primary key, "
+                + "url_mapping_id bigint not null, click_date date not null, clicks bigint not null, "
+                + "desktop_clicks bigint not null, mobile_clicks bigint not null, unique (url_mapping_id, click_date))");
+        jdbcTemplate.execute("create table daily_dimension_rollup (id bigint generated by default as identity primary key, "
+                + "url_mapping_id bigint not null, click_date date not null, dimension varchar(16) not null, "
+                + "dimension_value varchar(255) not null, clicks bigint not null, "
+                + "unique (url_mapping_id, click_date, dimension, dimension_value))");
+        jdbcTemplate.execute("create table visitor_sketch (id bigint generated by default as identity primary key, "
+                + "url_mapping_id bigint not null, click_date date not null, sketch varbinary(8192) not null, "
+                + "version bigint not null, unique (url_mapping_id, click_date))");
+        jdbcTemplate.execute("create table click_partition (click_date date primary key)");
+        jdbcTemplate.execute("create table click_dimension (id int generated by default as identity primary key, "
+                + "dimension_value varchar(255) not null unique)");
+        clickEventStore = new ClickEventStore(jdbcTemplate, new ClickDimensionDictionary(jdbcTemplate, 1000), null, 100,
+                "varbinary(16)", new LoopbackCacheInvalidationBus());
+        clickRollupService = new ClickRollupService(jdbcTemplate);
+        visitorSketchService = new VisitorSketchService(jdbcTemplate, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void addsToExistingRollupRows() {
+        clickRollupService.apply(List.of(
+                click(1L, PAST, "Desktop", "JP"),
+                click(1L, PAST, "Mobile", "JP")));
+        clickRollupService.apply(List.of(
+                click(1L, PAST, "Mobile", "US"),
+                click(2L, PAST, "Desktop", "JP")));
+
+        assertEquals(Map.of("CLICKS", 3L, "DESKTOP_CLICKS", 1L, "MOBILE_CLICKS", 2L), dailyRollup(1L, PAST));
+        assertEquals(Map.of("CLICKS", 1L, "DESKTOP_CLICKS", 1L, "MOBILE_CLICKS", 0L), dailyRollup(2L, PAST));
+        assertEquals(2L, dimensionClicks(1L, PAST, "JP"));
+        assertEquals(1L, dimensionClicks(1L, PAST, "US"));
+    }
+
+    @Test
+    void updatesRowsInKeyOrder() {
+        // UPDATE した行のキー（url_mapping_id, click_date, dimension, dimension_value）を順に記録する
+        List<String> updatedKeys = new ArrayList<>();
+        JdbcTemplate recording = new JdbcTemplate(dataSource) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (sql.startsWith("update")) {
+                    // 日別は先頭3つ、次元別は先頭1つが加算するクリック数
+                    int keyStart = sql.contains("daily_click_rollup") ? 3 : 1;
+                    for (Object[] args : batchArgs) {
+                        updatedKeys.add(Arrays.stream(args, keyStart, args.length).map(String::valueOf)
+                                .collect(Collectors.joining(" ")));
+                    }
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+
+        new ClickRollupService(recording).apply(List.of(
+                click(2L, TODAY, "Desktop", "US"),
+                click(1L, TODAY, "Desktop", "US"),
+                click(2L, PAST, "Desktop", "JP"),
+                click(1L, TODAY, "Desktop", "DE")));
+
+        assertEquals(List.of(
+                "1 " + TODAY, "2 " + PAST, "2 " + TODAY,
+                "1 " + TODAY + " COUNTRY DE", "1 " + TODAY + " COUNTRY US", "1 " + TODAY + " REFERRER Direct",
+                "2 " + PAST + " COUNTRY JP", "2 " + PAST + " REFERRER Direct",
+                "2 " + TODAY + " COUNTRY US", "2 " + TODAY + " REFERRER Direct"), updatedKeys);
+    }
+
+    @Test
+    void backfillRebuildsPastDaysAndLeavesTodayToIngestion() {
+        store(new ClickEvent(1L, PAST.atTime(9, 0), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.1"),
+                new ClickEvent(1L, PAST.atTime(10, 0), "JP", "Tokyo", "Direct", "Mobile", "203.0.113.2"),
+                new ClickEvent(1L, PAST.atTime(11, 0), "US", "Ashburn", "Direct", UserAgentClassifier.BOT, "198.51.100.1"),
+                new ClickEvent(1L, LocalDateTime.now(), "JP", "Tokyo", "Direct", "Desktop", "203.0.113.3"));
+        // 過去の日の集計は壊れている。今日の分は取り込み時に集計済み
+        jdbcTemplate.update("insert into daily_click_rollup (url_mapping_id, click_date, clicks, desktop_clicks, mobile_clicks) "
+                + "values (1, ?, 99, 99, 0)", Date.valueOf(PAST));
+        clickRollupService.apply(List.of(click(1L, TODAY, "Desktop", "JP")));
+
+        new ClickRollupBackfillService(jdbcTemplate, clickEventStore, clickRollupService, visitorSketchService,
+                new DataSourceTransactionManager(dataSource), false).backfill();
+
+        assertEquals(Map.of("CLICKS", 2L, "DESKTOP_CLICKS", 1L, "MOBILE_CLICKS", 1L), dailyRollup(1L, PAST));
+        assertEquals(2L, dimensionClicks(1L, PAST, "JP"));
+        assertEquals(0L, dimensionClicks(1L, PAST, "US"));
+        assertEquals(Map.of("CLICKS", 1L, "DESKTOP_CLICKS", 1L, "MOBILE_CLICKS", 0L), dailyRollup(1L, TODAY));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "select count(*) from visitor_sketch where url_mapping_id = 1 and click_date = ?", Integer.class, Date.valueOf(PAST)));
+    }
+
+    private void store(ClickEvent... events) {
+        clickEventStore.insert(clickEventStore.prepare(List.of(events)));
+    }
+
+    private Map<String, Object> dailyRollup(Long urlMappingId, LocalDate day) {
+        return jdbcTemplate.queryForMap("select clicks, desktop_clicks, mobile_clicks from daily_click_rollup "
+                + "where url_mapping_id = ? and click_date = ?", urlMappingId, Date.valueOf(day));
+    }
+
+    private long dimensionClicks(Long urlMappingId, LocalDate day, String country) {
+        List<Long> clicks = jdbcTemplate.queryForList("select clicks from daily_dimension_rollup "
+                        + "where url_mapping_id = ? and click_date = ? and dimension = 'COUNTRY' and dimension_value = ?",
+                Long.class, urlMappingId, Date.valueOf(day), country);
+        return clicks.isEmpty() ? 0 : clicks.get(0);
+    }
+
+    private static ClickRollupService.Click click(Long urlMappingId, LocalDate day, String deviceType, String country) {
+        return new ClickRollupService.Click(urlMappingId, day, deviceType, country, "Direct", "203.0.113.1");
+    }
+}
@@ -0,0 +1,127 @@
+package com.bonsai.shorturl;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// キーセット方式のページングで、どの並び順でも全件を重複・抜けなくたどれることを確かめる
+class DashboardQueryServiceTests {
+
+    private static final String URL = "jdbc:h2:mem:dashboard-query-test;DB_CLOSE_DELAY=-1";
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    private SessionFactory sessionFactory;
+    private EntityManager entityManager;
+    private JdbcTemplate jdbcTemplate;
+    private ClickCounter clickCounter;
+    private DashboardQueryService dashboardQueryService;
+
+    @BeforeEach
+    void setUp() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(UrlMapping.class)
+                .setPhysicalNamingStrategy(new CamelCaseToUnderscoresNamingStrategy())
+                .setProperty("hibernate.connection.url", URL)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .buildSessionFactory();
+        entityManager = sessionFactory.createEntityManager();
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(URL, "sa", ""));
+        jdbcTemplate.update("insert into users (id, username, password) values (1, 'alice', 'x'), (2, 'bob', 'x')");
+        insert(1, 1, 5, null);
+        insert(2, 1, 9, NOW.plusDays(2));
+        insert(3, 1, 5, NOW.plusDays(1));
+        insert(4, 1, 0, null);
+        insert(5, 1, 9, NOW.plusDays(1));
+        insert(6, 1, 2, NOW.plusDays(3));
+        insert(7, 1, 5, null);
+        insert(8, 2, 100, null);
+        clickCounter = new ClickCounter(jdbcTemplate);
+        dashboardQueryService = new DashboardQueryService(entityManager, clickCounter, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityManager.close();
+        sessionFactory.close();
+        jdbcTemplate.execute("drop all objects");
+    }
+
+    @Test
+    void pagesThroughEverySortOrder() {
+        assertEquals(List.of(7L, 6L, 5L, 4L, 3L, 2L, 1L), allIds(DashboardQuery.Sort.NEWEST, 0));
+        assertEquals(List.of(5L, 2L, 7L, 3L, 1L, 6L, 4L), allIds(DashboardQuery.Sort.CLICKS, 0));
+        // 期限なしのリンクは最後。2ページ目の終わりで cursor が期限なしの行になる
+        assertEquals(List.of(3L, 5L, 2L, 6L, 1L, 4L, 7L), allIds(DashboardQuery.Sort.EXPIRATION, 0));
+        assertEquals(List.of(5L, 2L, 7L, 3L, 1L), allIds(DashboardQuery.Sort.CLICKS, 5));
+    }
+
+    @Test
+    void nextPageIsNotShiftedByNewLinks() {
+        DashboardPage first = page(DashboardQuery.Sort.NEWEST, null);
+        insert(100, 1, 0, null);
+
+        DashboardPage second = page(DashboardQuery.Sort.NEWEST, first.nextCursor());
+
+        assertEquals(List.of(4L, 3L, 2L), ids(second));
+    }
+
+    @Test
+    void ignoresBrokenCursors() {
+        assertEquals(List.of(5L, 2L, 7L), ids(page(DashboardQuery.Sort.CLICKS, "abc_x")));
+        assertEquals(List.of(3L, 5L, 2L), ids(page(DashboardQuery.Sort.EXPIRATION, "2024-13-01T00:00_3")));
+        assertEquals(List.of(7L, 6L, 5L), ids(page(DashboardQuery.Sort.NEWEST, "7_")));
+    }
+
+    @Test
+    void addsClicksNotYetFlushed() {
+        clickCounter.increment(7L);
+        clickCounter.increment(7L);
+
+        DashboardLink link = page(DashboardQuery.Sort.NEWEST, null).links().get(0);
+
+        assertEquals(7L, link.id());
+        assertEquals(7, link.getTotalClickCount());
+    }
+
+    private List<Long> allIds(DashboardQuery.Sort sort, int minClicks) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            DashboardPage page = dashboardQueryService.findLinks(1L,
+                    new DashboardQuery(sort, null, DashboardQuery.Expiration.ALL, minClicks, cursor), NOW);
+            ids.addAll(ids(page));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private DashboardPage page(DashboardQuery.Sort sort, String cursor) {
+        return dashboardQueryService.findLinks(1L, new DashboardQuery(sort, null, DashboardQuery.Expiration.ALL, 0, cursor), NOW);
+    }
+
+    private static List<Long> ids(DashboardPage page) {
+        return page.links().stream().map(DashboardLink::id).toList();
+    }
+
+    private void insert(long id, long userId, int clicks, LocalDateTime expiresAt) {
+        jdbcTemplate.update("insert into url_mapping (id, short_code, original_url, click_count, expiration_timestamp, "
+                        + "edge_cacheable, consecutive_ok_checks, status, user_id) values (?, ?, ?, ?, ?, false, 0, 'OK', ?)",
+                id, "c" + id, "https://example.com/" + id, clicks, expiresAt != null ? Timestamp.valueOf(expiresAt) : null, userId);
+    }
+}
@@ -0,0 +1,46 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTests {
+
+    @Test
+    void countsExactlyWhileSmall() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < HyperLogLog.EXACT_LIMIT; i++) {
+            sketch.add("192.168.0." + i);
+            sketch.add("192.168.0." + i);
+        }
+        assertTrue(sketch.isExact());
+        assertEquals(HyperLogLog.EXACT_LIMIT, sketch.cardinality());
+    }
+
+    @Test
+    void estimatesLargeCardinalityWithinErrorBound() {
+        HyperLogLog sketch = new HyperLogLog();
+        int visitors = 200_000;
+        for (int i = 0; i < visitors; i++) {
+            sketch.add("10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff));
+        }
+        assertFalse(sketch.isExact());
+        // 標準誤差は約1.6%なので、その3倍を許容範囲とする
+        assertEquals(visitors, sketch.cardinality(), visitors * 0.05);
+        assertEquals(4098, sketch.toBytes().length);
+    }
+
+    @Test
+    void mergedSketchesCountTheUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 30_000; i++) {
+            first.add("visitor-" + i);
+            second.add("visitor-" + (i + 15_000));
+        }
+        first.merge(HyperLogLog.fromBytes(second.toBytes()));
+        assertEquals(45_000, first.cardinality(), 45_000 * 0.05);
+    }
+}
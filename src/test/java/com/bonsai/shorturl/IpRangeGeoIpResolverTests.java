@@ -0,0 +1,94 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IpRangeGeoIpResolverTests {
+
+    private static final GeoLocation TOKYO = new GeoLocation("JP", "Tokyo");
+    private static final GeoLocation OSAKA = new GeoLocation("JP", "Osaka");
+    private static final GeoLocation TOP = new GeoLocation("ZZ", "Top");
+
+    @Test
+    void parsesIpv4Boundaries() {
+        assertEquals(0L, IpRangeGeoIpResolver.parseIpv4("0.0.0.0"));
+        assertEquals(0xffffffffL, IpRangeGeoIpResolver.parseIpv4("255.255.255.255"));
+        assertEquals(0xc0000201L, IpRangeGeoIpResolver.parseIpv4("192.0.2.1"));
+        assertEquals(10L, IpRangeGeoIpResolver.parseIpv4("0.0.0.010"));
+    }
+
+    @Test
+    void rejectsMalformedAndIpv6Addresses() {
+        for (String invalid : new String[]{"", "1.2.3", "1.2.3.4.5", "256.0.0.1", "1.2.3.1000", "1..2.3", ".1.2.3",
+                "1.2.3.", "1.2.3.-4", " 1.2.3.4", "a.b.c.d", "::1", "2001:db8::1", "::ffff:192.0.2.1"}) {
+            assertEquals(-1L, IpRangeGeoIpResolver.parseIpv4(invalid), invalid);
+        }
+    }
+
+    @Test
+    void findsRangeByBinarySearch() throws IOException {
+        // 行の順番はばらばらでも、読み込み時に開始アドレス順に並ぶ
+        IpRangeGeoIpResolver resolver = load("""
+                start_ip,end_ip,country,city
+                # 範囲の間には穴がある
+                "10.0.2.0","10.0.2.255","JP","Osaka"
+                10.0.0.0,10.0.0.255,JP,Tokyo
+                255.255.255.0,255.255.255.255,ZZ,Top
+                10.0.4.0,10.0.4.255,JP,Tokyo
+                """);
+
+        assertEquals(4, resolver.size());
+        assertEquals(TOKYO, resolver.resolve("10.0.0.0"));
+        assertEquals(TOKYO, resolver.resolve("10.0.0.255"));
+        assertEquals(OSAKA, resolver.resolve("10.0.2.128"));
+        assertEquals(TOKYO, resolver.resolve("10.0.4.1"));
+        // 範囲の間・前後
+        assertNull(resolver.resolve("10.0.1.0"));
+        assertNull(resolver.resolve("9.255.255.255"));
+        assertNull(resolver.resolve("10.0.5.0"));
+        // 符号付き int では負になるアドレス
+        assertEquals(TOP, resolver.resolve("255.255.255.255"));
+        assertNull(resolver.resolve("128.0.0.0"));
+        assertNull(resolver.resolve("::1"));
+        assertNull(resolver.resolve(null));
+        // 同じ国・都市は1つのインスタンスを共有する
+        assertSame(resolver.resolve("10.0.0.1"), resolver.resolve("10.0.4.1"));
+    }
+
+    @Test
+    void coversWholeAddressSpace() throws IOException {
+        IpRangeGeoIpResolver resolver = load("0.0.0.0,255.255.255.255,ZZ,Top\n");
+
+        assertEquals(TOP, resolver.resolve("0.0.0.0"));
+        assertEquals(TOP, resolver.resolve("127.255.255.255"));
+        assertEquals(TOP, resolver.resolve("255.255.255.255"));
+    }
+
+    @Test
+    void rejectsInvalidRows() {
+        assertThrows(IOException.class, () -> load("10.0.0.0,10.0.0.255,JP\n"));
+        assertThrows(IOException.class, () -> load("10.0.0.0,::1,JP,Tokyo\n"));
+        assertThrows(IOException.class, () -> load("10.0.1.0,10.0.0.255,JP,Tokyo\n"));
+    }
+
+    @Test
+    void emptyResolverFindsNothing() throws IOException {
+        assertNull(IpRangeGeoIpResolver.empty().resolve("10.0.0.1"));
+        assertEquals(0, load("start_ip,end_ip,country,city\n\n").size());
+    }
+
+    private static IpRangeGeoIpResolver load(String csv) throws IOException {
+        try (InputStream inputStream = new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))) {
+            return IpRangeGeoIpResolver.load(inputStream);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.lang.reflect.Proxy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LinkExpiryServiceTests {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private LinkExpiryService linkExpiryService;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:link-expiry-test", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table url_mapping (id bigint primary key, short_code varchar(32), "
+                + "expiration_timestamp timestamp, status varchar(16) not null, next_check_at timestamp)");
+        linkExpiryService = new LinkExpiryService(jdbcTemplate, redirectCache(), Duration.ofHours(1), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        linkExpiryService.stop();
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void marksLinksExpiredWhenTheirTimeComes() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        // 停止中に期限が過ぎたリンクは起動時に拾う
+        insert(1, now.minusMinutes(5));
+        insert(2, now.plusHours(2));
+        linkExpiryService.start();
+
+        insert(3, now.plusNanos(300_000_000));
+        linkExpiryService.schedule(3L, "c3", now.plusNanos(300_000_000));
+        // horizon より先の期限はキューに載せない
+        linkExpiryService.schedule(2L, "c2", now.plusHours(2));
+
+        awaitStatus(1, "EXPIRED");
+        awaitStatus(3, "EXPIRED");
+        assertEquals("OK", status(2));
+        assertEquals(null, jdbcTemplate.queryForObject("select next_check_at from url_mapping where id = 3", Timestamp.class));
+    }
+
+    @Test
+    void keepsLinksWhoseExpirationWasExtended() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        insert(1, now.plusNanos(200_000_000));
+        linkExpiryService.start();
+        linkExpiryService.schedule(1L, "c1", now.plusNanos(200_000_000));
+        jdbcTemplate.update("update url_mapping set expiration_timestamp = ? where id = 1", Timestamp.valueOf(now.plusDays(1)));
+
+        Thread.sleep(600);
+
+        assertEquals("OK", status(1));
+    }
+
+    private void insert(long id, LocalDateTime expiresAt) {
+        jdbcTemplate.update("insert into url_mapping (id, short_code, expiration_timestamp, status, next_check_at) "
+                + "values (?, ?, ?, 'OK', current_timestamp)", id, "c" + id, Timestamp.valueOf(expiresAt));
+    }
+
+    private String status(long id) {
+        return jdbcTemplate.queryForObject("select status from url_mapping where id = ?", String.class, id);
+    }
+
+    private void awaitStatus(long id, String expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!expected.equals(status(id)) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, status(id));
+    }
+
+    private RedirectCache redirectCache() {
+        UrlMappingRepository repository = (UrlMappingRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UrlMappingRepository.class}, (proxy, method, args) -> Optional.empty());
+        ShortCodeFilter disabledFilter = new ShortCodeFilter(jdbcTemplate, false, 0, 0.01, Duration.ZERO,
+                new LoopbackCacheInvalidationBus());
+        return new RedirectCache(repository, disabledFilter, new LoopbackCacheInvalidationBus(), 100, Duration.ofMinutes(10));
+    }
+}
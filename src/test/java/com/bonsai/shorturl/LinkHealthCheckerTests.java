@@ -0,0 +1,95 @@
+package com.bonsai.shorturl;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// ローカルのスタブサーバーに対してリンクチェックを行う
+class LinkHealthCheckerTests {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger okRequests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            okRequests.incrementAndGet();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.createContext("/get-only", exchange -> {
+            exchange.sendResponseHeaders("HEAD".equals(exchange.getRequestMethod()) ? 405 : 200, -1);
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void classifiesResponsesAndDeduplicatesUrls() {
+        LinkHealthChecker checker = new LinkHealthChecker(Duration.ofSeconds(2), 8, 4, null);
+
+        Map<String, LinkStatus> results = checker.checkAll(List.of(
+                baseUrl + "/ok", baseUrl + "/ok", baseUrl + "/missing", baseUrl + "/get-only",
+                "http://127.0.0.1:1/unreachable", "not a url"));
+
+        assertEquals(LinkStatus.OK, results.get(baseUrl + "/ok"));
+        assertEquals(LinkStatus.BROKEN, results.get(baseUrl + "/missing"));
+        assertEquals(LinkStatus.OK, results.get(baseUrl + "/get-only"));
+        assertEquals(LinkStatus.BROKEN, results.get("http://127.0.0.1:1/unreachable"));
+        assertEquals(LinkStatus.BROKEN, results.get("not a url"));
+        assertEquals(1, okRequests.get());
+    }
+
+    @Test
+    void limitsConcurrentRequestsPerHost() {
+        LinkHealthChecker checker = new LinkHealthChecker(Duration.ofSeconds(5), 16, 2, null);
+
+        List<String> urls = IntStream.range(0, 10)
+                .mapToObj(i -> baseUrl + "/slow?i=" + i)
+                .toList();
+        Map<String, LinkStatus> results = checker.checkAll(urls);
+
+        assertEquals(10, results.size());
+        assertTrue(results.values().stream().allMatch(status -> status == LinkStatus.OK));
+        assertTrue(maxInFlight.get() <= 2, "max in flight was " + maxInFlight.get());
+    }
+}
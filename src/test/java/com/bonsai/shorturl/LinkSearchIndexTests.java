@@ -0,0 +1,87 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LinkSearchIndexTests {
+
+    private static final Long USER_ID = 7L;
+
+    @Test
+    void tokenizesHostAndPathOnly() {
+        assertEquals(Set.of("www", "example", "com", "blog", "2024", "spring", "sale"),
+                LinkSearchIndex.tokenize("https://www.Example.com/blog/2024/spring-sale?utm_source=mail#top"));
+        assertEquals(Set.of("not", "a", "url"), LinkSearchIndex.tokenize("not a url"));
+        assertEquals(Set.of(), LinkSearchIndex.tokenize(null));
+    }
+
+    @Test
+    void matchesShortCodeAndTokenPrefixes() {
+        LinkSearchIndex index = new LinkSearchIndex(repository(List.of(
+                new LinkSearchEntry(1L, "Promo1", "https://shop.example.com/campaign/summer"),
+                new LinkSearchEntry(2L, "promo2", "https://docs.example.org/guide"),
+                new LinkSearchEntry(3L, "abc123", "https://shop.example.com/products"))), 10,
+                new LoopbackCacheInvalidationBus());
+
+        assertEquals(List.of(2L, 1L), index.search(USER_ID, "PROMO", 10));
+        assertEquals(List.of(3L, 1L), index.search(USER_ID, "sho", 10));
+        assertEquals(List.of(1L), index.search(USER_ID, "shop camp", 10));
+        assertEquals(List.of(2L), index.search(USER_ID, "promo", 1));
+        assertEquals(List.of(), index.search(USER_ID, "promo nothing", 10));
+    }
+
+    @Test
+    void matchesSubstringsInsideTokens() {
+        LinkSearchIndex index = new LinkSearchIndex(repository(List.of(
+                new LinkSearchEntry(1L, "a1", "https://example.com/newsletter-2024"),
+                new LinkSearchEntry(2L, "a2", "https://example.com/letters"),
+                new LinkSearchEntry(3L, "a3", "https://example.com/page-123"))), 10,
+                new LoopbackCacheInvalidationBus());
+
+        assertEquals(List.of(2L, 1L), index.search(USER_ID, "letter", 10));
+        assertEquals(List.of(1L), index.search(USER_ID, "sletter", 10));
+        // 区切り文字を含む語は、区切った語をすべて含むリンクだけ
+        assertEquals(List.of(3L), index.search(USER_ID, "page-123", 10));
+        // 3文字未満は前方一致だけ
+        assertEquals(List.of(), index.search(USER_ID, "et", 10));
+    }
+
+    @Test
+    void keepsLinksCreatedWhileIndexIsLoading() throws InterruptedException {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UrlMappingRepository repository = (UrlMappingRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UrlMappingRepository.class}, (proxy, method, args) -> {
+                    loading.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    // 読み始めた時点のリンクだけを返す
+                    return List.of(new LinkSearchEntry(1L, "old111", "https://example.com/old"));
+                });
+        LinkSearchIndex index = new LinkSearchIndex(repository, 10, new LoopbackCacheInvalidationBus());
+
+        Thread search = new Thread(() -> index.search(USER_ID, "example", 10));
+        search.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Thread create = new Thread(() -> index.put(USER_ID, 2L, "new222", "https://example.com/new"));
+        create.start();
+        Thread.sleep(100);
+        release.countDown();
+        search.join();
+        create.join();
+
+        assertEquals(List.of(2L, 1L), index.search(USER_ID, "example", 10));
+    }
+
+    private static UrlMappingRepository repository(List<LinkSearchEntry> entries) {
+        return (UrlMappingRepository) Proxy.newProxyInstance(LinkSearchIndexTests.class.getClassLoader(),
+                new Class<?>[]{UrlMappingRepository.class}, (proxy, method, args) -> entries);
+    }
+}
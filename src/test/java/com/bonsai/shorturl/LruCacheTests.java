@@ -0,0 +1,89 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LruCacheTests {
+
+    @Test
+    void evictsLeastRecentlyUsedInSmallCache() {
+        // 16件未満はセグメント1つなので厳密なLRU
+        LruCache<String, Integer> cache = new LruCache<>(3, Duration.ZERO);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.put("d", 4);
+
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void staysWithinMaxSizeAcrossSegments() {
+        LruCache<Integer, Integer> cache = new LruCache<>(1000, Duration.ZERO);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+
+        assertEquals(1000, cache.size());
+        assertEquals(9000, cache.getEvictionCount());
+        // 最後に入れたものはどのセグメントでも一番新しい
+        assertNotNull(cache.get(9999));
+    }
+
+    @Test
+    void listsRecentEntriesAcrossSegmentsNewestFirst() throws InterruptedException {
+        LruCache<String, Integer> cache = new LruCache<>(1000, Duration.ZERO);
+        for (int i = 0; i < 500; i++) {
+            cache.put("k" + i, i);
+        }
+        // どのセグメントに入るかに関係なく、使った順に返る
+        for (String key : List.of("k3", "k250", "k77", "k499", "k120")) {
+            Thread.sleep(1);
+            cache.get(key);
+        }
+
+        List<String> recent = cache.recentEntries(5).stream().map(LruCache.CachedEntry::key).toList();
+
+        assertEquals(List.of("k120", "k499", "k77", "k250", "k3"), recent);
+        assertEquals(500, cache.recentEntries(10000).size());
+    }
+
+    @Test
+    void skipsPutAfterInvalidateOrClear() {
+        LruCache<String, Integer> cache = new LruCache<>(100, Duration.ZERO);
+
+        long before = cache.invalidationCount("a");
+        cache.invalidate("a");
+        assertFalse(cache.putUnlessInvalidated("a", 1, before));
+        assertNull(cache.get("a"));
+
+        before = cache.invalidationCount("a");
+        assertTrue(cache.putUnlessInvalidated("a", 2, before));
+        cache.clear();
+        assertFalse(cache.putUnlessInvalidated("a", 3, before));
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void dropsEntriesOlderThanTtl() {
+        LruCache<String, Integer> cache = new LruCache<>(100, Duration.ofMinutes(10));
+
+        assertTrue(cache.put("fresh", 1, Duration.ofMinutes(1)));
+        assertFalse(cache.put("stale", 2, Duration.ofMinutes(11)));
+        assertFalse(cache.put("fresh", 3, Duration.ZERO));
+        assertEquals(1, cache.get("fresh"));
+        assertEquals(1, cache.getHitCount());
+    }
+}
@@ -0,0 +1,213 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 再起動したノードの最初のリダイレクトがどれだけキャッシュから返せるかを、スナップショットあり・なしで比べる
+class RedirectCacheSnapshotTests {
+
+    private static final int LINKS = 2000;
+    private static final int CACHE_SIZE = 1000;
+    private static final int SNAPSHOT_SIZE = 500;
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private Path directory;
+    // リポジトリ（DB）まで行ったリダイレクトの数
+    private final AtomicInteger databaseLookups = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:redirect-cache-snapshot-test", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table url_mapping (id bigint primary key, click_count bigint not null)");
+        List<Object[]> rows = new ArrayList<>();
+        for (long id = 1; id <= LINKS; id++) {
+            // id が小さいリンクほどよくクリックされている
+            rows.add(new Object[]{id, LINKS - id});
+        }
+        jdbcTemplate.batchUpdate("insert into url_mapping (id, click_count) values (?, ?)", rows);
+        directory = Files.createTempDirectory("redirect-cache-snapshot-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+        Files.deleteIfExists(directory.resolve("redirect-cache.snapshot"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    void warmStartServesHotLinksFromCache() {
+        Random random = new Random(42);
+        RedirectCache running = newCache();
+        for (int i = 0; i < 20000; i++) {
+            running.find(nextCode(random));
+        }
+        snapshot(running).save();
+
+        List<String> firstRequests = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            firstRequests.add(nextCode(random));
+        }
+
+        RedirectCache restarted = newCache();
+        snapshot(restarted).restore();
+        int restoredEntries = restarted.size();
+        assertNotNull(restarted.find(firstRequests.get(0)));
+        assertEquals(SNAPSHOT_SIZE, restoredEntries);
+
+        double warmHitRate = hitRate(restarted, firstRequests.subList(1, firstRequests.size()));
+        double coldHitRate = hitRate(newCache(), firstRequests.subList(1, firstRequests.size()));
+
+        assertTrue(warmHitRate > 0.4, "warm hit rate: " + warmHitRate);
+        assertTrue(warmHitRate > coldHitRate + 0.2, "warm hit rate: " + warmHitRate + ", cold hit rate: " + coldHitRate);
+    }
+
+    @Test
+    void skipsEntriesOlderThanTtl() throws IOException {
+        long now = System.currentTimeMillis();
+        RedirectTarget target = new RedirectTarget(1L, "https://example.com/", null, RedirectType.FOUND, false);
+        Files.write(directory.resolve("redirect-cache.snapshot"), RedirectCacheSnapshot.encode(List.of(
+                new LruCache.CachedEntry<>("fresh", target, Duration.ofMinutes(1)),
+                new LruCache.CachedEntry<>("stale", target, TTL.plusMinutes(1))), now));
+
+        RedirectCache restarted = newCache();
+        snapshot(restarted).restore();
+
+        assertEquals(1, restarted.size());
+        assertNotNull(restarted.find("fresh"));
+        assertEquals(0, databaseLookups.get());
+    }
+
+    @Test
+    void dropsLinksChangedSinceSnapshotOnOtherNodes() throws IOException {
+        JdbcCacheInvalidationBus bus = clusterBus(Duration.ofHours(1));
+        long savedAt = System.currentTimeMillis() - Duration.ofMinutes(5).toMillis();
+        RedirectTarget target = new RedirectTarget(1L, "https://example.com/", null, RedirectType.FOUND, false);
+        Files.write(directory.resolve("redirect-cache.snapshot"), RedirectCacheSnapshot.encode(List.of(
+                new LruCache.CachedEntry<>("kept", target, Duration.ofMinutes(1)),
+                new LruCache.CachedEntry<>("changed", target, Duration.ofMinutes(1))), savedAt));
+        // 停止中に他のノードが "changed" を更新した
+        jdbcTemplate.update("insert into cache_invalidation (topic, cache_key, origin, created_at) values (?, ?, ?, ?)",
+                "REDIRECT", "changed", "node-a", Timestamp.valueOf(LocalDateTime.now().minusMinutes(2)));
+
+        RedirectCache restarted = newCache();
+        new RedirectCacheSnapshot(restarted, jdbcTemplate, true, directory.resolve("redirect-cache.snapshot"),
+                SNAPSHOT_SIZE, bus).restore();
+
+        assertEquals(1, restarted.size());
+        assertNotNull(restarted.find("kept"));
+        assertEquals(0, databaseLookups.get());
+    }
+
+    @Test
+    void ignoresSnapshotOlderThanRetainedInvalidations() throws IOException {
+        // 通知は2分しか残さない。5分前のスナップショットは TTL 内だが、その後の変更が分からない
+        JdbcCacheInvalidationBus bus = clusterBus(Duration.ofMinutes(2));
+        long savedAt = System.currentTimeMillis() - Duration.ofMinutes(5).toMillis();
+        RedirectTarget target = new RedirectTarget(1L, "https://example.com/", null, RedirectType.FOUND, false);
+        Files.write(directory.resolve("redirect-cache.snapshot"), RedirectCacheSnapshot.encode(List.of(
+                new LruCache.CachedEntry<>("abc123", target, Duration.ZERO)), savedAt));
+
+        RedirectCache restarted = newCache();
+        new RedirectCacheSnapshot(restarted, jdbcTemplate, true, directory.resolve("redirect-cache.snapshot"),
+                SNAPSHOT_SIZE, bus).restore();
+
+        assertEquals(0, restarted.size());
+    }
+
+    @Test
+    void ignoresCorruptSnapshot() throws IOException {
+        RedirectTarget target = new RedirectTarget(1L, "https://example.com/", null, RedirectType.FOUND, false);
+        byte[] bytes = RedirectCacheSnapshot.encode(List.of(new LruCache.CachedEntry<>("abc123", target, Duration.ZERO)),
+                System.currentTimeMillis());
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(directory.resolve("redirect-cache.snapshot"), bytes);
+
+        RedirectCache restarted = newCache();
+        snapshot(restarted).restore();
+
+        assertEquals(0, restarted.size());
+    }
+
+    private double hitRate(RedirectCache cache, List<String> requests) {
+        int before = databaseLookups.get();
+        for (String code : requests) {
+            cache.find(code);
+        }
+        return 1.0 - (double) (databaseLookups.get() - before) / requests.size();
+    }
+
+    // 上位のリンクにクリックが集中する分布
+    private static String nextCode(Random random) {
+        return "c" + (1 + (int) (Math.pow(random.nextDouble(), 3) * LINKS));
+    }
+
+    private RedirectCacheSnapshot snapshot(RedirectCache cache) {
+        return new RedirectCacheSnapshot(cache, jdbcTemplate, true, directory.resolve("redirect-cache.snapshot"), SNAPSHOT_SIZE,
+                new LoopbackCacheInvalidationBus());
+    }
+
+    // クラスタ構成のバス（起動済み）
+    private JdbcCacheInvalidationBus clusterBus(Duration retention) {
+        jdbcTemplate.execute("create table cache_invalidation (id bigint generated by default as identity primary key, "
+                + "topic varchar(32) not null, cache_key varchar(255) not null, origin varchar(128) not null, "
+                + "created_at timestamp not null)");
+        jdbcTemplate.execute("create table job_lock (name varchar(255) primary key, locked_until timestamp not null, "
+                + "locked_by varchar(128) not null)");
+        JobLockService jobLockService = new JobLockService(jdbcTemplate, true, "node-b", Duration.ofHours(1));
+        JdbcCacheInvalidationBus bus = new JdbcCacheInvalidationBus(jdbcTemplate, jobLockService, "node-b",
+                Duration.ZERO, retention, Duration.ofMinutes(10), Duration.ZERO);
+        bus.start();
+        return bus;
+    }
+
+    private RedirectCache newCache() {
+        ShortCodeFilter disabledFilter = new ShortCodeFilter(jdbcTemplate, false, 0, 0.01, Duration.ZERO,
+                new LoopbackCacheInvalidationBus());
+        return new RedirectCache(repository(), disabledFilter, new LoopbackCacheInvalidationBus(), CACHE_SIZE, TTL);
+    }
+
+    // findByShortCode だけを持つリポジトリ。"c" + id のコードを id のリンクとして返す
+    private UrlMappingRepository repository() {
+        return (UrlMappingRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UrlMappingRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findByShortCode")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    databaseLookups.incrementAndGet();
+                    String shortCode = (String) args[0];
+                    long id = Long.parseLong(shortCode.substring(1));
+                    UrlMapping mapping = new UrlMapping(shortCode, "https://example.com/" + id) {
+                        @Override
+                        public Long getId() {
+                            return id;
+                        }
+                    };
+                    return Optional.of(mapping);
+                });
+    }
+}
@@ -0,0 +1,60 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RedirectCacheTests {
+
+    private final AtomicInteger reads = new AtomicInteger();
+    private final CacheInvalidationBus bus = new LoopbackCacheInvalidationBus();
+    // 読み込みの途中で走らせる処理（他のリクエストの更新を再現する）
+    private Runnable duringRead = () -> { };
+    private String originalUrl = "https://example.com/old";
+    private final RedirectCache redirectCache = new RedirectCache(repository(),
+            new ShortCodeFilter(new JdbcTemplate(new DriverManagerDataSource()), false, 0, 0.01, Duration.ZERO, bus),
+            bus, 100, Duration.ofMinutes(10));
+
+    @Test
+    void cachesLoadedTarget() {
+        redirectCache.find("abc123");
+        redirectCache.find("abc123");
+
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    void doesNotCacheTargetInvalidatedWhileLoading() {
+        // 古い値を読んだ直後に更新がコミットされ、invalidate された
+        duringRead = () -> {
+            originalUrl = "https://example.com/new";
+            redirectCache.invalidate("abc123");
+        };
+        assertEquals("https://example.com/old", redirectCache.find("abc123").originalUrl());
+
+        duringRead = () -> { };
+        assertEquals("https://example.com/new", redirectCache.find("abc123").originalUrl());
+        assertEquals("https://example.com/new", redirectCache.find("abc123").originalUrl());
+        assertEquals(2, reads.get());
+    }
+
+    private UrlMappingRepository repository() {
+        return (UrlMappingRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UrlMappingRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findByShortCode")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    reads.incrementAndGet();
+                    UrlMapping mapping = new UrlMapping((String) args[0], originalUrl);
+                    duringRead.run();
+                    return Optional.of(mapping);
+                });
+    }
+}
@@ -0,0 +1,120 @@
+package com.bonsai.shorturl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedirectFilterTests {
+
+    // クリックを記録したリンクの転送先
+    private final List<String> tracked = new ArrayList<>();
+    private final RedirectFilter filter = new RedirectFilter(redirectCache(), new ClickTracker(null, null, null) {
+        @Override
+        public void record(RedirectTarget target, HttpServletRequest request, LocalDateTime now) {
+            tracked.add(target.originalUrl());
+        }
+    }, new RedirectResponder(Duration.ofDays(1)), new SimpleMeterRegistry());
+
+    @Test
+    void extractsSingleSegmentCodes() {
+        assertEquals("abc123", RedirectFilter.shortCodeOf(request("GET", "", "/abc123")));
+        assertEquals("my-link_2", RedirectFilter.shortCodeOf(request("HEAD", "", "/my-link_2")));
+        // コンテキストパスの下
+        assertEquals("abc123", RedirectFilter.shortCodeOf(request("GET", "/s", "/s/abc123")));
+    }
+
+    @Test
+    void skipsReservedNestedAndNonGetPaths() {
+        for (String reserved : List.of("login", "logout", "register", "dashboard", "shorten", "update", "analytics",
+                "edit", "check", "api", "actuator", "error", "h2-console")) {
+            assertTrue(RedirectFilter.isReserved(reserved), reserved);
+            assertNull(RedirectFilter.shortCodeOf(request("GET", "", "/" + reserved)), reserved);
+        }
+        // 大文字小文字が違えば予約語ではない
+        assertEquals("Login", RedirectFilter.shortCodeOf(request("GET", "", "/Login")));
+
+        assertNull(RedirectFilter.shortCodeOf(request("GET", "", "/")));
+        assertNull(RedirectFilter.shortCodeOf(request("GET", "", "/abc123/")));
+        assertNull(RedirectFilter.shortCodeOf(request("GET", "", "/analytics/abc123")));
+        assertNull(RedirectFilter.shortCodeOf(request("GET", "", "/api/links")));
+        assertNull(RedirectFilter.shortCodeOf(request("GET", "", "/favicon.ico")));
+        assertNull(RedirectFilter.shortCodeOf(request("GET", "", "/abc%20123")));
+        assertNull(RedirectFilter.shortCodeOf(request("GET", "/s", "/abc123")));
+        assertNull(RedirectFilter.shortCodeOf(request("GET", "/s", "/s")));
+        assertNull(RedirectFilter.shortCodeOf(request("POST", "", "/abc123")));
+    }
+
+    @Test
+    void redirectsKnownCodeWithoutCallingChain() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request("GET", "", "/known1"), response, chain);
+
+        assertNull(chain.getRequest());
+        assertEquals(302, response.getStatus());
+        assertEquals("https://example.com/landing", response.getHeader("Location"));
+        assertEquals(List.of("https://example.com/landing"), tracked);
+    }
+
+    @Test
+    void passesUnknownExpiredAndReservedPathsToChain() throws Exception {
+        for (String path : List.of("/unknown1", "/expired1", "/dashboard", "/known1/stats")) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+
+            filter.doFilter(request("GET", "", path), response, chain);
+
+            assertNotNull(chain.getRequest(), path);
+            assertNull(response.getHeader("Location"), path);
+        }
+        assertTrue(tracked.isEmpty());
+    }
+
+    private static MockHttpServletRequest request(String method, String contextPath, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setContextPath(contextPath);
+        return request;
+    }
+
+    // "known1" と期限切れの "expired1" だけがDBにある
+    private static RedirectCache redirectCache() {
+        UrlMappingRepository repository = (UrlMappingRepository) Proxy.newProxyInstance(
+                RedirectFilterTests.class.getClassLoader(), new Class<?>[]{UrlMappingRepository.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("findByShortCode")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return Optional.ofNullable(switch ((String) args[0]) {
+                        case "known1" -> new UrlMapping("known1", "https://example.com/landing");
+                        case "expired1" -> {
+                            UrlMapping expired = new UrlMapping("expired1", "https://example.com/old");
+                            expired.setExpirationTimestamp(LocalDateTime.now().minusDays(1));
+                            yield expired;
+                        }
+                        default -> null;
+                    });
+                });
+        CacheInvalidationBus bus = new LoopbackCacheInvalidationBus();
+        return new RedirectCache(repository,
+                new ShortCodeFilter(new JdbcTemplate(new DriverManagerDataSource()), false, 0, 0.01, Duration.ZERO, bus),
+                bus, 100, Duration.ofMinutes(10));
+    }
+}
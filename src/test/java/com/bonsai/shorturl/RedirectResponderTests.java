@@ -0,0 +1,90 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedirectResponderTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    private final RedirectResponder responder = new RedirectResponder(Duration.ofDays(1));
+
+    @Test
+    void sendsStatusOfEachRedirectType() {
+        Map<RedirectType, Integer> statuses = Map.of(
+                RedirectType.MOVED_PERMANENTLY, 301,
+                RedirectType.FOUND, 302,
+                RedirectType.TEMPORARY_REDIRECT, 307,
+                RedirectType.PERMANENT_REDIRECT, 308);
+        statuses.forEach((type, status) -> {
+            MockHttpServletResponse response = send(new RedirectTarget(1L, "https://example.com/", null, type, false));
+
+            assertEquals(status, response.getStatus(), type.name());
+            assertEquals("https://example.com/", response.getHeader("Location"));
+            assertEquals(0, response.getContentLength());
+        });
+    }
+
+    @Test
+    void writesPercentEncodedLocation() {
+        MockHttpServletResponse response = send(
+                new RedirectTarget(1L, "https://example.com/記事?q=あ", null, RedirectType.FOUND, false));
+
+        assertEquals("https://example.com/%E8%A8%98%E4%BA%8B?q=%E3%81%82", response.getHeader("Location"));
+    }
+
+    @Test
+    void forbidsCachingWhenNotEdgeCacheable() {
+        // 有効期限があっても、クリックを毎回数えるためにキャッシュさせない
+        MockHttpServletResponse response = send(
+                new RedirectTarget(1L, "https://example.com/", NOW.plusHours(1), RedirectType.MOVED_PERMANENTLY, false));
+
+        assertEquals("no-store", response.getHeader("Cache-Control"));
+        assertNull(response.getHeader("Expires"));
+    }
+
+    @Test
+    void cachesEdgeCacheableLinkForMaxAge() {
+        MockHttpServletResponse response = send(
+                new RedirectTarget(1L, "https://example.com/", null, RedirectType.MOVED_PERMANENTLY, true));
+
+        assertEquals("public, max-age=86400", response.getHeader("Cache-Control"));
+        assertNull(response.getHeader("Expires"));
+    }
+
+    @Test
+    void capsMaxAgeAtExpiration() {
+        assertExpiringCache(NOW.plusMinutes(90), 5400);
+        // 期限が max-age より先なら max-age のまま
+        assertExpiringCache(NOW.plusDays(3), 86400);
+        // 期限を過ぎていれば 0
+        assertExpiringCache(NOW.minusMinutes(1), 0);
+    }
+
+    private void assertExpiringCache(LocalDateTime expiration, long maxAge) {
+        long before = System.currentTimeMillis();
+        MockHttpServletResponse response = send(
+                new RedirectTarget(1L, "https://example.com/", expiration, RedirectType.FOUND, true));
+        long after = System.currentTimeMillis();
+
+        assertEquals("public, max-age=" + maxAge, response.getHeader("Cache-Control"));
+        // Expires ヘッダーは秒単位
+        long expires = response.getDateHeader("Expires");
+        assertTrue(expires >= (before + maxAge * 1000) / 1000 * 1000 && expires <= after + maxAge * 1000,
+                "Expires " + expires + " for max-age " + maxAge);
+    }
+
+    private MockHttpServletResponse send(RedirectTarget target) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        responder.send(response, target, NOW);
+        return response;
+    }
+}
@@ -0,0 +1,62 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SavepointsTests {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:savepoints-test", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("create table item (name varchar(16) primary key)");
+        jdbcTemplate.update("insert into item (name) values ('taken')");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void rollsBackOnlyTheFailedStatementInsideTransaction() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("insert into item (name) values ('before')");
+            // バッチの途中で違反したら、先に入った 'partial' も取り消される
+            assertFalse(Savepoints.runIgnoringDuplicateKey(jdbcTemplate, () -> jdbcTemplate.batchUpdate(
+                    "insert into item (name) values (?)", List.of(new Object[]{"partial"}, new Object[]{"taken"}))));
+            assertTrue(Savepoints.runIgnoringDuplicateKey(jdbcTemplate,
+                    () -> jdbcTemplate.update("insert into item (name) values ('after')")));
+        });
+
+        assertEquals(List.of("after", "before", "taken"),
+                jdbcTemplate.queryForList("select name from item order by name", String.class));
+    }
+
+    @Test
+    void runsDirectlyOutsideTransaction() {
+        assertFalse(Savepoints.runIgnoringDuplicateKey(jdbcTemplate,
+                () -> jdbcTemplate.update("insert into item (name) values ('taken')")));
+        assertTrue(Savepoints.runIgnoringDuplicateKey(jdbcTemplate,
+                () -> jdbcTemplate.update("insert into item (name) values ('new')")));
+
+        assertEquals(2, jdbcTemplate.queryForObject("select count(*) from item", Integer.class));
+    }
+}
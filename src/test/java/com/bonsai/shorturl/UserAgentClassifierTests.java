@@ -0,0 +1,62 @@
+package com.bonsai.shorturl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class UserAgentClassifierTests {
+
+    private final UserAgentClassifier classifier = new UserAgentClassifier(100);
+
+    @Test
+    void classifiesBrowsersAndBots() {
+        assertClassified("Desktop", "Windows", "Chrome", false,
+                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36");
+        assertClassified("Desktop", "Windows", "Edge", false,
+                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36 Edg/126.0.0.0");
+        assertClassified("Mobile", "iOS", "Safari", false,
+                "Mozilla/5.0 (iPhone; CPU iPhone OS 17_5 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.5 Mobile/15E148 Safari/604.1");
+        assertClassified("Mobile", "Android", "Chrome", false,
+                "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Mobile Safari/537.36");
+        assertClassified("Desktop", "macOS", "Firefox", false,
+                "Mozilla/5.0 (Macintosh; Intel Mac OS X 14.5; rv:127.0) Gecko/20100101 Firefox/127.0");
+        assertClassified("Bot", "Android", "Chrome", true,
+                "Mozilla/5.0 (Linux; Android 6.0.1; Nexus 5X Build/MMB29P) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Mobile Safari/537.36 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)");
+        assertClassified("Bot", "Other", "Other", true, "curl/8.7.1");
+        assertClassified("Desktop", "Other", "Other", false, null);
+    }
+
+    @Test
+    void matchesIgnoringCase() {
+        assertClassified("Mobile", "Android", "Other", false, "SOMEAPP/1.0 (ANDROID 14)");
+        assertClassified("Bot", "Other", "Other", true, "Python-Requests/2.32");
+    }
+
+    @Test
+    void cachesRepeatedUserAgents() {
+        String userAgent = "Mozilla/5.0 (X11; Linux x86_64; rv:127.0) Gecko/20100101 Firefox/127.0";
+        UserAgentClassifier.Classification first = classifier.classify(userAgent);
+        UserAgentClassifier.Classification second = classifier.classify(new String(userAgent));
+
+        assertSame(first, second);
+        assertEquals(1, classifier.getCache().getHitCount());
+        assertEquals(1, classifier.getCache().size());
+    }
+
+    @Test
+    void normalizesReferrersToHost() {
+        assertEquals("news.example.com", Referrers.host(" https://user@News.Example.COM:8443/a/b?q=1#top "));
+        assertEquals("www.google.com", Referrers.host("https://www.google.com/"));
+        assertEquals("com.google.android.gm", Referrers.host("android-app://com.google.android.gm/"));
+        assertEquals("[2001:db8::1]", Referrers.host("http://[2001:db8::1]:8080/"));
+        assertEquals(Referrers.DIRECT, Referrers.host(null));
+        assertEquals(Referrers.UNKNOWN, Referrers.host("example.com/path"));
+        assertEquals(Referrers.UNKNOWN, Referrers.host("https:///path"));
+    }
+
+    private void assertClassified(String deviceType, String os, String browser, boolean bot, String userAgent) {
+        assertEquals(new UserAgentClassifier.Classification(deviceType, os, browser, bot), classifier.classify(userAgent),
+                userAgent);
+    }
+}